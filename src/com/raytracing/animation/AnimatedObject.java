@@ -0,0 +1,63 @@
+package com.raytracing.animation;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.SamplingContext;
+import com.raytracing.base.Vector3d;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.Ray;
+import com.raytracing.transform.Instance;
+
+/**
+ * An object that follows a track of poses, placed where its track is at the time the animation was last set to.
+ * <p>
+ * Unlike other objects it changes, but only between frames, while no ray is traced. A BVH over it stays correct
+ * once it is refitted to the new box.
+ */
+public class AnimatedObject implements Hittable {
+    private final Hittable object;
+    private final Track<Pose> track;
+    private Instance current;
+
+    /**
+     * Places an object at the start of its track
+     *
+     * @param object the object in its own space
+     * @param track  the poses of the object over time
+     */
+    public AnimatedObject(Hittable object, Track<Pose> track) {
+        this.object = object;
+        this.track = track;
+        current = placeAt(0);
+    }
+
+    /**
+     * Moves the object to where its track is at a time
+     */
+    public void setTime(double time) {
+        current = placeAt(time);
+    }
+
+    private Instance placeAt(double time) {
+        return new Instance(object, track.at(time).toWorld());
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        return current.hit(ray, tMin, tMax);
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return current.boundingBox();
+    }
+
+    @Override
+    public double pdfValue(Vector3d origin, Vector3d direction) {
+        return current.pdfValue(origin, direction);
+    }
+
+    @Override
+    public Vector3d random(Vector3d origin, SamplingContext context) {
+        return current.random(origin, context);
+    }
+}
@@ -0,0 +1,89 @@
+package com.raytracing.animation;
+
+import com.raytracing.interfaces.Hittable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tracks of a scene that moves: of the objects that are animated and of the camera, played at a number of
+ * frames per second. Setting the time moves every animated object; the objects of the scene are never rebuilt.
+ */
+public class Animation {
+    private final double framesPerSecond;
+    private final double duration;
+    private final List<AnimatedObject> objects = new ArrayList<>();
+    private Track<CameraPose> camera;
+
+    /**
+     * Constructs an animation without tracks
+     *
+     * @param framesPerSecond the number of frames per second
+     * @param duration        the time of the last frame in seconds; tracks may have keys beyond it
+     */
+    public Animation(double framesPerSecond, double duration) {
+        if (!(framesPerSecond > 0)) {
+            throw new IllegalArgumentException("an animation needs a positive frame rate, not " + framesPerSecond);
+        }
+        if (!(duration >= 0)) {
+            throw new IllegalArgumentException("an animation cannot last " + duration + " seconds");
+        }
+        this.framesPerSecond = framesPerSecond;
+        this.duration = duration;
+    }
+
+    /**
+     * Animates an object by a track of poses
+     *
+     * @return the animated object, to be added to the scene in place of the object
+     */
+    public AnimatedObject animate(Hittable object, Track<Pose> track) {
+        var animated = new AnimatedObject(object, track);
+        objects.add(animated);
+        return animated;
+    }
+
+    /**
+     * Moves the camera by a track, instead of keeping the camera of the scene
+     */
+    public void setCamera(Track<CameraPose> camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * @return the track of the camera, or null if the camera stands still
+     */
+    public Track<CameraPose> camera() {
+        return camera;
+    }
+
+    /**
+     * @return the number of objects that move
+     */
+    public int objectCount() {
+        return objects.size();
+    }
+
+    /**
+     * @return the number of frames, from the first at time 0 to the last at the end of the animation
+     */
+    public int frameCount() {
+        return (int) Math.round(duration * framesPerSecond) + 1;
+    }
+
+    /**
+     * @return the time of a frame in seconds
+     */
+    public double time(int frame) {
+        return frame / framesPerSecond;
+    }
+
+    /**
+     * Moves every animated object to a time
+     */
+    public void setTime(double time) {
+        for (var object : objects) {
+            object.setTime(time);
+        }
+    }
+}
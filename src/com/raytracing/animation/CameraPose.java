@@ -0,0 +1,27 @@
+package com.raytracing.animation;
+
+import com.raytracing.base.Vector3d;
+
+/**
+ * The parameters of the camera at a key of its track
+ *
+ * @param lookFrom      the position of the camera
+ * @param lookAt        the point the camera looks at
+ * @param viewUp        the direction that is up in the image
+ * @param verticalFov   the vertical field of view in degrees
+ * @param aperture      the diameter of the lens, 0 for a pinhole
+ * @param focusDistance the distance of the plane in focus
+ */
+public record CameraPose(Vector3d lookFrom, Vector3d lookAt, Vector3d viewUp, double verticalFov, double aperture,
+                         double focusDistance) {
+    /**
+     * Interpolates every parameter of two poses linearly, as a {@link Track.Interpolation}
+     */
+    public static CameraPose between(CameraPose from, CameraPose to, double fraction) {
+        return new CameraPose(Pose.lerp(from.lookFrom, to.lookFrom, fraction),
+                Pose.lerp(from.lookAt, to.lookAt, fraction), Pose.lerp(from.viewUp, to.viewUp, fraction),
+                from.verticalFov + (to.verticalFov - from.verticalFov) * fraction,
+                from.aperture + (to.aperture - from.aperture) * fraction,
+                from.focusDistance + (to.focusDistance - from.focusDistance) * fraction);
+    }
+}
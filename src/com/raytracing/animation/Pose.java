@@ -0,0 +1,45 @@
+package com.raytracing.animation;
+
+import com.raytracing.base.Vector3d;
+import com.raytracing.transform.Affine;
+
+/**
+ * Where an object is at a key of its track. The object is scaled first, then rotated about the x-, y- and z-axes
+ * in turn and then moved to its position.
+ *
+ * @param position the position of the origin of the object
+ * @param rotation the angles about the x-, y- and z-axes in degrees, which are interpolated one by one, so a key
+ *                 can turn an object by more than a full turn
+ * @param scale    the uniform scale of the object
+ */
+public record Pose(Vector3d position, Vector3d rotation, double scale) {
+    /**
+     * Places an object at a position, turned about the y-axis
+     */
+    public Pose(Vector3d position, double angleY) {
+        this(position, new Vector3d(0, angleY, 0), 1);
+    }
+
+    /**
+     * @return the transform from the space of the object to the world
+     */
+    public Affine toWorld() {
+        Affine transform = Affine.scaling(scale, scale, scale);
+        if (rotation.x() != 0) transform = transform.then(Affine.rotation(new Vector3d(1, 0, 0), rotation.x()));
+        if (rotation.y() != 0) transform = transform.then(Affine.rotationY(rotation.y()));
+        if (rotation.z() != 0) transform = transform.then(Affine.rotation(new Vector3d(0, 0, 1), rotation.z()));
+        return transform.then(Affine.translation(position));
+    }
+
+    /**
+     * Interpolates every part of two poses linearly, as a {@link Track.Interpolation}
+     */
+    public static Pose between(Pose from, Pose to, double fraction) {
+        return new Pose(lerp(from.position, to.position, fraction), lerp(from.rotation, to.rotation, fraction),
+                from.scale + (to.scale - from.scale) * fraction);
+    }
+
+    static Vector3d lerp(Vector3d from, Vector3d to, double fraction) {
+        return from.add(to.subtract(from).scale(fraction));
+    }
+}
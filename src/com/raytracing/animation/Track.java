@@ -0,0 +1,70 @@
+package com.raytracing.animation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Values at key times, such as the poses of an object, which are interpolated in between. Before the first key and
+ * after the last one the value holds still.
+ *
+ * @param <T> the type of the values
+ */
+public class Track<T> {
+    /**
+     * Blends two values of a track
+     */
+    @FunctionalInterface
+    public interface Interpolation<T> {
+        /**
+         * @param fraction 0 for the first value, 1 for the second, or any fraction in between
+         */
+        T between(T from, T to, double fraction);
+    }
+
+    private final Interpolation<T> interpolation;
+    private double[] times = new double[4];
+    private final List<T> values = new ArrayList<>();
+
+    /**
+     * Constructs a track without keys
+     */
+    public Track(Interpolation<T> interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Adds a key after the keys so far
+     *
+     * @return this track
+     * @throws IllegalArgumentException if the time is not after the time of the last key
+     */
+    public Track<T> key(double time, T value) {
+        int count = values.size();
+        if (count > 0 && !(time > times[count - 1])) {
+            throw new IllegalArgumentException("a key at " + time + " does not follow the key at " + times[count - 1]);
+        }
+        if (count == times.length) times = Arrays.copyOf(times, 2 * count);
+        times[count] = time;
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * Returns the value at a time
+     *
+     * @throws IllegalStateException if the track has no keys
+     */
+    public T at(double time) {
+        int count = values.size();
+        if (count == 0) throw new IllegalStateException("a track without keys has no value");
+        if (!(time > times[0])) return values.get(0);
+        if (time >= times[count - 1]) return values.get(count - 1);
+        // the first key after the time
+        int next = Arrays.binarySearch(times, 0, count, time);
+        if (next >= 0) return values.get(next);
+        next = -next - 1;
+        double fraction = (time - times[next - 1]) / (times[next] - times[next - 1]);
+        return interpolation.between(values.get(next - 1), values.get(next), fraction);
+    }
+}
@@ -0,0 +1,204 @@
+package com.raytracing.app;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.base.Vector3d;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+import com.raytracing.structures.Accelerator;
+import com.raytracing.structures.Accelerators;
+import com.raytracing.structures.BVHBuilder;
+import com.raytracing.structures.BVHNode;
+import com.raytracing.structures.CompressedBVH;
+import com.raytracing.structures.DynamicBVH;
+import com.raytracing.structures.FlatBVH;
+import com.raytracing.structures.Grid;
+import com.raytracing.structures.KdTree;
+import com.raytracing.structures.LazyBVH;
+import com.raytracing.structures.LinearBVHBuilder;
+import com.raytracing.structures.WideBVH;
+import com.raytracing.transform.Affine;
+import com.raytracing.transform.Instance;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compares ways to build a BVH, as well as a grid and a kd-tree, over the ground boxes and the ball cluster of the
+ * final scene. For every way it prints the median build time, the memory taken by the nodes of compiled layouts, the
+ * expected traversal cost by the surface area heuristic, and the number of objects tested and the time per
+ * ray for random rays through the objects, followed by the accelerator {@link Accelerators#choose} picks for the
+ * objects. It then times single edits of a {@link DynamicBVH}.
+ * <p>
+ * Usage: {@code BVHBenchmark [rays]}
+ */
+public class BVHBenchmark {
+    private static final int BUILD_RUNS = 9;
+    private static final int TRACE_RUNS = 3;
+    private static final int EDITS = 100_000;
+
+    public static void main(String[] args) {
+        int rays = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Random rng = new Random(42);
+        HittableList ground = Scene.groundBoxes(rng);
+        HittableList cluster = Scene.sphereCluster(rng);
+
+        System.out.println("Wide BVHs test boxes " + (WideBVH.isVectorized() ? "with the Vector API" : "one by one"));
+        System.out.printf("%-8s %-8s %10s %10s %10s %10s %10s %8s%n", "objects", "builder", "build ms", "KB",
+                "SAH cost", "tests/ray", "ns/ray", "hits");
+        for (var entry : new Object[][]{{"ground", ground}, {"cluster", cluster}}) {
+            String name = (String) entry[0];
+            HittableList objects = (HittableList) entry[1];
+            benchmark(name, "median", objects, rays, list -> new BVHNode(list));
+            benchmark(name, "sah", objects, rays, list -> new BVHBuilder().build(list));
+            benchmark(name, "flat", objects, rays, list -> new FlatBVH(new BVHBuilder().build(list)));
+            benchmark(name, "wide4", objects, rays, list -> new WideBVH(new BVHBuilder().build(list), 4));
+            benchmark(name, "wide8", objects, rays, list -> new WideBVH(new BVHBuilder().build(list), 8));
+            benchmark(name, "linear", objects, rays, list -> new WideBVH(new LinearBVHBuilder().build(list), 4));
+            benchmark(name, "lazy", objects, rays, LazyBVH::new);
+            benchmark(name, "comp8", objects, rays, list -> new CompressedBVH(new BVHBuilder().build(list), 8));
+            benchmark(name, "comp16", objects, rays, list -> new CompressedBVH(new BVHBuilder().build(list), 16));
+            benchmark(name, "dynamic", objects, rays, DynamicBVH::new);
+            benchmark(name, "grid", objects, rays, list -> new Grid(list.objects()));
+            benchmark(name, "kdtree", objects, rays, list -> new KdTree(list.objects()));
+        }
+        System.out.println("Ground: " + Accelerators.choose(ground.objects()));
+        System.out.println("Cluster: " + Accelerators.choose(cluster.objects()));
+
+        System.out.printf("%n%-8s %14s %10s %10s %10s%n", "objects", "reinsert ns", "move ns", "SAH cost",
+                "built cost");
+        benchmarkEdits("ground", ground);
+        benchmarkEdits("cluster", cluster);
+    }
+
+    /**
+     * Times removing a random object from a dynamic BVH and inserting it again, and moving a random object by
+     * about its size, then compares the cost of the edited tree with a tree built by the surface area heuristic
+     */
+    private static void benchmarkEdits(String name, HittableList objects) {
+        int n = objects.objects().size();
+        var bvh = new DynamicBVH();
+        int[] handles = new int[n];
+        for (int i = 0; i < n; i++) {
+            handles[i] = bvh.insert(objects.objects().get(i));
+        }
+        Random rng = new Random(3);
+        int[] picks = rng.ints(EDITS, 0, n).toArray();
+        Hittable[] moved = new Hittable[EDITS];
+        for (int e = 0; e < EDITS; e++) {
+            Hittable object = objects.objects().get(picks[e]);
+            double size = object.boundingBox().axisInterval(0).size();
+            var offset = new Vector3d(rng.nextGaussian(), rng.nextGaussian(), rng.nextGaussian()).scale(size);
+            moved[e] = new Instance(object, Affine.translation(offset));
+        }
+
+        // the first pass warms up
+        double reinsert = 0;
+        double move = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int pick : picks) {
+                bvh.remove(handles[pick]);
+                handles[pick] = bvh.insert(objects.objects().get(pick));
+            }
+            reinsert = (double) (System.nanoTime() - start) / EDITS;
+            start = System.nanoTime();
+            for (int e = 0; e < EDITS; e++) {
+                bvh.update(handles[picks[e]], moved[e]);
+            }
+            move = (double) (System.nanoTime() - start) / EDITS;
+        }
+
+        var edited = new HittableList();
+        for (int handle : handles) {
+            edited.add(bvh.object(handle));
+        }
+        System.out.printf("%-8s %14.1f %10.1f %10.2f %10.2f%n", name, reinsert, move, BVHBuilder.cost(bvh),
+                BVHBuilder.cost(new BVHBuilder().build(edited)));
+    }
+
+    private static void benchmark(String name, String builder, HittableList objects, int rays,
+                                  Function<HittableList, Hittable> build) {
+        double[] times = new double[BUILD_RUNS];
+        Hittable root = null;
+        for (int run = 0; run < BUILD_RUNS; run++) {
+            // the median split sorts the list it is given
+            HittableList copy = new HittableList();
+            objects.forEach(copy::add);
+            long start = System.nanoTime();
+            root = build.apply(copy);
+            times[run] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+
+        // count the intersection tests of the objects
+        HittableList counted = new HittableList();
+        objects.forEach(object -> counted.add(new Counted(object)));
+        Counted.tests = 0;
+        trace(build.apply(counted), objects, rays);
+        double testsPerRay = (double) Counted.tests / rays;
+
+        // warm up, then take the best of a few runs
+        trace(root, objects, rays / 4);
+        int hits = 0;
+        double perRay = Double.POSITIVE_INFINITY;
+        for (int run = 0; run < TRACE_RUNS; run++) {
+            long start = System.nanoTime();
+            hits = trace(root, objects, rays);
+            perRay = Math.min(perRay, (double) (System.nanoTime() - start) / rays);
+        }
+
+        long footprint = root instanceof Accelerator accelerator ? accelerator.footprint() : -1;
+        System.out.printf("%-8s %-8s %10.2f %10s %10s %10.2f %10.1f %8d%n", name, builder, times[BUILD_RUNS / 2],
+                footprint < 0 ? "-" : String.format("%.1f", footprint / 1024.0),
+                String.format("%.2f", BVHBuilder.cost(root)),
+                testsPerRay, perRay, hits);
+    }
+
+    /**
+     * An object that counts how often it is tested for a hit
+     */
+    private record Counted(Hittable object) implements Hittable {
+        static long tests;
+
+        @Override
+        public HitRecord hit(Ray ray, double tMin, double tMax) {
+            tests++;
+            return object.hit(ray, tMin, tMax);
+        }
+
+        @Override
+        public AABB boundingBox() {
+            return object.boundingBox();
+        }
+    }
+
+    /**
+     * Shoots rays from a sphere around the objects at random points inside their bounding box
+     *
+     * @return the number of rays that hit
+     */
+    private static int trace(Hittable root, HittableList objects, int rays) {
+        Random rng = new Random(7);
+        var box = objects.boundingBox();
+        Interval x = box.axisInterval(0);
+        Interval y = box.axisInterval(1);
+        Interval z = box.axisInterval(2);
+        var center = new Vector3d(0.5 * (x.min() + x.max()), 0.5 * (y.min() + y.max()), 0.5 * (z.min() + z.max()));
+        double radius = Math.sqrt(x.size() * x.size() + y.size() * y.size() + z.size() * z.size());
+
+        int hits = 0;
+        for (int i = 0; i < rays; i++) {
+            var direction = new Vector3d(rng.nextGaussian(), rng.nextGaussian(), rng.nextGaussian()).normalized();
+            var origin = center.add(direction.scale(radius));
+            var target = new Vector3d(x.min() + rng.nextDouble() * x.size(), y.min() + rng.nextDouble() * y.size(),
+                    z.min() + rng.nextDouble() * z.size());
+            if (root.hit(new Ray(origin, target.subtract(origin), 0), 1e-3, Double.POSITIVE_INFINITY) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,242 @@
+package com.raytracing.app;
+
+import com.raytracing.base.PixelColor;
+import com.raytracing.base.Vector3d;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.interfaces.Sampler;
+import com.raytracing.materials.Lambertian;
+import com.raytracing.render.FrameBuffer;
+import com.raytracing.render.ProgressiveRender;
+import com.raytracing.render.Renderer;
+import com.raytracing.render.TileScheduler;
+import com.raytracing.render.VersionedScene;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Sphere;
+import com.raytracing.structures.PersistentBVH;
+import com.raytracing.textures.ImageTexture;
+import com.raytracing.transform.Affine;
+import com.raytracing.transform.Instance;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A progressive render of a scene that is edited from the standard input while it renders.
+ * <p>
+ * The entries of the world that would go under the top-level BVH are kept in a {@link PersistentBVH}, and every
+ * edit makes a new version of it that shares all but a path of nodes with the version before. The render threads
+ * keep tracing the version they have, and the latest version takes over at the next pass boundary, starting the
+ * image over. Once the image has all its samples, the render waits for the next edit.
+ * <p>
+ * Commands, one per line, where objects are numbered in the order {@code list} prints them:
+ * <pre>
+ * list                  prints the objects with their numbers
+ * sphere x y z radius   adds a gray ball
+ * move n dx dy dz       moves an object
+ * remove n              removes an object
+ * camera x y z          moves the camera, which keeps looking at the same point
+ * quit                  ends the session once the current image is done
+ * </pre>
+ * The end of the input ends the session like {@code quit}.
+ */
+class EditSession {
+    /**
+     * A version of the scene
+     *
+     * @param objects  the objects that can be edited
+     * @param lookFrom the position of the camera
+     */
+    record State(PersistentBVH objects, Vector3d lookFrom) {
+    }
+
+    private static final Lambertian GRAY = new Lambertian(new PixelColor(0.5, 0.5, 0.5));
+
+    private final Scene scene;
+    private final Sampler sampler;
+    private final VersionedScene<State> versions;
+    // the objects by their numbers, null for removed objects; only used by the editor thread
+    private final List<Hittable> objects = new ArrayList<>();
+    // the version the renderer was made for and the renderer, only used by the render thread
+    private VersionedScene.Version<State> rendered;
+    private Renderer renderer;
+    private boolean done;
+
+    private EditSession(Scene scene, Sampler sampler) {
+        this.scene = scene;
+        this.sampler = sampler;
+        scene.editableObjects.forEach(objects::add);
+        versions = new VersionedScene<>(new State(PersistentBVH.of(objects), scene.lookFrom));
+    }
+
+    /**
+     * Loads the scene of the options and renders it while edits are read from the standard input, saving the
+     * image after every pass
+     */
+    static void run(RenderOptions options) throws IOException, InterruptedException {
+        Scene scene = Scene.loadEditable(options.scene, ImageTexture::new, options.bvhSettings());
+        if (options.width > 0) scene.imageWidth = options.width;
+        if (options.samplesPerPixel > 0) scene.samplesPerPixel = options.samplesPerPixel;
+        var session = new EditSession(scene, options.createSampler());
+        System.out.printf("Editing %d objects; type list, sphere, move, remove, camera or quit%n",
+                session.objects.size());
+
+        Thread editor = new Thread(() -> session.readCommands(System.in), "editor");
+        editor.setDaemon(true);
+        editor.start();
+
+        String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        Path output = Paths.get(System.getProperty("user.dir"), "outputs", name + ".png");
+        var scheduler = new TileScheduler(scene.imageWidth, scene.imageHeight(), options.tileSize);
+        var frame = new FrameBuffer(scene.imageWidth, scene.imageHeight());
+        var settings = new ProgressiveRender.Settings(options.samplesPerPass, scene.samplesPerPixel, null,
+                options.snapshotInterval == null ? Math.max(1, options.snapshotEveryPasses)
+                        : options.snapshotEveryPasses, options.snapshotInterval);
+        ForkJoinPool pool = options.sequential ? null : new ForkJoinPool(options.threads);
+        try {
+            var progressive = new ProgressiveRender(session::renderer, scheduler, pool, frame);
+            while (true) {
+                progressive.run(settings, 0, (snapshot, samples, last) -> RayTracer.saveImage(snapshot, output));
+                if (!session.awaitEdit()) break;
+            }
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    /**
+     * Publishes the latest version of the scene, to be called between passes
+     *
+     * @return the renderer of that version
+     */
+    private Renderer renderer() {
+        var version = versions.publish();
+        if (version != rendered) {
+            State state = version.scene();
+            Scene copy = scene.copy();
+            copy.world = new HittableList();
+            scene.world.forEach(copy.world::add);
+            if (state.objects().size() > 0) copy.world.add(state.objects());
+            copy.lookFrom = state.lookFrom();
+            renderer = copy.renderer(sampler);
+            rendered = version;
+        }
+        return renderer;
+    }
+
+    /**
+     * Waits until an edit is staged that is not rendered yet or the session ends
+     *
+     * @return whether there is a new version to render
+     */
+    private synchronized boolean awaitEdit() throws InterruptedException {
+        while (versions.latest() == rendered && !done) {
+            wait();
+        }
+        return versions.latest() != rendered;
+    }
+
+    private void readCommands(InputStream input) {
+        try (var reader = new BufferedReader(new InputStreamReader(input))) {
+            String line;
+            while ((line = reader.readLine()) != null && !line.trim().equals("quit")) {
+                if (line.isBlank()) continue;
+                try {
+                    long start = System.nanoTime();
+                    String result = apply(line.trim().split("\\s+"));
+                    if (result != null) {
+                        System.out.printf("Version %d: %s in %.1f us%n", versions.latest().number(), result,
+                                (System.nanoTime() - start) / 1e3);
+                    }
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    System.err.println("Cannot " + line.trim() + ": " + e.getMessage());
+                }
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Stopped reading edits: " + e.getMessage());
+        }
+        synchronized (this) {
+            done = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Applies a command to the latest version
+     *
+     * @return what the command did to the scene, or null if it did not change the scene
+     */
+    private String apply(String[] words) {
+        switch (words[0]) {
+            case "list" -> {
+                for (int i = 0; i < objects.size(); i++) {
+                    if (objects.get(i) != null) System.out.println(i + ": " + describe(objects.get(i)));
+                }
+                return null;
+            }
+            case "sphere" -> {
+                var ball = new Sphere(vector(words, 1), Double.parseDouble(words[4]), GRAY);
+                objects.add(ball);
+                versions.edit(state -> new State(state.objects().with(ball), state.lookFrom()));
+                return "added object " + (objects.size() - 1);
+            }
+            case "move" -> {
+                int number = number(words[1]);
+                Hittable old = objects.get(number);
+                Hittable moved = new Instance(old, Affine.translation(vector(words, 2)));
+                objects.set(number, moved);
+                versions.edit(state -> new State(state.objects().replace(old, moved), state.lookFrom()));
+                return "moved object " + number;
+            }
+            case "remove" -> {
+                int number = number(words[1]);
+                Hittable old = objects.set(number, null);
+                versions.edit(state -> new State(state.objects().without(old), state.lookFrom()));
+                return "removed object " + number;
+            }
+            case "camera" -> {
+                var lookFrom = vector(words, 1);
+                versions.edit(state -> new State(state.objects(), lookFrom));
+                return "moved the camera";
+            }
+            default -> throw new IllegalArgumentException("unknown command");
+        }
+    }
+
+    /**
+     * @return the kind of an object and the middle of its box
+     */
+    private static String describe(Hittable object) {
+        var box = object.boundingBox();
+        double[] middle = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            middle[axis] = (box.axisInterval(axis).min() + box.axisInterval(axis).max()) / 2;
+        }
+        return String.format("%s around (%.1f, %.1f, %.1f)", object.getClass().getSimpleName(),
+                middle[0], middle[1], middle[2]);
+    }
+
+    private int number(String word) {
+        int number = Integer.parseInt(word);
+        if (number < 0 || number >= objects.size() || objects.get(number) == null) {
+            throw new IllegalArgumentException("no object " + number);
+        }
+        return number;
+    }
+
+    private static Vector3d vector(String[] words, int first) {
+        return new Vector3d(Double.parseDouble(words[first]), Double.parseDouble(words[first + 1]),
+                Double.parseDouble(words[first + 2]));
+    }
+}
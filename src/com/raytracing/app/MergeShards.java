@@ -0,0 +1,55 @@
+package com.raytracing.app;
+
+import com.raytracing.render.FrameBuffer;
+import com.raytracing.render.ShardFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges shards rendered with {@code --shard} into one image.
+ * <p>
+ * Usage: {@code MergeShards <output image> <shard>...}
+ */
+public class MergeShards {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: MergeShards <output image> <shard>...");
+            System.exit(2);
+        }
+        Path output = Path.of(args[0]);
+
+        List<ShardFile.Header> headers = new ArrayList<>();
+        FrameBuffer merged = null;
+        for (int i = 1; i < args.length; i++) {
+            try (ShardFile shard = ShardFile.open(Path.of(args[i]))) {
+                var header = shard.header();
+                if (!headers.isEmpty() && !header.sameImage(headers.get(0))) {
+                    throw new IllegalArgumentException(args[i] + " renders a different image than " + args[1]);
+                }
+                headers.add(header);
+                if (merged == null) {
+                    merged = new FrameBuffer(header.width(), header.height());
+                }
+                merged.merge(shard.frame());
+            }
+        }
+
+        // the same sample in two shards would count twice
+        headers.sort(Comparator.comparingLong(ShardFile.Header::firstSample));
+        long samples = 0;
+        for (int i = 0; i < headers.size(); i++) {
+            var header = headers.get(i);
+            if (i > 0 && header.firstSample() < headers.get(i - 1).firstSample() + headers.get(i - 1).samplesPerPixel()) {
+                throw new IllegalArgumentException("shards overlap at sample " + header.firstSample());
+            }
+            samples += header.samplesPerPixel();
+        }
+
+        RayTracer.saveImage(merged, output.toAbsolutePath());
+        System.out.println("Merged " + headers.size() + " shards, " + samples + " spp");
+    }
+}
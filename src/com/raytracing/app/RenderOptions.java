@@ -0,0 +1,242 @@
+package com.raytracing.app;
+
+import com.raytracing.interfaces.Sampler;
+import com.raytracing.samplers.BlueNoiseSampler;
+import com.raytracing.samplers.HaltonSampler;
+import com.raytracing.samplers.IndependentSampler;
+import com.raytracing.samplers.SobolSampler;
+import com.raytracing.structures.Accelerators;
+import com.raytracing.structures.BVHLayout;
+import com.raytracing.structures.BVHMode;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options of the ray tracer
+ */
+public class RenderOptions {
+    int scene = 7;
+    int width = 0;
+    int samplesPerPixel = 0;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int tileSize = 32;
+    long seed = 42;
+    String sampler = "sobol";
+    boolean sequential = false;
+    boolean adaptive = false;
+    double maxRelativeError = 0.05;
+    int minSamples = 16;
+    int samplesPerRound = 16;
+    boolean progressive = false;
+    int samplesPerPass = 4;
+    Duration timeBudget = null;
+    int snapshotEveryPasses = 0;
+    Duration snapshotInterval = null;
+    Path checkpoint = null;
+    Path resume = null;
+    int shardIndex = 0;
+    int shardCount = 0;
+    int coordinatorPort = -1;
+    String workerHost = null;
+    int workerPort = 0;
+    Duration leaseTimeout = Duration.ofMinutes(1);
+    int serverPort = -1;
+    int serverJobs = 4;
+    int sceneCache = 8;
+    int textureCache = 16;
+    int serverMaxWidth = 4096;
+    int serverMaxSamples = 4096;
+    boolean pfm = false;
+    boolean exr = false;
+    Path filmFile = null;
+    String bvh = null;
+    String bvhLayout = null;
+    Path bvhCache = null;
+    String accelerator = "auto";
+    boolean animate = false;
+    boolean edit = false;
+    int firstFrame = 0;
+    // -1 for the last frame of the animation
+    int lastFrame = -1;
+
+    /**
+     * Parses options of the form {@code --name value} or {@code --flag}
+     *
+     * @param args the command line arguments
+     * @return the parsed options
+     */
+    static RenderOptions parse(String[] args) {
+        RenderOptions options = new RenderOptions();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scene" -> options.scene = Integer.parseInt(value(args, ++i));
+                case "--width" -> options.width = Integer.parseInt(value(args, ++i));
+                case "--spp" -> options.samplesPerPixel = Integer.parseInt(value(args, ++i));
+                case "--threads" -> options.threads = Integer.parseInt(value(args, ++i));
+                case "--tile-size" -> options.tileSize = Integer.parseInt(value(args, ++i));
+                case "--seed" -> options.seed = Long.parseLong(value(args, ++i));
+                case "--sampler" -> options.sampler = value(args, ++i);
+                case "--sequential" -> options.sequential = true;
+                case "--adaptive" -> options.adaptive = true;
+                case "--max-error" -> options.maxRelativeError = Double.parseDouble(value(args, ++i));
+                case "--min-spp" -> options.minSamples = Integer.parseInt(value(args, ++i));
+                case "--round-spp" -> options.samplesPerRound = Integer.parseInt(value(args, ++i));
+                case "--progressive" -> options.progressive = true;
+                case "--pass-spp" -> options.samplesPerPass = Integer.parseInt(value(args, ++i));
+                case "--time-budget" -> options.timeBudget = seconds(value(args, ++i));
+                case "--snapshot-passes" -> options.snapshotEveryPasses = Integer.parseInt(value(args, ++i));
+                case "--snapshot-seconds" -> options.snapshotInterval = seconds(value(args, ++i));
+                case "--checkpoint" -> options.checkpoint = Path.of(value(args, ++i));
+                case "--resume" -> options.resume = Path.of(value(args, ++i));
+                case "--shard" -> {
+                    // index/count, e.g. 0/4 for the first of four shards
+                    String[] shard = value(args, ++i).split("/");
+                    options.shardIndex = Integer.parseInt(shard[0]);
+                    options.shardCount = Integer.parseInt(shard[1]);
+                    if (options.shardIndex < 0 || options.shardIndex >= options.shardCount) {
+                        throw new IllegalArgumentException("invalid shard: " + args[i]);
+                    }
+                }
+                case "--coordinator" -> options.coordinatorPort = Integer.parseInt(value(args, ++i));
+                case "--worker" -> {
+                    // host:port of the coordinator
+                    String address = value(args, ++i);
+                    int colon = address.lastIndexOf(':');
+                    options.workerHost = address.substring(0, colon);
+                    options.workerPort = Integer.parseInt(address.substring(colon + 1));
+                }
+                case "--lease-seconds" -> options.leaseTimeout = seconds(value(args, ++i));
+                case "--server" -> options.serverPort = Integer.parseInt(value(args, ++i));
+                case "--server-jobs" -> options.serverJobs = Integer.parseInt(value(args, ++i));
+                case "--scene-cache" -> options.sceneCache = Integer.parseInt(value(args, ++i));
+                case "--texture-cache" -> options.textureCache = Integer.parseInt(value(args, ++i));
+                case "--server-max-width" -> options.serverMaxWidth = Integer.parseInt(value(args, ++i));
+                case "--server-max-spp" -> options.serverMaxSamples = Integer.parseInt(value(args, ++i));
+                case "--pfm" -> options.pfm = true;
+                case "--exr" -> options.exr = true;
+                case "--film-file" -> options.filmFile = Path.of(value(args, ++i));
+                case "--bvh" -> options.bvh = value(args, ++i);
+                case "--bvh-layout" -> options.bvhLayout = value(args, ++i);
+                case "--bvh-cache" -> options.bvhCache = Path.of(value(args, ++i));
+                case "--accelerator" -> options.accelerator = value(args, ++i);
+                case "--animate" -> options.animate = true;
+                case "--edit" -> options.edit = true;
+                case "--frames" -> {
+                    // first-last, both included, or a single frame
+                    String[] frames = value(args, ++i).split("-");
+                    options.animate = true;
+                    options.firstFrame = Integer.parseInt(frames[0]);
+                    options.lastFrame = Integer.parseInt(frames[frames.length - 1]);
+                    if (options.firstFrame < 0 || options.lastFrame < options.firstFrame) {
+                        throw new IllegalArgumentException("invalid frames: " + args[i]);
+                    }
+                }
+                default -> throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        // checkpoints are committed at pass boundaries
+        if (options.checkpoint != null || options.resume != null) {
+            options.progressive = true;
+        }
+        return options;
+    }
+
+    /**
+     * @return the options that decide what the image looks like, from which a worker rebuilds the same renderer
+     */
+    List<String> jobArguments() {
+        List<String> job = new ArrayList<>(List.of(
+                "--scene", String.valueOf(scene),
+                "--width", String.valueOf(width),
+                "--spp", String.valueOf(samplesPerPixel),
+                "--sampler", sampler,
+                "--seed", String.valueOf(seed),
+                "--accelerator", accelerator
+        ));
+        // the structures do not change the image, but a worker should trace as fast as the coordinator was told to
+        if (bvh != null) job.addAll(List.of("--bvh", bvh));
+        if (bvhLayout != null) job.addAll(List.of("--bvh-layout", bvhLayout));
+        return job;
+    }
+
+    /**
+     * @return the sampler selected by {@code --sampler}
+     */
+    Sampler createSampler() {
+        return switch (sampler) {
+            case "independent" -> new IndependentSampler(seed);
+            case "sobol" -> new SobolSampler(seed);
+            case "halton" -> new HaltonSampler(seed);
+            case "bluenoise" -> new BlueNoiseSampler(seed);
+            default -> throw new IllegalArgumentException("unknown sampler: " + sampler);
+        };
+    }
+
+    /**
+     * @return the BVH mode selected by {@code --bvh}, or null to let the scene decide
+     */
+    BVHMode bvhMode() {
+        if (bvh == null) return null;
+        return switch (bvh) {
+            case "median" -> BVHMode.MEDIAN;
+            case "sah" -> BVHMode.SAH;
+            case "linear", "lbvh" -> BVHMode.LINEAR;
+            case "lazy" -> BVHMode.LAZY;
+            case "motion" -> BVHMode.MOTION;
+            case "dynamic" -> BVHMode.DYNAMIC;
+            default -> throw new IllegalArgumentException("unknown BVH mode: " + bvh);
+        };
+    }
+
+    /**
+     * @return the BVH layout selected by {@code --bvh-layout}, or null to let the scene decide
+     */
+    BVHLayout bvhLayout() {
+        if (bvhLayout == null) return null;
+        return switch (bvhLayout) {
+            case "flat" -> BVHLayout.FLAT;
+            case "wide" -> BVHLayout.WIDE;
+            case "compressed" -> BVHLayout.COMPRESSED;
+            default -> throw new IllegalArgumentException("unknown BVH layout: " + bvhLayout);
+        };
+    }
+
+    /**
+     * @return the name of the accelerator of the top level selected by {@code --accelerator}, or null to let the
+     * scene choose
+     * @throws IllegalArgumentException if no accelerator is registered under the name
+     */
+    String accelerator() {
+        return switch (accelerator) {
+            case "auto" -> null;
+            case "kdtree" -> Accelerators.KD_TREE;
+            default -> {
+                // fails early for a name nothing is registered under
+                Accelerators.factory(accelerator);
+                yield accelerator;
+            }
+        };
+    }
+
+    /**
+     * @return how the scene builds and stores its BVHs, as selected by the {@code --bvh} and {@code --accelerator}
+     * options
+     */
+    Scene.BVHSettings bvhSettings() {
+        return new Scene.BVHSettings(bvhMode(), bvhLayout(), bvhCache, accelerator());
+    }
+
+    private static Duration seconds(String value) {
+        return Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("missing value for option " + args[i - 1]);
+        }
+        return args[i];
+    }
+}
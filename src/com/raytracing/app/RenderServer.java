@@ -0,0 +1,196 @@
+package com.raytracing.app;
+
+import com.raytracing.base.Vector3d;
+import com.raytracing.render.FrameBuffer;
+import com.raytracing.render.Renderer;
+import com.raytracing.render.TileScheduler;
+import com.raytracing.textures.ImageTexture;
+import com.raytracing.utils.Canvas;
+import com.raytracing.utils.LruCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders images over HTTP in a long-lived process, so that jobs skip building scenes, decoding textures and
+ * warming up the JIT.
+ * <p>
+ * {@code GET /render?scene=7&width=200&spp=16} renders a scene and answers with a PNG image. Besides the scene and
+ * the size, a job may set {@code sampler}, {@code seed}, {@code lookfrom=x,y,z}, {@code lookat=x,y,z} and
+ * {@code vfov}. Jobs wider or with more samples per pixel than the server allows are rejected with 400.
+ * {@code GET /status} reports the caches.
+ * <p>
+ * Built scenes, including their BVHs, and decoded textures are kept in LRU caches. Jobs copy the cached scene
+ * before changing its settings, so jobs on the same scene run concurrently. The tiles of all jobs share one
+ * fork-join pool.
+ */
+public class RenderServer {
+    private final LruCache<Integer, Scene> scenes;
+    private final LruCache<String, ImageTexture> textures;
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final int maxWidth;
+    private final int maxSamplesPerPixel;
+
+    /**
+     * @param sceneCapacity      the number of built scenes kept
+     * @param textureCapacity    the number of decoded textures kept
+     * @param pool               the pool that renders the tiles of all jobs
+     * @param tileSize           the side length of a tile
+     * @param maxWidth           the widest image a job may ask for
+     * @param maxSamplesPerPixel the most samples per pixel a job may ask for
+     */
+    public RenderServer(int sceneCapacity, int textureCapacity, ForkJoinPool pool, int tileSize, int maxWidth,
+                        int maxSamplesPerPixel) {
+        if (maxWidth < 1 || maxSamplesPerPixel < 1) {
+            throw new IllegalArgumentException("limits must be positive: width " + maxWidth + ", spp "
+                    + maxSamplesPerPixel);
+        }
+        scenes = new LruCache<>(sceneCapacity);
+        textures = new LruCache<>(textureCapacity);
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.maxWidth = maxWidth;
+        this.maxSamplesPerPixel = maxSamplesPerPixel;
+    }
+
+    /**
+     * Starts serving on the port and returns; the server runs until the process exits
+     *
+     * @param port the port
+     * @param jobs the number of jobs rendered at the same time
+     */
+    public void start(int port, int jobs) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        server.setExecutor(executor);
+        server.createContext("/render", this::render);
+        server.createContext("/status", this::status);
+        server.start();
+        System.out.println("Serving renders on port " + server.getAddress().getPort());
+    }
+
+    private void render(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] image;
+            try {
+                image = render(query(exchange));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (IOException | RuntimeException e) {
+                // the client still gets an answer when loading or rendering the scene fails
+                respond(exchange, 500, "text/plain", (e + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            respond(exchange, 200, "image/png", image);
+        }
+    }
+
+    /**
+     * Renders the job described by the parameters
+     *
+     * @return the image encoded as PNG
+     * @throws IllegalArgumentException if a parameter is malformed or beyond the limits of the server
+     */
+    byte[] render(Map<String, String> parameters) throws IOException {
+        long start = System.nanoTime();
+        List<String> arguments = new ArrayList<>();
+        for (String name : List.of("scene", "width", "spp", "sampler", "seed")) {
+            if (parameters.containsKey(name)) {
+                arguments.add("--" + name);
+                arguments.add(parameters.get(name));
+            }
+        }
+        RenderOptions options = RenderOptions.parse(arguments.toArray(String[]::new));
+        // checked before the scene is loaded, so that a job too large for the server costs nothing
+        if (options.width > maxWidth) {
+            throw new IllegalArgumentException("width must be at most " + maxWidth + ": " + options.width);
+        }
+        if (options.samplesPerPixel > maxSamplesPerPixel) {
+            throw new IllegalArgumentException("spp must be at most " + maxSamplesPerPixel + ": "
+                    + options.samplesPerPixel);
+        }
+        double verticalFov = parameters.containsKey("vfov") ? Double.parseDouble(parameters.get("vfov")) : 90;
+        if (!(verticalFov > 0 && verticalFov < 180)) {
+            throw new IllegalArgumentException("vfov must be between 0 and 180 degrees: " + verticalFov);
+        }
+
+        Scene scene = scenes.get(options.scene,
+                number -> Scene.load(number, path -> textures.get(path, ImageTexture::new))).copy();
+        if (options.width > 0) scene.imageWidth = options.width;
+        if (options.samplesPerPixel > 0) scene.samplesPerPixel = options.samplesPerPixel;
+        if (parameters.containsKey("lookfrom")) scene.lookFrom = vector(parameters.get("lookfrom"));
+        if (parameters.containsKey("lookat")) scene.lookAt = vector(parameters.get("lookat"));
+        if (parameters.containsKey("vfov")) scene.verticalFov = verticalFov;
+
+        Renderer renderer = scene.renderer(options.createSampler());
+        FrameBuffer frame = new FrameBuffer(scene.imageWidth, scene.imageHeight());
+        new TileScheduler(scene.imageWidth, scene.imageHeight(), tileSize)
+                .renderParallel(pool, tile -> renderer.renderTile(tile, frame));
+
+        var output = new ByteArrayOutputStream();
+        try (Canvas canvas = new Canvas(frame.width(), frame.height())) {
+            frame.writeTo(canvas);
+            canvas.write("png", output);
+        }
+        System.out.printf("Rendered scene %d at %dx%d, %d spp in %.2f s%n", options.scene,
+                frame.width(), frame.height(), scene.samplesPerPixel, (System.nanoTime() - start) / 1e9);
+        return output.toByteArray();
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String status = String.format("scenes: %d cached, %d hits, %d misses%n"
+                            + "textures: %d cached, %d hits, %d misses%n"
+                            + "pool: %d threads, %d active%n",
+                    scenes.size(), scenes.hits(), scenes.misses(),
+                    textures.size(), textures.hits(), textures.misses(),
+                    pool.getParallelism(), pool.getActiveThreadCount());
+            respond(exchange, 200, "text/plain", status.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static Vector3d vector(String value) {
+        String[] components = value.split(",");
+        if (components.length != 3) {
+            throw new IllegalArgumentException("expected x,y,z but got " + value);
+        }
+        return new Vector3d(Double.parseDouble(components[0]), Double.parseDouble(components[1]),
+                Double.parseDouble(components[2]));
+    }
+}
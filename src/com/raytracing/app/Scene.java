@@ -0,0 +1,902 @@
+package com.raytracing.app;
+
+import com.raytracing.animation.Animation;
+import com.raytracing.animation.CameraPose;
+import com.raytracing.animation.Pose;
+import com.raytracing.animation.Track;
+import com.raytracing.base.PixelColor;
+import com.raytracing.base.Vector3d;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.interfaces.Material;
+import com.raytracing.interfaces.Sampler;
+import com.raytracing.interfaces.Texture;
+import com.raytracing.materials.Dielectric;
+import com.raytracing.materials.DiffuseLight;
+import com.raytracing.materials.Lambertian;
+import com.raytracing.materials.Metal;
+import com.raytracing.render.Renderer;
+import com.raytracing.scene.*;
+import com.raytracing.structures.Accelerator;
+import com.raytracing.structures.Accelerators;
+import com.raytracing.structures.BVHBuilder;
+import com.raytracing.structures.BVHLayout;
+import com.raytracing.structures.BVHMode;
+import com.raytracing.structures.BVHSnapshot;
+import com.raytracing.structures.DynamicBVH;
+import com.raytracing.structures.FlatBVH;
+import com.raytracing.structures.MotionBVH;
+import com.raytracing.textures.CheckerTexture;
+import com.raytracing.textures.ImageTexture;
+import com.raytracing.textures.NoiseTexture;
+import com.raytracing.transform.Affine;
+import com.raytracing.transform.Instance;
+import com.raytracing.transform.SceneCompiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * One of the numbered example scenes together with its default render settings.
+ * Every call of {@link #load} builds the objects of the scene from scratch and puts them under a top-level
+ * accelerator, a BVH or a grid, whichever suits them.
+ * Copies of a scene share its objects, which are never changed while rendering, but have their own settings.
+ * A scene loaded by {@link #loadAnimation} is built once for all frames of its animation and moved from frame to
+ * frame by {@link #setTime}.
+ */
+public class Scene {
+    /**
+     * Loads the image of an image texture
+     */
+    @FunctionalInterface
+    interface TextureLoader {
+        ImageTexture load(String path) throws IOException;
+    }
+
+    double aspectRatio = 4.0 / 3.0;
+    int imageWidth = 400;
+    int samplesPerPixel = 100;
+    int maxDepth = 50;
+
+    PixelColor background = new PixelColor(0.7, 0.8, 1.0);
+    Vector3d lookFrom;
+    Vector3d lookAt;
+    Vector3d viewUp;
+    double verticalFov;
+    double aperture;
+    double focusDistance;
+    HittableList world = new HittableList();
+    final HittableList lights;
+    // the tracks of the scene, or null for a still scene
+    Animation animation;
+    // the entries of the world an editor may change, which are in no top-level BVH; null for a scene that is not
+    // edited
+    HittableList editableObjects;
+
+    /**
+     * How the BVHs of a scene are built and stored
+     *
+     * @param mode        how to build the BVHs, or null for the way every scene prefers
+     * @param layout      how to store the BVHs, or null for the way every scene prefers
+     * @param cache       the directory of BVH snapshots, or null to build every BVH from scratch
+     * @param accelerator the accelerator of the top level, or null for the one that suits the entries under it, which
+     *                    is a BVH if a mode or a layout is given
+     */
+    record BVHSettings(BVHMode mode, BVHLayout layout, Path cache, String accelerator) {
+        static final BVHSettings DEFAULT = new BVHSettings(null, null, null, null);
+    }
+
+    /**
+     * What moving an animated scene to the time of a frame did to its top-level BVH
+     *
+     * @param costRatio the cost of the BVH after refitting it, relative to its cost when it was last built
+     * @param rebuilt   whether the cost was too high, so the BVH was rebuilt
+     */
+    record FrameUpdate(double costRatio, boolean rebuilt) {
+        @Override
+        public String toString() {
+            return String.format(rebuilt ? "rebuilt the BVH at %.2fx its built cost" : "refitted the BVH to %.2fx its "
+                    + "built cost", costRatio);
+        }
+    }
+
+    // entries of the world with a larger share of its surface area stay out of the top-level BVH
+    private static final double TOP_LEVEL_AREA_FRACTION = 0.5;
+    private static final double FRAMES_PER_SECOND = 24;
+    private static final double ANIMATION_SECONDS = 4;
+    // a refitted top-level BVH that costs this many times as much as when it was built is rebuilt
+    private static final double REBUILD_COST_RATIO = 1.3;
+
+    private final TextureLoader textures;
+    private final BVHSettings bvhSettings;
+    // the number the scene was built by, part of the keys of its BVH snapshots
+    private int number;
+    // the top-level BVH of an animated scene with the objects under it and the entries of the world beside it
+    private FlatBVH topLevel;
+    private BVHMode topLevelMode;
+    private HittableList topLevelObjects;
+    private HittableList outsideTopLevel;
+    private double builtCost;
+
+    private Scene(TextureLoader textures, BVHSettings bvhSettings) {
+        this(textures, bvhSettings, new HittableList());
+    }
+
+    private Scene(TextureLoader textures, BVHSettings bvhSettings, HittableList lights) {
+        this.textures = textures;
+        this.bvhSettings = bvhSettings;
+        this.lights = lights;
+    }
+
+    /**
+     * @return a copy of this scene with its own settings and the same objects
+     */
+    Scene copy() {
+        Scene copy = new Scene(textures, bvhSettings, lights);
+        copy.aspectRatio = aspectRatio;
+        copy.imageWidth = imageWidth;
+        copy.samplesPerPixel = samplesPerPixel;
+        copy.maxDepth = maxDepth;
+        copy.background = background;
+        copy.setCamera(lookFrom, lookAt, viewUp, verticalFov, aperture, focusDistance);
+        copy.world = world;
+        return copy;
+    }
+
+    /**
+     * Builds a scene by its number
+     *
+     * @param number the number of the scene, numbers without a scene build the small final scene
+     */
+    static Scene load(int number) throws IOException {
+        return load(number, ImageTexture::new);
+    }
+
+    /**
+     * Builds a scene by its number
+     *
+     * @param number   the number of the scene, numbers without a scene build the small final scene
+     * @param textures loads the images of the image textures of the scene
+     */
+    static Scene load(int number, TextureLoader textures) throws IOException {
+        return load(number, textures, BVHSettings.DEFAULT);
+    }
+
+    /**
+     * Builds a scene by its number
+     *
+     * @param number    the number of the scene, numbers without a scene build the small final scene
+     * @param textures  loads the images of the image textures of the scene
+     * @param bvhSettings how to build and store the BVHs of the scene
+     */
+    static Scene load(int number, TextureLoader textures, BVHSettings bvhSettings) throws IOException {
+        Scene scene = new Scene(textures, bvhSettings);
+        scene.build(number);
+        return scene;
+    }
+
+    /**
+     * Builds a scene by its number to be edited while it renders. The entries of the world that would go under
+     * the top-level BVH are kept in {@link #editableObjects} instead, and the world only holds the others.
+     *
+     * @param number      the number of the scene, numbers without a scene build the small final scene
+     * @param textures    loads the images of the image textures of the scene
+     * @param bvhSettings how to build and store the BVHs of the scene
+     */
+    static Scene loadEditable(int number, TextureLoader textures, BVHSettings bvhSettings) throws IOException {
+        Scene scene = new Scene(textures, bvhSettings);
+        scene.editableObjects = new HittableList();
+        scene.build(number);
+        return scene;
+    }
+
+    private void build(int number) throws IOException {
+        this.number = number;
+        switch (number) {
+            case 1 -> boundingSpheres();
+            case 2 -> checkeredSpheres();
+            case 3 -> earth();
+            case 4 -> perlinSpheres();
+            case 5 -> quads();
+            case 6 -> sampleLight();
+            case 7 -> cornellBox();
+            case 8 -> cornellSmoke();
+            case 9 -> finalScene(800, 5_000, 20);
+            case 11 -> sphereField(1_000_000);
+            default -> finalScene(400, 250, 4);
+        }
+        compile();
+        buildTopLevel();
+    }
+
+    /**
+     * Builds a scene by its number with the tracks of its animation, at the start of the animation
+     *
+     * @param number      the number of the scene
+     * @param textures    loads the images of the image textures of the scene
+     * @param bvhSettings how to build and store the BVHs of the scene, where the top-level BVH is always flat so it
+     *                    can be refitted
+     * @throws IllegalArgumentException if the scene has no animation
+     */
+    static Scene loadAnimation(int number, TextureLoader textures, BVHSettings bvhSettings) throws IOException {
+        Scene scene = new Scene(textures, bvhSettings);
+        scene.animation = new Animation(FRAMES_PER_SECOND, ANIMATION_SECONDS);
+        switch (number) {
+            case 1 -> scene.boundingSpheres();
+            case 7 -> scene.cornellBox();
+            default -> throw new IllegalArgumentException("scene " + number + " has no animation");
+        }
+        scene.compile();
+        scene.buildTopLevel();
+        System.out.printf("Animating %d objects and %s over %d frames%n", scene.animation.objectCount(),
+                scene.animation.camera() == null ? "a still camera" : "the camera", scene.animation.frameCount());
+        return scene;
+    }
+
+    /**
+     * Moves the objects and the camera of an animated scene to a time. The top-level BVH is refitted to the new
+     * boxes of the objects, and only rebuilt once that makes it cost more than {@link #REBUILD_COST_RATIO} times
+     * as much as when it was built. No ray may be traced at the same time.
+     *
+     * @param time the time in seconds
+     * @return what happened to the top-level BVH, or null if the scene has none
+     */
+    FrameUpdate setTime(double time) {
+        animation.setTime(time);
+        var camera = animation.camera();
+        if (camera != null) {
+            var pose = camera.at(time);
+            setCamera(pose.lookFrom(), pose.lookAt(), pose.viewUp(), pose.verticalFov(), pose.aperture(),
+                    pose.focusDistance());
+        }
+        if (topLevel == null) return null;
+        topLevel.refit();
+        double costRatio = BVHBuilder.cost(topLevel) / builtCost;
+        if (costRatio <= REBUILD_COST_RATIO) return new FrameUpdate(costRatio, false);
+
+        topLevel = new FlatBVH(topLevelMode.build(topLevelObjects));
+        builtCost = BVHBuilder.cost(topLevel);
+        world = new HittableList();
+        outsideTopLevel.forEach(world::add);
+        world.add(topLevel);
+        return new FrameUpdate(costRatio, true);
+    }
+
+    int imageHeight() {
+        return (int) (imageWidth / aspectRatio);
+    }
+
+    /**
+     * @return a renderer of this scene at its current settings
+     */
+    Renderer renderer(Sampler sampler) {
+        var camera = new Camera(lookFrom, lookAt, viewUp, verticalFov, aspectRatio, aperture, focusDistance);
+        return new Renderer(world, lights, camera, background,
+                imageWidth, imageHeight(), samplesPerPixel, maxDepth, sampler);
+    }
+
+    private void setCamera(Vector3d lookFrom, Vector3d lookAt, Vector3d viewUp, double verticalFov,
+                           double aperture, double focusDistance) {
+        this.lookFrom = lookFrom;
+        this.lookAt = lookAt;
+        this.viewUp = viewUp;
+        this.verticalFov = verticalFov;
+        this.aperture = aperture;
+        this.focusDistance = focusDistance;
+    }
+
+    private void finalScene(int width, int samples, int depth) throws IOException {
+        Random rng = new Random(42);
+
+        // ground green boxes
+        HittableList boxes1 = groundBoxes(rng);
+        world.add(boxes1);
+
+        // light
+        var light = new DiffuseLight(new PixelColor(7, 7, 7));
+        world.add(new Quad(new Vector3d(123, 554, 147), new Vector3d(300, 0, 0), new Vector3d(0, 0, 265), light));
+
+        // brown moving sphere
+        var center1 = new Vector3d(400, 400, 200);
+        var center2 = center1.add(new Vector3d(30, 0, 0));
+        world.add(new Sphere(center1, center2, 50, new Lambertian(new PixelColor(0.7, 0.3, 0.1))));
+
+        // glass ball
+        world.add(new Sphere(new Vector3d(260, 150, 45), 50, new Dielectric(1.5)));
+
+        // diffuse metal ball
+        world.add(new Sphere(new Vector3d(0, 150, 145), 50, new Metal(new PixelColor(0.8, 0.8, 0.9), 1.0)));
+
+        // glass ball with blue volume content
+        var boundary = new Sphere(new Vector3d(360, 150, 145), 70, new Dielectric(1.5));
+        world.add(boundary);
+        world.add(new ConstantMedium(boundary, 0.2, new PixelColor(0.2, 0.4, 0.9)));
+
+        // the whole scene is contained in fog
+        boundary = new Sphere(new Vector3d(), 5000, new Dielectric(1.5));
+        world.add(new ConstantMedium(boundary, 1e-4, PixelColor.WHITE));
+
+        // earth
+        String texturePath = Paths.get(System.getProperty("user.dir"), "assets", "earthmap.jpg").toString();
+        ImageTexture earthTexture = textures.load(texturePath);
+        world.add(new Sphere(new Vector3d(400, 200, 400), 100, new Lambertian(earthTexture)));
+
+        // perlin ball
+        var perlinTexture = new NoiseTexture(0.2); // low frequency
+        world.add(new Sphere(new Vector3d(220, 280, 300), 80, new Lambertian(perlinTexture)));
+
+        // cluster of white balls
+        HittableList boxes2 = sphereCluster(rng);
+        world.add(new Instance(boxes2,
+                Affine.rotationY(15).then(Affine.translation(new Vector3d(-100, 270, 395)))));
+
+        aspectRatio = 1.0;
+        imageWidth = width;
+        samplesPerPixel = samples;
+        maxDepth = depth;
+        background = PixelColor.BLACK;
+
+        double vFov = 40;
+        var lookFrom = new Vector3d(478, 278, -600);
+        var lookAt = new Vector3d(278, 278, 0);
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    /**
+     * @return the 400 green boxes on the ground of the final scene
+     */
+    static HittableList groundBoxes(Random rng) {
+        HittableList boxes = new HittableList();
+        var ground = new Lambertian(new PixelColor(0.48, 0.83, 0.53));
+        int boxesPerSide = 20;
+        for (int i = 0; i < boxesPerSide; i++) {
+            for (int j = 0; j < boxesPerSide; j++) {
+                var w = 100.0;
+                var x0 = -1000.0 + i * w;
+                var z0 = -1000.0 + j * w;
+                var y0 = 0.0;
+                var x1 = x0 + w;
+                var y1 = rng.nextDouble(1, 101);
+                var z1 = z0 + w;
+
+                boxes.add(new Box(new Vector3d(x0, y0, z0), new Vector3d(x1, y1, z1), ground));
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * @return the cluster of 1000 white balls of the final scene
+     */
+    static HittableList sphereCluster(Random rng) {
+        HittableList spheres = new HittableList();
+        var white = new Lambertian(new PixelColor(0.73, 0.73, 0.73));
+        int ns = 1000; // number of balls
+        for (int j = 0; j < ns; j++) {
+            spheres.add(
+                    new Sphere(
+                            new Vector3d(rng.nextDouble(165), rng.nextDouble(165), rng.nextDouble(165)),
+                            10,
+                            white
+                    )
+            );
+        }
+        return spheres;
+    }
+
+    private void cornellSmoke() {
+        var red = new Lambertian(new PixelColor(0.65, 0.05, 0.05));
+        var white = new Lambertian(new PixelColor(0.73, 0.73, 0.73));
+        var green = new Lambertian(new PixelColor(0.12, 0.45, 0.15));
+        var light = new DiffuseLight(new PixelColor(7, 7, 7));
+
+        world.add(new Quad(new Vector3d(555, 0, 0), new Vector3d(0, 555, 0), new Vector3d(0, 0, 555), green));
+        world.add(new Quad(new Vector3d(0, 0, 0), new Vector3d(0, 555, 0), new Vector3d(0, 0, 555), red));
+        world.add(new Quad(new Vector3d(113, 554, 127), new Vector3d(330, 0, 0), new Vector3d(0, 0, 305), light));
+        world.add(new Quad(new Vector3d(0, 0, 0), new Vector3d(555, 0, 0), new Vector3d(0, 0, 555), white));
+        world.add(new Quad(new Vector3d(555, 555, 555), new Vector3d(-555, 0, 0), new Vector3d(0, 0, -555), white));
+        world.add(new Quad(new Vector3d(0,0, 555), new Vector3d(555, 0, 0), new Vector3d(0, 555, 0), white));
+
+        Hittable box1 = new Box(new Vector3d(), new Vector3d(165, 330, 165), white);
+        box1 = new Instance(box1, Affine.rotationY(15).then(Affine.translation(new Vector3d(265, 0, 295))));
+        world.add(new ConstantMedium(box1, 0.01, PixelColor.BLACK));
+
+        Hittable box2 = new Box(new Vector3d(), new Vector3d(165, 165, 165), white);
+        box2 = new Instance(box2, Affine.rotationY(-18).then(Affine.translation(new Vector3d(130, 0, 65))));
+        world.add(new ConstantMedium(box2, 0.01, PixelColor.WHITE));
+
+        aspectRatio = 1.0;
+        imageWidth = 600;
+        samplesPerPixel = 200;
+        maxDepth = 50;
+        background = PixelColor.BLACK;
+
+        double vFov = 40;
+        var lookFrom = new Vector3d(278, 278, -800);
+        var lookAt = new Vector3d(278, 278, 0);
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    private void cornellBox() {
+        var red = new Lambertian(new PixelColor(0.65, 0.05, 0.05));
+        var white = new Lambertian(new PixelColor(0.73, 0.73, 0.73));
+        var green = new Lambertian(new PixelColor(0.12, 0.45, 0.15));
+        var light = new DiffuseLight(new PixelColor(15, 15, 15));
+
+        world.add(new Quad(new Vector3d(555, 0, 0), new Vector3d(0, 555, 0), new Vector3d(0, 0, 555), green));
+        world.add(new Quad(new Vector3d(0, 0, 0), new Vector3d(0, 555, 0), new Vector3d(0, 0, 555), red));
+        world.add(new Quad(new Vector3d(343, 554, 332), new Vector3d(-130, 0, 0), new Vector3d(0, 0, -105), light));
+        world.add(new Quad(new Vector3d(0, 0, 0), new Vector3d(555, 0, 0), new Vector3d(0, 0, 555), white));
+        world.add(new Quad(new Vector3d(555, 555, 555), new Vector3d(-555, 0, 0), new Vector3d(0, 0, -555), white));
+        world.add(new Quad(new Vector3d(0,0, 555), new Vector3d(555, 0, 0), new Vector3d(0, 555, 0), white));
+
+        Hittable box1 = new Box(new Vector3d(), new Vector3d(165, 330, 165), white);
+        if (animation == null) {
+            box1 = new Instance(box1, Affine.rotationY(15).then(Affine.translation(new Vector3d(265, 0, 295))));
+        } else {
+            // in the animation the tall box turns about its middle once, while the camera moves in and back out
+            var centering = new Vector3d(-82.5, 0, -82.5);
+            var position = new Vector3d(265, 0, 295).subtract(Affine.rotationY(15).point(centering));
+            box1 = animation.animate(new Instance(box1, Affine.translation(centering)), new Track<Pose>(Pose::between)
+                    .key(0, new Pose(position, 15))
+                    .key(ANIMATION_SECONDS, new Pose(position, 375)));
+        }
+        world.add(box1);
+
+        var glass = new Dielectric(1.5);
+        world.add(new Sphere(new Vector3d(190, 90, 190), 90, glass));
+
+        lights.add(new Quad(new Vector3d(343, 554, 332), new Vector3d(-130, 0, 0), new Vector3d(0, 0, -105), null));
+        lights.add(new Sphere(new Vector3d(190, 90, 190), 90, null));
+
+        aspectRatio = 1.0;
+        imageWidth = 600;
+        samplesPerPixel = 1000;
+        maxDepth = 50;
+        background = PixelColor.BLACK;
+
+        double vFov = 40;
+        var lookFrom = new Vector3d(278, 278, -800);
+        var lookAt = new Vector3d(278, 278, 0);
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+        if (animation != null) {
+            animation.setCamera(new Track<CameraPose>(CameraPose::between)
+                    .key(0, new CameraPose(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0))
+                    .key(ANIMATION_SECONDS / 2, new CameraPose(new Vector3d(278, 278, -500), lookAt, viewUp, vFov,
+                            0.0, 10.0))
+                    .key(ANIMATION_SECONDS, new CameraPose(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0)));
+        }
+    }
+
+    private void sampleLight() {
+        NoiseTexture perlin = new NoiseTexture(4.0);
+        world.add(new Sphere(new Vector3d(0, -1000, 0), 1000, new Lambertian(perlin)));
+        world.add(new Sphere(new Vector3d(0, 2, 0), 2, new Lambertian(perlin)));
+
+        DiffuseLight diffuseLight = new DiffuseLight(new PixelColor(4, 4, 4));
+        world.add(new Sphere(new Vector3d(0, 7, 0), 2, diffuseLight));
+        world.add(new Quad(new Vector3d(3, 1, -2), new Vector3d(2, 0, 0), new Vector3d(0, 2, 0), diffuseLight));
+
+        aspectRatio = 16.0 / 9.0;
+        imageWidth = 400;
+        samplesPerPixel = 100;
+        maxDepth = 50;
+        background = PixelColor.BLACK;
+
+        double vFov = 20;
+        var lookFrom = new Vector3d(26, 3, 6);
+        var lookAt = new Vector3d(0, 2, 0);
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    private void quads() {
+        var leftRed = new Lambertian(new PixelColor(1.0, 0.2, 0.2));
+        var backGreen = new Lambertian(new PixelColor(0.2, 1.0, 0.2));
+        var rightBlue = new Lambertian(new PixelColor(0.2, 0.2, 1.0));
+        var upperOrange = new Lambertian(new PixelColor(1.0, 0.5, 0.0));
+        var lowerTeal = new Lambertian(new PixelColor(0.2, 0.8, 0.8));
+
+        world.add(new Quad(new Vector3d(-3, -2, 5), new Vector3d(0, 0, -4), new Vector3d(0, 4, 0), leftRed));
+        world.add(new Quad(new Vector3d(-2, -2, 0), new Vector3d(4, 0, 0), new Vector3d(0, 4, 0), backGreen));
+        world.add(new Quad(new Vector3d(3, -2, 1), new Vector3d(0, 0, 4), new Vector3d(0, 4, 0), rightBlue));
+        world.add(new Quad(new Vector3d(-2, 3, 1), new Vector3d(4, 0, 0), new Vector3d(0, 0, 4), upperOrange));
+        world.add(new Quad(new Vector3d(-2, -3, 5), new Vector3d(4, 0, 0), new Vector3d(0, 0, -4), lowerTeal));
+
+        aspectRatio = 1.0;
+        imageWidth = 400;
+        samplesPerPixel = 100;
+        maxDepth = 50;
+
+        double vFov = 80;
+        var lookFrom = new Vector3d(0, 0, 9);
+        var lookAt = new Vector3d();
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    private void perlinSpheres() {
+        NoiseTexture perlin = new NoiseTexture(4.0);
+        world.add(new Sphere(new Vector3d(0, -1000, 0), 1000, new Lambertian(perlin)));
+        world.add(new Sphere(new Vector3d(0, 2, 0), 2, new Lambertian(perlin)));
+
+        aspectRatio = 16.0 / 9.0;
+        imageWidth = 400;
+        samplesPerPixel = 100;
+        maxDepth = 50;
+
+        double vFov = 20;
+        var lookFrom = new Vector3d(13, 2, 3);
+        var lookAt = new Vector3d();
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    private void earth() throws IOException {
+        String texturePath = Paths.get(System.getProperty("user.dir"), "assets", "earthmap.jpg").toString();
+        ImageTexture earthTexture = textures.load(texturePath);
+        Sphere globe = new Sphere(new Vector3d(), 2, new Lambertian(earthTexture));
+        world.add(globe);
+
+        aspectRatio = 16.0 / 9.0;
+        imageWidth = 400;
+        samplesPerPixel = 100;
+        maxDepth = 50;
+
+        double vFov = 20;
+        var lookFrom = new Vector3d(0, 0, 12);
+        var lookAt = new Vector3d();
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    private void checkeredSpheres() {
+        Texture checker = new CheckerTexture(0.32, new PixelColor(0.2, 0.3, 0.1), new PixelColor(0.9, 0.9, 0.9));
+
+        world.add(new Sphere(new Vector3d(0, -10, 0), 10, new Lambertian(checker)));
+        world.add(new Sphere(new Vector3d(0, 10, 0), 10, new Lambertian(checker)));
+
+        aspectRatio = 16.0 / 9.0;
+        imageWidth = 400;
+        samplesPerPixel = 100;
+        maxDepth = 50;
+
+        double vFov = 20;
+        var lookFrom = new Vector3d(13, 2, 3);
+        var lookAt = new Vector3d();
+        var viewUp = new Vector3d(0, 1, 0);
+
+        setCamera(lookFrom, lookAt, viewUp, vFov, 0.0, 10.0);
+    }
+
+    /**
+     * A cube of small random balls, for a BVH over a huge number of objects
+     *
+     * @param count the number of balls
+     */
+    private void sphereField(int count) {
+        Random rng = new Random(42);
+
+        aspectRatio = 16.0 / 9.0;
+        imageWidth = 400;
+        samplesPerPixel = 16;
+        maxDepth = 8;
+
+        var lookFrom = new Vector3d(180, 120, 260);
+        var lookAt = new Vector3d(0, 0, 0);
+        var viewUp = new Vector3d(0, 1, 0);
+        setCamera(lookFrom, lookAt, viewUp, 40, 0.0, 10.0);
+
+        world.add(cachedBvh("sphereField count=" + count + " seed=42", () -> {
+            Material[] materials = new Material[16];
+            for (int i = 0; i < materials.length; i++) {
+                materials[i] = new Lambertian(new PixelColor(rng.nextDouble(0.2, 0.9), rng.nextDouble(0.2, 0.9),
+                        rng.nextDouble(0.2, 0.9)));
+            }
+            var balls = new HittableList();
+            for (int i = 0; i < count; i++) {
+                var center = new Vector3d(rng.nextDouble(-100, 100), rng.nextDouble(-100, 100),
+                        rng.nextDouble(-100, 100));
+                balls.add(new Sphere(center, 0.4, materials[rng.nextInt(materials.length)]));
+            }
+            return balls;
+        }, BVHMode.LINEAR, BVHLayout.COMPRESSED));
+    }
+
+    private void boundingSpheres() {
+        Random rng = new Random(42);
+
+        aspectRatio = 3.0 / 2.0;
+        imageWidth = 400;
+        samplesPerPixel = 100;
+
+        var lookFrom = new Vector3d(13, 2, 3);
+        var lookAt = new Vector3d(0, 0, 0);
+        var viewUp = new Vector3d(0, 1, 0);
+        double distToFocus = 10;
+        double aperture = 0.1;
+        setCamera(lookFrom, lookAt, viewUp, 20, aperture, distToFocus);
+
+        Texture checker = new CheckerTexture(0.32, new PixelColor(0.2, 0.3, 0.1), new PixelColor(0.9, 0.9, 0.9));
+        Material groundMaterial = new Lambertian(checker);
+        world.add(new Sphere(new Vector3d(0, -1000, 0), 1000, groundMaterial));
+
+        // in the animation the small balls bounce, each at its own pace, while the camera swings around by a
+        // quarter turn; the bounces are drawn from their own generator, so the balls stay where they are
+        Random bounces = new Random(7);
+        if (animation != null) {
+            var camera = new Track<CameraPose>(CameraPose::between);
+            for (int key = 0; key <= 6; key++) {
+                var from = Affine.rotationY(-15.0 * key).point(lookFrom);
+                camera.key(ANIMATION_SECONDS * key / 6, new CameraPose(from, lookAt, viewUp, 20, aperture,
+                        distToFocus));
+            }
+            animation.setCamera(camera);
+        }
+
+        for (int a = -11; a < 11; a++) {
+            for (int b = -11; b < 11; b++) {
+                double chooseMaterial = rng.nextDouble();
+                var center = new Vector3d(a + rng.nextDouble(0.9), 0.2, b + rng.nextDouble(0.9));
+
+                if (center.subtract(new Vector3d(4, 0.2, 0)).length() > 0.9) {
+                    Material sphereMaterial;
+
+                    if (chooseMaterial < 0.8) {
+                        // diffuse
+                        var albedo = new PixelColor(
+                                rng.nextDouble() * rng.nextDouble(),
+                                rng.nextDouble() * rng.nextDouble(),
+                                rng.nextDouble() * rng.nextDouble()
+                        );
+                        sphereMaterial = new Lambertian(albedo);
+                        var center2 = center.add(new Vector3d(0.0, rng.nextDouble(0.5), 0.0));
+                        addBall(new Sphere(center, center2, 0.2, sphereMaterial), bounces);
+                    } else if (chooseMaterial < 0.95) {
+                        // metal
+                        var albedo = new PixelColor(
+                                rng.nextDouble(0.5, 1),
+                                rng.nextDouble(0.5, 1),
+                                rng.nextDouble(0.5, 1)
+                        );
+                        var fuzz = rng.nextDouble(0.5);
+                        sphereMaterial = new Metal(albedo, fuzz);
+                        addBall(new Sphere(center, 0.2, sphereMaterial), bounces);
+                    } else {
+                        // glass
+                        sphereMaterial = new Dielectric(1.5);
+                        addBall(new Sphere(center, 0.2, sphereMaterial), bounces);
+                    }
+                }
+            }
+        }
+
+        var material1 = new Dielectric(1.5);
+        world.add(new Sphere(new Vector3d(0, 1, 0), 1, material1));
+
+        var material2 = new Lambertian(new PixelColor(0.4, 0.2, 0.1));
+        world.add(new Sphere(new Vector3d(-4, 1, 0), 1, material2));
+
+        var material3 = new Metal(new PixelColor(0.7, 0.6, 0.5), 0.0);
+        world.add(new Sphere(new Vector3d(4, 1, 0), 1, material3));
+    }
+
+    /**
+     * Adds a small ball of the first scene, which bounces up and down in an animation
+     */
+    private void addBall(Hittable ball, Random bounces) {
+        if (animation == null) {
+            world.add(ball);
+            return;
+        }
+        double period = bounces.nextDouble(0.5, 1.0);
+        double height = bounces.nextDouble(0.2, 1.0);
+        var track = new Track<Pose>(Pose::between);
+        var ground = new Pose(Vector3d.ZERO, 0);
+        var top = new Pose(new Vector3d(0, height, 0), 0);
+        double time = -bounces.nextDouble(period);
+        for (boolean up = false; time < ANIMATION_SECONDS + period; up = !up, time += period / 2) {
+            track.key(time, up ? top : ground);
+        }
+        world.add(animation.animate(ball, track));
+    }
+
+    /**
+     * Flattens the world into primitives in world space, so the top-level BVH is built over them
+     */
+    private void compile() {
+        var result = SceneCompiler.compile(world);
+        System.out.println("Compiled the scene: " + result.report());
+        world = result.objects();
+    }
+
+    /**
+     * Puts the entries of the world under a top-level accelerator, whose leaves are the objects and BVHs the scene
+     * added. Entries whose box takes at least half the surface area of the box of the whole world, such as a fog
+     * around everything or a huge ground sphere, would overlap every node or cell and are hit by most rays anyway,
+     * so they stay outside and are tested before the accelerator. An animated scene always gets a BVH, and a scene
+     * to be edited keeps the other entries in {@link #editableObjects} rather than under an accelerator.
+     */
+    private void buildTopLevel() {
+        if (world.objects().size() < 2 && editableObjects == null) return;
+        double worldArea = world.boundingBox().surfaceArea();
+        var outside = new HittableList();
+        var inside = new HittableList();
+        for (Hittable entry : world) {
+            double area = entry.boundingBox().surfaceArea();
+            // an unbounded box has an infinite or undefined area
+            if (!(area < TOP_LEVEL_AREA_FRACTION * worldArea)) {
+                outside.add(entry);
+            } else {
+                inside.add(entry);
+            }
+        }
+        if (editableObjects != null) {
+            editableObjects = inside;
+            world = outside;
+            return;
+        }
+        if (inside.objects().size() < 2) return;
+
+        System.out.printf("Putting %d of %d entries of the world under the top-level accelerator%n",
+                inside.objects().size(), world.objects().size());
+        if (animation != null) {
+            buildRefittableTopLevel(inside, outside);
+            return;
+        }
+        outside.add(accelerate(inside));
+        world = outside;
+    }
+
+    /**
+     * Builds the top-level BVH of an animated scene as a flat BVH, which is the layout that can be refitted, over
+     * a tree of {@link com.raytracing.structures.BVHNode}s, so the requested mode is used unless it builds
+     * another kind of BVH
+     */
+    private void buildRefittableTopLevel(HittableList inside, HittableList outside) {
+        BVHMode mode = mode(BVHMode.SAH);
+        topLevelMode = mode == BVHMode.LAZY || mode == BVHMode.MOTION || mode == BVHMode.DYNAMIC ? BVHMode.SAH
+                : mode;
+        topLevel = (FlatBVH) build(inside, topLevelMode, BVHLayout.FLAT);
+        builtCost = BVHBuilder.cost(topLevel);
+        topLevelObjects = inside;
+        outsideTopLevel = new HittableList();
+        outside.forEach(outsideTopLevel::add);
+        outside.add(topLevel);
+        world = outside;
+    }
+
+    /**
+     * Builds the accelerator of the top level over the objects, the one that was asked for or else the one that
+     * {@link Accelerators#choose} picks for them
+     */
+    private Hittable accelerate(HittableList objects) {
+        String name = bvhSettings.accelerator();
+        if (name == null && (bvhSettings.mode() != null || bvhSettings.layout() != null)) {
+            name = Accelerators.BVH;
+        }
+        if (name == null) {
+            var choice = Accelerators.choose(objects.objects());
+            System.out.println("Chose a " + choice);
+            name = choice.accelerator();
+        }
+        // a BVH follows the mode and layout that were asked for, which its factory knows nothing of
+        if (Accelerators.BVH.equalsIgnoreCase(name)) return bvh(objects);
+
+        long start = System.nanoTime();
+        Accelerator built = Accelerators.factory(name).build(objects);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Built a %s over %d objects in %.1f ms, %d KB%n", built, objects.objects().size(),
+                elapsed / 1e6, built.footprint() / 1024);
+        return built;
+    }
+
+    /**
+     * Builds a BVH over the objects by the surface area heuristic and collapses it into a 4-wide BVH, unless
+     * another mode or layout was requested
+     */
+    private Hittable bvh(HittableList objects) {
+        return bvh(objects, BVHMode.SAH, BVHLayout.WIDE);
+    }
+
+    /**
+     * Builds a BVH over the objects and compiles it for rendering
+     *
+     * @param preferredMode   the mode that suits the objects, used unless another mode was requested
+     * @param preferredLayout the layout that suits the objects, used unless another layout was requested
+     */
+    private Hittable bvh(HittableList objects, BVHMode preferredMode, BVHLayout preferredLayout) {
+        return build(objects, mode(preferredMode),
+                bvhSettings.layout() != null ? bvhSettings.layout() : preferredLayout);
+    }
+
+    private BVHMode mode(BVHMode preferredMode) {
+        return bvhSettings.mode() != null ? bvhSettings.mode() : preferredMode;
+    }
+
+    /**
+     * Maps the BVH over the objects a generator makes from a snapshot in the cache directory, or builds it and
+     * saves a snapshot if there is none yet. Without a cache directory the BVH is just built. A snapshot holds a
+     * flat BVH, so any layout is only used without a cache.
+     *
+     * @param description everything the objects are made from besides the code of this class, such as the
+     *                    parameters of the generator
+     * @param objects     makes the objects, only called if there is no snapshot
+     */
+    private Hittable cachedBvh(String description, Supplier<HittableList> objects, BVHMode preferredMode,
+                               BVHLayout preferredLayout) {
+        BVHMode mode = mode(preferredMode);
+        // a lazy BVH is never complete enough to save, a snapshot has no bounds over time and cannot be edited
+        if (bvhSettings.cache() == null || mode == BVHMode.LAZY || mode == BVHMode.MOTION
+                || mode == BVHMode.DYNAMIC) {
+            return bvh(objects.get(), preferredMode, preferredLayout);
+        }
+        byte[] key = BVHSnapshot.key(number, mode, BVHLayout.FLAT, description, Scene.class);
+        Path path = bvhSettings.cache().resolve(BVHSnapshot.fileName(key));
+        if (Files.exists(path)) {
+            try {
+                long start = System.nanoTime();
+                var bvh = BVHSnapshot.load(path, key);
+                System.out.printf("Mapped a %s BVH of %d nodes from %s in %.1f ms%n", mode.name().toLowerCase(),
+                        bvh.size(), path, (System.nanoTime() - start) / 1e6);
+                return bvh;
+            } catch (IOException e) {
+                System.err.println("Rebuilding the BVH: " + e.getMessage());
+            }
+        }
+
+        Hittable bvh = build(objects.get(), mode, BVHLayout.FLAT);
+        try {
+            long start = System.nanoTime();
+            BVHSnapshot.write(path, key, bvh);
+            System.out.printf("Saved the BVH to %s in %.1f ms%n", path, (System.nanoTime() - start) / 1e6);
+        } catch (IOException | BVHSnapshot.UnsupportedContentException e) {
+            System.err.println("Cannot save the BVH: " + e.getMessage());
+        }
+        return bvh;
+    }
+
+    /**
+     * Builds a BVH over the objects with exactly the given mode and layout
+     */
+    private static Hittable build(HittableList objects, BVHMode mode, BVHLayout layout) {
+        long start = System.nanoTime();
+        Hittable binary = mode.build(objects);
+        long built = System.nanoTime();
+        if (mode == BVHMode.LAZY) {
+            System.out.printf("Set up a lazy BVH over %d objects in %.1f ms, which is split as rays reach it%n",
+                    objects.objects().size(), (built - start) / 1e6);
+            return binary;
+        }
+        if (binary instanceof MotionBVH motion) {
+            System.out.printf("Built a motion BVH over %d objects in %.1f ms with %d of %d nodes split in time, "
+                            + "%d KB%n", objects.objects().size(), (built - start) / 1e6, motion.timeSplits(),
+                    motion.size(), motion.footprint() / 1024);
+            return binary;
+        }
+        if (binary instanceof DynamicBVH dynamic) {
+            System.out.printf("Built a dynamic BVH over %d objects in %.1f ms by inserting them one by one, "
+                            + "%d levels, %d KB%n", dynamic.size(), (built - start) / 1e6, dynamic.height(),
+                    dynamic.footprint() / 1024);
+            return binary;
+        }
+        Accelerator bvh = layout.compile(binary);
+        System.out.printf("Built a %s BVH over %d objects in %.1f ms and compiled it into %d %s KB in %.1f ms%n",
+                mode.name().toLowerCase(), objects.objects().size(), (built - start) / 1e6,
+                bvh.footprint() / 1024, layout.name().toLowerCase(), (System.nanoTime() - built) / 1e6);
+        return bvh;
+    }
+}
@@ -75,6 +75,16 @@ public class AABB {
         else return 2;
     }
 
+    /**
+     * @return The surface area of the box
+     */
+    public double surfaceArea() {
+        double dx = xRange.size();
+        double dy = yRange.size();
+        double dz = zRange.size();
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
     /**
      * @return Whether a ray hits this AABB within the given range of t
      */
@@ -124,9 +134,9 @@ public class AABB {
         double cosTheta = Math.cos(Math.toRadians(angleInDegree));
 
         double minX, minZ;
-        minX = minZ = Double.NEGATIVE_INFINITY;
+        minX = minZ = Double.POSITIVE_INFINITY;
         double maxX, maxZ;
-        maxX = maxZ = Double.POSITIVE_INFINITY;
+        maxX = maxZ = Double.NEGATIVE_INFINITY;
         // loop through every vertex to find min and max after rotation
         for (int i = 0; i < 2; i++) {
             for (int j = 0; j < 2; j++) {
@@ -100,6 +100,18 @@ public class PixelColor {
         return blueSum / numSamples;
     }
 
+    /**
+     * Returns the relative luminance of a linear RGB color with Rec. 709 primaries.
+     *
+     * @param red   the red value
+     * @param green the green value
+     * @param blue  the blue value
+     * @return the luminance
+     */
+    public static double luminance(double red, double green, double blue) {
+        return 0.2126 * red + 0.7152 * green + 0.0722 * blue;
+    }
+
     /**
      * Returns the color of the pixel with gamma-correction for gamma=2.0.
      *
@@ -113,6 +125,24 @@ public class PixelColor {
         );
     }
 
+    /**
+     * Returns a linear color with gamma-correction for gamma=2.0, packed as 8-bit RGB into an int.
+     * Unlike {@link #color()}, it allocates nothing.
+     *
+     * @param red   the red value
+     * @param green the green value
+     * @param blue  the blue value
+     * @return the color as 0xRRGGBB
+     */
+    public static int rgb(double red, double green, double blue) {
+        return toByte(red) << 16 | toByte(green) << 8 | toByte(blue);
+    }
+
+    private static int toByte(double value) {
+        // the same rounding as java.awt.Color(float, float, float)
+        return (int) ((float) clamp(Math.sqrt(value)) * 255 + 0.5);
+    }
+
     /**
      * Adds this pixel and another pixel.
      *
@@ -0,0 +1,112 @@
+package com.raytracing.base;
+
+import com.raytracing.interfaces.Sampler;
+import com.raytracing.samplers.IndependentSampler;
+
+/**
+ * The source of random numbers for tracing one sample of one pixel.
+ * Every number handed out is the next dimension of the sample in the sampler, so a sample gives the same result no
+ * matter which thread traces it or in which order. A context must not be shared between threads.
+ */
+public final class SamplingContext {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    // the pixel jitter, the lens and the time of the camera ray, rounded up to whole pairs
+    static final int CAMERA_DIMENSIONS = 6;
+    // the most any bounce draws: a scatter, a choice between pdfs, a choice of a light and a direction
+    static final int BOUNCE_DIMENSIONS = 8;
+
+    private final Sampler sampler;
+    private final int x;
+    private final int y;
+    private final long sampleIndex;
+    private int dimension;
+
+    /**
+     * Constructs the context of a sample of a pixel
+     *
+     * @param sampler     the sampler that hands out the dimensions
+     * @param x           the x-coordinate of the pixel
+     * @param y           the y-coordinate of the pixel
+     * @param sampleIndex the index of the sample in the pixel
+     */
+    public SamplingContext(Sampler sampler, int x, int y, long sampleIndex) {
+        this.sampler = sampler;
+        this.x = x;
+        this.y = y;
+        this.sampleIndex = sampleIndex;
+        dimension = 0;
+    }
+
+    /**
+     * Constructs a context of independent random numbers from a single seed
+     */
+    public SamplingContext(long seed) {
+        this(new IndependentSampler(seed), 0, 0, 0);
+    }
+
+    /**
+     * @return the next dimension of the sample, a number in [0, 1)
+     */
+    public double next1D() {
+        return sampler.sample(x, y, sampleIndex, dimension++);
+    }
+
+    /**
+     * Skips to the next pair of dimensions so that the two numbers come from the same 2D point set
+     *
+     * @return the next two dimensions of the sample as the first two components of a vector
+     */
+    public Vector3d next2D() {
+        dimension += dimension & 1;
+        double u = sampler.sample(x, y, sampleIndex, dimension++);
+        double v = sampler.sample(x, y, sampleIndex, dimension++);
+        return new Vector3d(u, v, 0.0);
+    }
+
+    /**
+     * Moves to the dimensions set aside for a bounce. Every bounce starts at the same dimension whatever the bounces
+     * before it drew, so a branch that draws fewer numbers does not shift the dimensions of the rest of the path;
+     * the numbers a bounce leaves unused are skipped. A bounce that drew more than its share, as lights nested in
+     * lists can, moves the rest of the path on instead of reusing its numbers.
+     *
+     * @param bounce the number of bounces before this one, 0 for the camera ray
+     */
+    public void startBounce(int bounce) {
+        dimension = Math.max(dimension, CAMERA_DIMENSIONS + bounce * BOUNCE_DIMENSIONS);
+    }
+
+    /**
+     * @return a uniformly distributed integer in [0, bound)
+     */
+    public int nextInt(int bound) {
+        return Math.min((int) (next1D() * bound), bound - 1);
+    }
+
+    /**
+     * Maps the bits of the given values to a uniformly distributed number in [0, 1).
+     * Useful where a random decision has to be made without a context at hand.
+     */
+    public static double hashToUnit(double... values) {
+        long h = 0;
+        for (double value : values) {
+            h = hash(h, Double.doubleToLongBits(value));
+        }
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Combines a hash with a value
+     */
+    public static long hash(long h, long value) {
+        return mix64(h + GOLDEN_GAMMA * (value + 1));
+    }
+
+    /**
+     * Stafford's variant 13 of the 64-bit finalizer of MurmurHash3, also used by {@code SplittableRandom}
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
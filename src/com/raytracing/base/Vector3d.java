@@ -1,7 +1,5 @@
 package com.raytracing.base;
 
-import java.util.Random;
-
 /**
  * 3-dimensional vector
  *
@@ -10,8 +8,6 @@ import java.util.Random;
  * @param z the z-coordinate
  */
 public record Vector3d(double x, double y, double z) {
-    private static final Random rng = new Random(42);
-
     /**
      * The zero vector
      */
@@ -130,21 +126,26 @@ public record Vector3d(double x, double y, double z) {
     }
 
     /**
+     * @param context the source of random numbers
      * @return a random unit vector with uniform distribution
      */
-    public static Vector3d randomUnitUniform() {
-        double x = rng.nextGaussian();
-        double y = rng.nextGaussian();
-        double z = rng.nextGaussian();
-        return new Vector3d(x, y, z).normalized();
+    public static Vector3d randomUnitUniform(SamplingContext context) {
+        Vector3d r = context.next2D();
+
+        double z = 1 - 2 * r.x();
+        double radius = Math.sqrt(Math.max(0, 1 - z * z));
+        double phi = r.y() * 2.0 * Math.PI;
+        return new Vector3d(Math.cos(phi) * radius, Math.sin(phi) * radius, z);
     }
 
     /**
+     * @param context the source of random numbers
      * @return a random unit Vector with pdf proportional to cosine theta
      */
-    public static Vector3d randomUnitCosine() {
-        double r1 = rng.nextDouble();
-        double r2 = rng.nextDouble();
+    public static Vector3d randomUnitCosine(SamplingContext context) {
+        Vector3d r = context.next2D();
+        double r1 = r.x();
+        double r2 = r.y();
 
         double phi = r1 * 2.0 * Math.PI;
         double x = Math.cos(phi) * Math.sqrt(r2);
@@ -0,0 +1,181 @@
+package com.raytracing.farm;
+
+import com.raytracing.render.FrameBuffer;
+import com.raytracing.render.Tile;
+import com.raytracing.render.TileScheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hands out the tiles of an image to workers connected over TCP and assembles their results in a frame buffer.
+ * <p>
+ * Every connection holds the lease of at most one tile at a time. When a connection breaks or a worker does not
+ * answer a lease in time, the connection is dropped and its tile goes back into the queue for the other workers.
+ * Workers may connect and leave at any time until the image is finished.
+ */
+public class Coordinator {
+    private static final long POLL_MILLIS = 100;
+
+    private final List<String> job;
+    private final List<Tile> tiles;
+    private final FrameBuffer frame;
+    private final Duration leaseTimeout;
+    private final BlockingQueue<Tile> pending = new LinkedBlockingQueue<>();
+    private final boolean[] finished;
+    private final CountDownLatch remaining;
+    // the threads of all connections ever accepted, guarded by itself
+    private final List<Thread> connections = new ArrayList<>();
+    private Consumer<Tile> onFinished = tile -> {
+    };
+
+    /**
+     * @param job          the arguments that describe the scene, from which every worker builds its own renderer
+     * @param scheduler    the tiles of the image
+     * @param frame        the frame buffer that receives the finished tiles
+     * @param leaseTimeout how long a worker may take for a tile before the tile is handed to another worker
+     */
+    public Coordinator(List<String> job, TileScheduler scheduler, FrameBuffer frame, Duration leaseTimeout) {
+        this.job = List.copyOf(job);
+        this.tiles = scheduler.tiles();
+        this.frame = frame;
+        this.leaseTimeout = leaseTimeout;
+        finished = new boolean[tiles.size()];
+        remaining = new CountDownLatch(tiles.size());
+    }
+
+    /**
+     * Accepts workers on the port until every tile is finished, and returns once every connected worker has been
+     * told that the job is done
+     *
+     * @param port       the port to listen on, 0 for any free port
+     * @param onFinished called once for every tile whose result arrived, from the thread of its connection
+     */
+    public void run(int port, Consumer<Tile> onFinished) throws IOException, InterruptedException {
+        this.onFinished = onFinished;
+        pending.addAll(tiles);
+        Thread acceptor;
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Waiting for workers on port " + server.getLocalPort());
+            acceptor = new Thread(() -> accept(server), "coordinator-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            remaining.await();
+        }
+        // with the server socket closed no more connections start, and each open one sends DONE within a poll
+        acceptor.join();
+        List<Thread> open;
+        synchronized (connections) {
+            open = List.copyOf(connections);
+        }
+        for (Thread connection : open) {
+            connection.join();
+        }
+    }
+
+    private void accept(ServerSocket server) {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                // the server socket is closed once the image is finished
+                return;
+            }
+            Thread connection = new Thread(() -> serve(socket), "coordinator-" + socket.getRemoteSocketAddress());
+            connection.setDaemon(true);
+            synchronized (connections) {
+                connections.add(connection);
+            }
+            connection.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        String worker = socket.getRemoteSocketAddress().toString();
+        try (socket) {
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, leaseTimeout.toMillis()));
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Protocol.expect(in.readInt(), Protocol.MAGIC);
+            Protocol.expect(in.readInt(), Protocol.VERSION);
+            Protocol.writeJob(out, job);
+            out.flush();
+
+            while (remaining.getCount() > 0) {
+                Tile tile = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (tile == null || isFinished(tile)) continue;
+                try {
+                    lease(tile, in, out);
+                } catch (IOException e) {
+                    pending.add(tile);
+                    throw e;
+                }
+            }
+            out.writeByte(Protocol.DONE);
+            out.flush();
+        } catch (InterruptedIOException e) {
+            System.out.println("Worker " + worker + " timed out, its lease is re-issued");
+        } catch (SocketException | EOFException e) {
+            System.out.println("Worker " + worker + " disconnected, its lease is re-issued");
+        } catch (IOException e) {
+            System.out.println("Worker " + worker + " failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the lease of a tile and waits for its result
+     */
+    private void lease(Tile tile, DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeByte(Protocol.LEASE);
+        out.writeInt(tile.index());
+        out.writeInt(tile.x0());
+        out.writeInt(tile.y0());
+        out.writeInt(tile.x1());
+        out.writeInt(tile.y1());
+        out.flush();
+
+        Protocol.expect(in.readByte(), Protocol.RESULT);
+        Protocol.expect(in.readInt(), tile.index());
+        // read the whole result first, so a broken connection never leaves half a tile in the frame buffer
+        byte[] result = new byte[tile.pixelCount() * FrameBuffer.BYTES_PER_PIXEL];
+        in.readFully(result);
+        finish(tile, result);
+    }
+
+    private void finish(Tile tile, byte[] result) throws IOException {
+        synchronized (finished) {
+            // a re-issued lease may have been finished by another worker already
+            if (finished[tile.index()]) return;
+            frame.readTile(tile, new DataInputStream(new ByteArrayInputStream(result)));
+            finished[tile.index()] = true;
+        }
+        onFinished.accept(tile);
+        remaining.countDown();
+    }
+
+    private boolean isFinished(Tile tile) {
+        synchronized (finished) {
+            return finished[tile.index()];
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.raytracing.farm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages between a coordinator and its workers.
+ * <p>
+ * A worker opens a connection with {@link #MAGIC} and {@link #VERSION}, and the coordinator answers with the job.
+ * From then on the coordinator sends leases of one tile each, and the worker answers every lease with the result
+ * of the tile. The coordinator ends the connection with {@link #DONE} once every tile of the image is finished.
+ */
+final class Protocol {
+    static final int MAGIC = 0x52544652;
+    static final int VERSION = 1;
+
+    /**
+     * The job: the arguments that describe the scene to render
+     */
+    static final byte JOB = 1;
+    /**
+     * A lease: the index and bounds of a tile
+     */
+    static final byte LEASE = 2;
+    /**
+     * A result: the index of a tile and the state of all of its pixels
+     */
+    static final byte RESULT = 3;
+    /**
+     * The image is finished
+     */
+    static final byte DONE = 4;
+
+    private Protocol() {
+    }
+
+    static void writeJob(DataOutput out, List<String> job) throws IOException {
+        out.writeByte(JOB);
+        out.writeInt(job.size());
+        for (String argument : job) {
+            out.writeUTF(argument);
+        }
+    }
+
+    static List<String> readJob(DataInput in) throws IOException {
+        expect(in.readByte(), JOB);
+        int size = in.readInt();
+        List<String> job = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            job.add(in.readUTF());
+        }
+        return job;
+    }
+
+    static void expect(int actual, int expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("protocol error: expected " + expected + " but got " + actual);
+        }
+    }
+}
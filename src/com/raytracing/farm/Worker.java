@@ -0,0 +1,130 @@
+package com.raytracing.farm;
+
+import com.raytracing.render.FrameBuffer;
+import com.raytracing.render.Renderer;
+import com.raytracing.render.Tile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders tiles leased from a coordinator.
+ * <p>
+ * The worker opens one connection per thread. All connections share one renderer, which the worker builds itself
+ * from the job the coordinator sends, so no scene data ever goes over the wire.
+ */
+public class Worker {
+    /**
+     * Builds the renderer of a job
+     */
+    @FunctionalInterface
+    public interface RendererFactory {
+        /**
+         * @param job the arguments that describe the scene
+         * @return a renderer of the scene
+         */
+        Renderer create(List<String> job) throws IOException;
+    }
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final RendererFactory factory;
+    private final AtomicInteger rendered = new AtomicInteger();
+
+    private List<String> job;
+    private Renderer renderer;
+
+    /**
+     * @param host        the host of the coordinator
+     * @param port        the port of the coordinator
+     * @param connections the number of tiles rendered at the same time
+     * @param factory     builds the renderer of the job
+     */
+    public Worker(String host, int port, int connections, RendererFactory factory) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("a worker needs at least one connection");
+        }
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.factory = factory;
+    }
+
+    /**
+     * Renders leased tiles until the coordinator finishes the image or the connections break
+     *
+     * @return the number of tiles rendered
+     */
+    public int run() throws IOException, InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<IOException> failures = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    serve();
+                } catch (IOException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "worker-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        if (failures.size() == connections) {
+            throw failures.get(0);
+        }
+        return rendered.get();
+    }
+
+    private void serve() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(Protocol.MAGIC);
+            out.writeInt(Protocol.VERSION);
+            out.flush();
+            load(Protocol.readJob(in));
+
+            while (true) {
+                byte type = in.readByte();
+                if (type == Protocol.DONE) return;
+                Protocol.expect(type, Protocol.LEASE);
+                var tile = new Tile(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                // a buffer of its own for every tile: a tile whose lease timed out may come back on another
+                // connection while the first one is still rendering it, and it only needs the pixels it sends
+                var frame = new FrameBuffer(tile);
+                renderer.renderTile(tile, frame);
+
+                out.writeByte(Protocol.RESULT);
+                out.writeInt(tile.index());
+                frame.writeTile(tile, out);
+                out.flush();
+                rendered.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Builds the renderer on the first connection, later connections must receive the same job
+     */
+    private synchronized void load(List<String> job) throws IOException {
+        if (this.job == null) {
+            renderer = factory.create(job);
+            this.job = job;
+        } else if (!this.job.equals(job)) {
+            throw new IOException("the coordinator sent a different job: " + job);
+        }
+    }
+}
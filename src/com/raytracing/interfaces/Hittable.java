@@ -3,6 +3,7 @@ package com.raytracing.interfaces;
 import com.raytracing.base.Vector3d;
 import com.raytracing.base.Interval;
 import com.raytracing.base.AABB;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.scene.Ray;
 
 /**
@@ -103,7 +104,7 @@ public interface Hittable {
     /**
      * @return a random direction from the origin
      */
-    default Vector3d random(Vector3d origin) {
-        return Vector3d.randomUnitUniform();
+    default Vector3d random(Vector3d origin, SamplingContext context) {
+        return Vector3d.randomUnitUniform(context);
     }
 }
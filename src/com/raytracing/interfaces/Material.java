@@ -1,6 +1,7 @@
 package com.raytracing.interfaces;
 
 import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.scene.Ray;
 
@@ -37,9 +38,10 @@ public interface Material {
      * Returns a record of scattering of a hit. Default returns null
      *
      * @param hitRecord the hit record
+     * @param context   the source of random numbers
      * @return a scatter record
      */
-    default ScatterRecord scatter(Hittable.HitRecord hitRecord) {
+    default ScatterRecord scatter(Hittable.HitRecord hitRecord, SamplingContext context) {
         return null;
     }
 
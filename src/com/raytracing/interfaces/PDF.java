@@ -1,5 +1,6 @@
 package com.raytracing.interfaces;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 
 /**
@@ -16,5 +17,5 @@ public interface PDF {
     /**
      * @return a random direction weighted by the internal com.raytracing.pdf distribution
      */
-    Vector3d generate();
+    Vector3d generate(SamplingContext context);
 }
@@ -0,0 +1,21 @@
+package com.raytracing.interfaces;
+
+/**
+ * A sampler hands out the random numbers of every sample of every pixel, indexed by dimension.
+ * A sample asks for its dimensions in the same order every time, e.g. dimensions 0 and 1 jitter the position on the
+ * image plane and dimensions 2 and 3 pick a point on the lens.
+ * Implementations must be stateless so that any thread can ask for any sample.
+ */
+public interface Sampler {
+    /**
+     * Returns one dimension of one sample of a pixel.
+     * Dimensions 2k and 2k + 1 are meant to be used together as a 2D point.
+     *
+     * @param x           the x-coordinate of the pixel
+     * @param y           the y-coordinate of the pixel
+     * @param sampleIndex the index of the sample in the pixel
+     * @param dimension   the dimension
+     * @return a number in [0, 1)
+     */
+    double sample(int x, int y, long sampleIndex, int dimension);
+}
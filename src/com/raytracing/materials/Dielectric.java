@@ -1,6 +1,7 @@
 package com.raytracing.materials;
 
 import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Material;
@@ -16,10 +17,11 @@ public record Dielectric(double indexOfRefraction) implements Material {
      * Returns a record of scattering of a hit.
      *
      * @param hitRecord the hit record
+     * @param context   the source of random numbers
      * @return a scatter record
      */
     @Override
-    public ScatterRecord scatter(Hittable.HitRecord hitRecord) {
+    public ScatterRecord scatter(Hittable.HitRecord hitRecord, SamplingContext context) {
         PixelColor attenuation = PixelColor.WHITE;
         double refractionRatio = hitRecord.frontFace() ? (1 / indexOfRefraction) : indexOfRefraction;
 
@@ -27,7 +29,9 @@ public record Dielectric(double indexOfRefraction) implements Material {
         Vector3d normal = hitRecord.normal();
         double cosTheta = -in.dot(normal);
         double sinTheta = Math.sqrt(1 - cosTheta * cosTheta);
-        if (refractionRatio * sinTheta > 1 || reflectance(cosTheta, refractionRatio) > Math.random()) {
+        // drawn before the test so that total internal reflection takes the same dimension
+        double choice = context.next1D();
+        if (refractionRatio * sinTheta > 1 || reflectance(cosTheta, refractionRatio) > choice) {
             // reflect
             Vector3d reflectedDirection = in.reflectOn(normal);
             Ray reflectedRay = new Ray(hitRecord.point(), reflectedDirection);
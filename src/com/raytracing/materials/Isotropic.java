@@ -1,6 +1,7 @@
 package com.raytracing.materials;
 
 import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Material;
 import com.raytracing.interfaces.Texture;
@@ -20,7 +21,7 @@ public record Isotropic(Texture texture) implements Material {
     /**
      * Randomly scatter a ray attenuated
      */
-    public ScatterRecord scatter(Hittable.HitRecord hitRecord) {
+    public ScatterRecord scatter(Hittable.HitRecord hitRecord, SamplingContext context) {
         var attenuation = texture.value(hitRecord.u(), hitRecord.v(), hitRecord.point());
         var pdf = new SpherePdf();
         return new ScatterRecord(attenuation, pdf);
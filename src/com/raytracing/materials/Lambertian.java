@@ -1,6 +1,7 @@
 package com.raytracing.materials;
 
 import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Material;
 import com.raytracing.interfaces.Texture;
@@ -20,10 +21,11 @@ public record Lambertian(Texture texture) implements Material {
      * Returns a record of scattering of a hit.
      *
      * @param hitRecord the hit record
+     * @param context   the source of random numbers
      * @return a scatter record
      */
     @Override
-    public ScatterRecord scatter(Hittable.HitRecord hitRecord) {
+    public ScatterRecord scatter(Hittable.HitRecord hitRecord, SamplingContext context) {
         var pdf = new CosinePdf(hitRecord.normal());
         var attenuation = texture.value(hitRecord.u(), hitRecord.v(), hitRecord.point());
         return new ScatterRecord(attenuation, pdf);
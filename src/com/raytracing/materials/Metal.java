@@ -1,6 +1,7 @@
 package com.raytracing.materials;
 
 import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Material;
@@ -21,12 +22,13 @@ public record Metal(PixelColor albedo, double fuzziness) implements Material {
      * Returns a record of scattering of a hit.
      *
      * @param hitRecord the hit record
+     * @param context   the source of random numbers
      * @return a scatter record
      */
     @Override
-    public ScatterRecord scatter(Hittable.HitRecord hitRecord) {
+    public ScatterRecord scatter(Hittable.HitRecord hitRecord, SamplingContext context) {
         var reflectedDirection = hitRecord.ray().unitDirection().reflectOn(hitRecord.normal());
-        var scatteredRay = new Ray(hitRecord.point(), reflectedDirection.add(Vector3d.randomUnitUniform().scale(fuzziness)), hitRecord.ray().time());
+        var scatteredRay = new Ray(hitRecord.point(), reflectedDirection.add(Vector3d.randomUnitUniform(context).scale(fuzziness)), hitRecord.ray().time());
         return new ScatterRecord(albedo, scatteredRay);
     }
 }
@@ -0,0 +1,179 @@
+package com.raytracing.output;
+
+import com.raytracing.render.Film;
+import com.raytracing.render.Tile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a tiled OpenEXR file with uncompressed 32-bit float R, G and B channels.
+ * <p>
+ * The file uses the RANDOM_Y line order, so tiles are appended in whatever order they finish and found through
+ * the offset table, which is written last. OpenEXR counts rows from the top while the renderer counts them from
+ * the bottom, so the tiles of the file do not line up with the tiles of the renderer. An EXR tile is written as
+ * soon as every one of its pixels is finished.
+ */
+public class ExrWriter implements TileWriter {
+    private static final int MAGIC = 20000630;
+    private static final int VERSION = 2;
+    private static final int TILED = 0x200;
+    private static final int FLOAT = 2;
+    private static final byte NO_COMPRESSION = 0;
+    private static final byte RANDOM_Y = 2;
+    private static final byte ONE_LEVEL = 0;
+    // channels are stored in alphabetical order
+    private static final String[] CHANNELS = {"B", "G", "R"};
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final long[] offsets;
+    private final int[] remaining;
+    private final long offsetTable;
+    private long end;
+
+    /**
+     * Creates the file, replacing any existing file
+     *
+     * @param path     the path of the file
+     * @param tileSize the side length of the tiles of the file
+     */
+    public ExrWriter(Path path, int width, int height, int tileSize) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        offsets = new long[tilesX * tilesY];
+        remaining = new int[offsets.length];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                remaining[ty * tilesX + tx] = tileWidth(tx) * tileHeight(ty);
+            }
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = header();
+        offsetTable = header.remaining();
+        channel.write(header, 0);
+        end = offsetTable + (long) offsets.length * Long.BYTES;
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION | TILED);
+
+        attribute(header, "channels", "chlist", CHANNELS.length * 18 + 1);
+        for (String name : CHANNELS) {
+            putString(header, name);
+            // pixel type, linear flag and three reserved bytes, x and y sampling
+            header.putInt(FLOAT).put((byte) 0).put(new byte[3]).putInt(1).putInt(1);
+        }
+        header.put((byte) 0);
+        attribute(header, "compression", "compression", 1);
+        header.put(NO_COMPRESSION);
+        attribute(header, "dataWindow", "box2i", 16);
+        header.putInt(0).putInt(0).putInt(width - 1).putInt(height - 1);
+        attribute(header, "displayWindow", "box2i", 16);
+        header.putInt(0).putInt(0).putInt(width - 1).putInt(height - 1);
+        attribute(header, "lineOrder", "lineOrder", 1);
+        header.put(RANDOM_Y);
+        attribute(header, "pixelAspectRatio", "float", 4);
+        header.putFloat(1);
+        attribute(header, "screenWindowCenter", "v2f", 8);
+        header.putFloat(0).putFloat(0);
+        attribute(header, "screenWindowWidth", "float", 4);
+        header.putFloat(1);
+        attribute(header, "tiles", "tiledesc", 9);
+        header.putInt(tileSize).putInt(tileSize).put(ONE_LEVEL);
+        header.put((byte) 0);
+        return header.flip();
+    }
+
+    private static void attribute(ByteBuffer header, String name, String type, int size) {
+        putString(header, name);
+        putString(header, type);
+        header.putInt(size);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        buffer.put(value.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+    }
+
+    @Override
+    public void write(Film film, Tile tile) throws IOException {
+        // rows y0 to y1 of the renderer are rows height - y1 to height - y0 of the file
+        int top = height - tile.y1();
+        int bottom = height - tile.y0();
+        for (int ty = top / tileSize; ty * tileSize < bottom; ty++) {
+            for (int tx = tile.x0() / tileSize; tx * tileSize < tile.x1(); tx++) {
+                int overlapX = Math.min(tile.x1(), (tx + 1) * tileSize) - Math.max(tile.x0(), tx * tileSize);
+                int overlapY = Math.min(bottom, (ty + 1) * tileSize) - Math.max(top, ty * tileSize);
+                int index = ty * tilesX + tx;
+                remaining[index] -= overlapX * overlapY;
+                if (remaining[index] == 0) {
+                    writeTile(film, tx, ty);
+                }
+            }
+        }
+    }
+
+    private void writeTile(Film film, int tx, int ty) throws IOException {
+        int columns = tileWidth(tx);
+        int rows = tileHeight(ty);
+        int dataSize = columns * rows * Film.BYTES_PER_PIXEL;
+        ByteBuffer chunk = ByteBuffer.allocate(5 * Integer.BYTES + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.putInt(tx).putInt(ty).putInt(0).putInt(0).putInt(dataSize);
+        if (film != null) {
+            for (int row = ty * tileSize; row < ty * tileSize + rows; row++) {
+                int y = height - 1 - row;
+                for (int x = tx * tileSize; x < tx * tileSize + columns; x++) chunk.putFloat(film.blue(x, y));
+                for (int x = tx * tileSize; x < tx * tileSize + columns; x++) chunk.putFloat(film.green(x, y));
+                for (int x = tx * tileSize; x < tx * tileSize + columns; x++) chunk.putFloat(film.red(x, y));
+            }
+        }
+        chunk.clear();
+
+        offsets[ty * tilesX + tx] = end;
+        while (chunk.hasRemaining()) {
+            end += channel.write(chunk, end);
+        }
+    }
+
+    private int tileWidth(int tx) {
+        return Math.min(tileSize, width - tx * tileSize);
+    }
+
+    private int tileHeight(int ty) {
+        return Math.min(tileSize, height - ty * tileSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // a reader needs every tile, so tiles that never finished are written black
+        for (int index = 0; index < offsets.length; index++) {
+            if (offsets[index] == 0) {
+                writeTile(null, index % tilesX, index / tilesX);
+            }
+        }
+        ByteBuffer table = ByteBuffer.allocate(offsets.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (long offset : offsets) {
+            table.putLong(offset);
+        }
+        table.flip();
+        long position = offsetTable;
+        while (table.hasRemaining()) {
+            position += channel.write(table, position);
+        }
+        channel.close();
+    }
+}
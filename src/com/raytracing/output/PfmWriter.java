@@ -0,0 +1,67 @@
+package com.raytracing.output;
+
+import com.raytracing.render.Film;
+import com.raytracing.render.Tile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a little-endian RGB Portable Float Map.
+ * PFM stores the rows from bottom to top, like the y-axis of the renderer, so every row of a tile goes straight to
+ * its place in the file.
+ */
+public class PfmWriter implements TileWriter {
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final long headerSize;
+
+    /**
+     * Creates the file, replacing any existing file
+     *
+     * @param path the path of the file
+     */
+    public PfmWriter(Path path, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        // a negative scale marks little-endian data
+        byte[] header = ("PF\n" + width + " " + height + "\n-1.0\n").getBytes(StandardCharsets.US_ASCII);
+        channel.write(ByteBuffer.wrap(header), 0);
+        headerSize = header.length;
+    }
+
+    @Override
+    public void write(Film film, Tile tile) throws IOException {
+        int columns = tile.x1() - tile.x0();
+        ByteBuffer row = ByteBuffer.allocate(columns * Film.BYTES_PER_PIXEL).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = tile.y0(); y < tile.y1(); y++) {
+            row.clear();
+            for (int x = tile.x0(); x < tile.x1(); x++) {
+                row.putFloat(film.red(x, y)).putFloat(film.green(x, y)).putFloat(film.blue(x, y));
+            }
+            row.flip();
+            long position = headerSize + ((long) y * width + tile.x0()) * Film.BYTES_PER_PIXEL;
+            while (row.hasRemaining()) {
+                position += channel.write(row, position);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // extend the file over rows that were never written
+        long size = headerSize + (long) width * height * Film.BYTES_PER_PIXEL;
+        if (channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        channel.close();
+    }
+}
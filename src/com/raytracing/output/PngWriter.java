@@ -0,0 +1,135 @@
+package com.raytracing.output;
+
+import com.raytracing.render.Film;
+import com.raytracing.render.Tile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8-bit RGB PNG row by row, without ever holding the whole image.
+ * <p>
+ * PNG stores the rows from top to bottom and compresses them as one stream, so a row can only be written once
+ * every row above it is. The writer counts the finished pixels of every row and encodes the rows from the film as
+ * soon as they can go, which for tiles rendered in scan order is shortly after they finish.
+ */
+public class PngWriter implements TileWriter {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // the largest IDAT chunk written
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final byte TRUE_COLOR = 2;
+
+    private final DataOutputStream file;
+    private final DeflaterOutputStream pixels;
+    private final Deflater deflater = new Deflater();
+    private final int width;
+    private final int height;
+    // per row of the file, the number of pixels not finished yet
+    private final int[] remaining;
+    private final byte[] line;
+    private int nextRow;
+    private Film film;
+
+    /**
+     * Creates the file, replacing any existing file
+     *
+     * @param path the path of the file
+     */
+    public PngWriter(Path path, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        remaining = new int[height];
+        Arrays.fill(remaining, width);
+        // a filter type byte in front of the samples of every row
+        line = new byte[1 + 3 * width];
+
+        file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), CHUNK_SIZE));
+        file.write(SIGNATURE);
+        var header = new ByteArrayOutputStream();
+        var fields = new DataOutputStream(header);
+        fields.writeInt(width);
+        fields.writeInt(height);
+        // bit depth, color type, compression, filter and interlace method
+        fields.write(new byte[]{8, TRUE_COLOR, 0, 0, 0});
+        chunk("IHDR", header.toByteArray(), 0, header.size());
+        pixels = new DeflaterOutputStream(new IdatStream(), deflater, CHUNK_SIZE);
+    }
+
+    @Override
+    public void write(Film film, Tile tile) throws IOException {
+        this.film = film;
+        // rows y0 to y1 of the renderer are rows height - y1 to height - y0 of the file
+        for (int y = tile.y0(); y < tile.y1(); y++) {
+            remaining[height - 1 - y] -= tile.x1() - tile.x0();
+        }
+        while (nextRow < height && remaining[nextRow] == 0) {
+            writeRow();
+        }
+    }
+
+    private void writeRow() throws IOException {
+        int y = height - 1 - nextRow++;
+        for (int x = 0; x < width; x++) {
+            int rgb = film == null ? 0 : film.rgb(x, y);
+            line[1 + 3 * x] = (byte) (rgb >>> 16);
+            line[2 + 3 * x] = (byte) (rgb >>> 8);
+            line[3 + 3 * x] = (byte) rgb;
+        }
+        pixels.write(line);
+    }
+
+    private void chunk(String type, byte[] data, int offset, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, offset, length);
+        file.writeInt(length);
+        file.write(name);
+        file.write(data, offset, length);
+        file.writeInt((int) crc.getValue());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (file) {
+            // rows that never finished hold whatever the film has, black where nothing was written
+            while (nextRow < height) {
+                writeRow();
+            }
+            pixels.finish();
+            chunk("IEND", new byte[0], 0, 0);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Cuts the compressed stream into IDAT chunks
+     */
+    private class IdatStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int size = Math.min(length, CHUNK_SIZE);
+                chunk("IDAT", data, offset, size);
+                offset += size;
+                length -= size;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.raytracing.output;
+
+import com.raytracing.render.Film;
+import com.raytracing.render.Tile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes finished tiles on a background thread, so rendering continues while the files are written.
+ * Tiles are handed to every writer in the order they are submitted.
+ */
+public class TileStream implements Closeable {
+    private final Film film;
+    private final List<TileWriter> writers;
+    private final ExecutorService encoder;
+    // the first IOException or RuntimeException of a writer
+    private volatile Exception failure;
+
+    /**
+     * @param film    the film that holds the final colors of the tiles
+     * @param writers the writers of the files
+     */
+    public TileStream(Film film, List<TileWriter> writers) {
+        this.film = film;
+        this.writers = List.copyOf(writers);
+        encoder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tile-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a tile whose colors are final in the film. Its pixels must not change until the stream is closed.
+     */
+    public void submit(Tile tile) {
+        encoder.execute(() -> {
+            if (failure != null) return;
+            try {
+                for (var writer : writers) {
+                    writer.write(film, tile);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /**
+     * Waits until every queued tile is written and completes the files
+     *
+     * @throws IOException if writing any tile or completing any file failed
+     * @throws RuntimeException if a writer failed with one, which is rethrown as it was thrown
+     */
+    @Override
+    public void close() throws IOException {
+        encoder.shutdown();
+        try {
+            while (!encoder.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Waiting for tiles to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing tiles", e);
+        }
+        for (var writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure instanceof IOException e) throw e;
+        if (failure instanceof RuntimeException e) throw e;
+    }
+}
@@ -0,0 +1,26 @@
+package com.raytracing.output;
+
+import com.raytracing.render.Film;
+import com.raytracing.render.Tile;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes an image file tile by tile while the image is still rendering
+ */
+public interface TileWriter extends Closeable {
+    /**
+     * Writes the pixels of a finished tile. Tiles may finish in any order.
+     *
+     * @param film the film that holds the final colors of the tile
+     * @param tile the tile
+     */
+    void write(Film film, Tile tile) throws IOException;
+
+    /**
+     * Completes the file. Pixels of tiles that were never written are black.
+     */
+    @Override
+    void close() throws IOException;
+}
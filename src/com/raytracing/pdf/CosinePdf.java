@@ -1,6 +1,7 @@
 package com.raytracing.pdf;
 
 import com.raytracing.base.ONB;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.PDF;
 
@@ -30,7 +31,7 @@ public class CosinePdf implements PDF {
      * @return a random direction weighted by the internal com.raytracing.pdf distribution
      */
     @Override
-    public Vector3d generate() {
-        return uvw.transform(Vector3d.randomUnitCosine());
+    public Vector3d generate(SamplingContext context) {
+        return uvw.transform(Vector3d.randomUnitCosine(context));
     }
 }
@@ -1,5 +1,6 @@
 package com.raytracing.pdf;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.PDF;
@@ -17,7 +18,7 @@ public record HittablePdf(Hittable objects, Vector3d origin) implements PDF {
      * @return a random direction shoot from the origin to this hittable
      */
     @Override
-    public Vector3d generate() {
-        return objects.random(origin);
+    public Vector3d generate(SamplingContext context) {
+        return objects.random(origin, context);
     }
 }
@@ -1,14 +1,11 @@
 package com.raytracing.pdf;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.PDF;
 
-import java.util.Random;
-
 public record MixturePdf(PDF p0, PDF p1) implements PDF {
 
-    private static final Random rng = new Random(42);
-
     /**
      * @return mix the two pdf values by the same direction
      */
@@ -21,11 +18,14 @@ public record MixturePdf(PDF p0, PDF p1) implements PDF {
      * @return a random direction weighted by the internal com.raytracing.pdf distribution
      */
     @Override
-    public Vector3d generate() {
-        if (rng.nextDouble() < 0.5) {
-            return p0.generate();
+    public Vector3d generate(SamplingContext context) {
+        // the choice is drawn first and both pdfs draw their direction as a pair, so the direction takes the same
+        // dimensions whichever pdf is chosen
+        double choice = context.next1D();
+        if (choice < 0.5) {
+            return p0.generate(context);
         } else {
-            return p1.generate();
+            return p1.generate(context);
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.raytracing.pdf;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.PDF;
 
@@ -19,7 +20,7 @@ public class SpherePdf implements PDF {
      * @return a random direction weighted by the internal com.raytracing.pdf distribution
      */
     @Override
-    public Vector3d generate() {
-        return Vector3d.randomUnitUniform();
+    public Vector3d generate(SamplingContext context) {
+        return Vector3d.randomUnitUniform(context);
     }
 }
@@ -0,0 +1,198 @@
+package com.raytracing.render;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A frame buffer mapped from a file, so that a render can be resumed after the process dies.
+ * <p>
+ * The file holds a header and two copies of the frame buffer. Passes are rendered into the working copy.
+ * When a pass is committed, the working copy is flushed to disk and marked complete, then copied into the
+ * checkpoint copy, which is flushed and marked valid in turn. Whenever the process dies, one of the two copies
+ * holds exactly the samples of the last committed pass, so resuming never repeats or loses a sample.
+ */
+public class AccumulationFile implements Closeable {
+    private static final byte[] MAGIC = "RTACCUM1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 4096;
+    private static final int SAMPLER_NAME_LENGTH = 16;
+
+    private static final int STATE_EMPTY = 0;
+    private static final int STATE_WORKING_COMPLETE = 1;
+    private static final int STATE_CHECKPOINT_VALID = 2;
+
+    // offsets of the header fields
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 12;
+    private static final int SCENE = 16;
+    private static final int SEED = 20;
+    private static final int SAMPLER = 28;
+    private static final int STATE = 44;
+    private static final int WORKING_SAMPLES = 48;
+    private static final int CHECKPOINT_SAMPLES = 52;
+
+    /**
+     * What was rendered into the file
+     *
+     * @param width           the width of the image
+     * @param height          the height of the image
+     * @param scene           the number of the scene
+     * @param sampler         the name of the sampler
+     * @param seed            the seed of the sampler
+     * @param samplesPerPixel the number of samples per pixel of the last committed pass
+     */
+    public record Header(int width, int height, int scene, String sampler, long seed, int samplesPerPixel) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final FrameBuffer working;
+    private final FrameBuffer checkpoint;
+
+    private AccumulationFile(FileChannel channel, int width, int height) throws IOException {
+        this.channel = channel;
+        long size = FrameBuffer.storageSize(width, height);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        working = FrameBuffer.map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE, width, height);
+        checkpoint = FrameBuffer.map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE + size, width, height);
+    }
+
+    /**
+     * Creates a new file with an empty frame buffer, replacing any existing file
+     *
+     * @param path   the path of the file
+     * @param header what is going to be rendered, the samples per pixel are ignored
+     */
+    public static AccumulationFile create(Path path, Header header) throws IOException {
+        byte[] samplerName = header.sampler().getBytes(StandardCharsets.US_ASCII);
+        if (samplerName.length > SAMPLER_NAME_LENGTH) {
+            throw new IllegalArgumentException("sampler name too long: " + header.sampler());
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var file = new AccumulationFile(channel, header.width(), header.height());
+        file.header.put(0, MAGIC)
+                .putInt(WIDTH, header.width())
+                .putInt(HEIGHT, header.height())
+                .putInt(SCENE, header.scene())
+                .putLong(SEED, header.seed())
+                .put(SAMPLER, Arrays.copyOf(samplerName, SAMPLER_NAME_LENGTH))
+                .putInt(STATE, STATE_EMPTY)
+                .putInt(WORKING_SAMPLES, 0)
+                .putInt(CHECKPOINT_SAMPLES, 0);
+        file.header.force();
+        return file;
+    }
+
+    /**
+     * Opens an existing file and rolls the working frame buffer back to the last committed pass
+     *
+     * @param path the path of the file
+     * @throws IOException if the file is not an accumulation file or does not have the size its header asks for
+     */
+    public static AccumulationFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer prefix = ByteBuffer.allocate(HEIGHT + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(prefix, 0);
+        byte[] magic = new byte[MAGIC.length];
+        prefix.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            channel.close();
+            throw new IOException(path + " is not an accumulation file");
+        }
+        // mapping a truncated file for writing would silently extend it with zeros
+        int width = prefix.getInt(WIDTH);
+        int height = prefix.getInt(HEIGHT);
+        long expected = -1;
+        if (width > 0 && height > 0) {
+            try {
+                expected = HEADER_SIZE + 2 * FrameBuffer.storageSize(width, height);
+            } catch (IllegalArgumentException e) {
+                // rows this wide fit in no frame buffer, so no file has the right size
+            }
+        }
+        long size = channel.size();
+        if (size != expected) {
+            channel.close();
+            throw new IOException(path + " has " + size + " bytes, but a " + width + "x" + height
+                    + " accumulation file has " + expected);
+        }
+
+        var file = new AccumulationFile(channel, width, height);
+        switch (file.header.getInt(STATE)) {
+            // the working copy may be ahead of the last commit, roll it back
+            case STATE_CHECKPOINT_VALID -> file.working.copyFrom(file.checkpoint);
+            // the process died while copying to the checkpoint, which the working copy can repair
+            case STATE_WORKING_COMPLETE -> file.writeCheckpoint();
+            // nothing was committed yet, start over
+            default -> file.working.clear();
+        }
+        return file;
+    }
+
+    /**
+     * @return what was rendered into the file
+     */
+    public Header header() {
+        byte[] samplerName = new byte[SAMPLER_NAME_LENGTH];
+        header.get(SAMPLER, samplerName);
+        int length = 0;
+        while (length < samplerName.length && samplerName[length] != 0) length++;
+        int samples = switch (header.getInt(STATE)) {
+            case STATE_CHECKPOINT_VALID -> header.getInt(CHECKPOINT_SAMPLES);
+            case STATE_WORKING_COMPLETE -> header.getInt(WORKING_SAMPLES);
+            default -> 0;
+        };
+        return new Header(
+                header.getInt(WIDTH),
+                header.getInt(HEIGHT),
+                header.getInt(SCENE),
+                new String(samplerName, 0, length, StandardCharsets.US_ASCII),
+                header.getLong(SEED),
+                samples
+        );
+    }
+
+    /**
+     * @return the frame buffer that passes are rendered into
+     */
+    public FrameBuffer frame() {
+        return working;
+    }
+
+    /**
+     * Makes everything rendered into the frame buffer so far durable. Must not be called while a pass is rendering.
+     *
+     * @param samplesPerPixel the number of samples every pixel has after the pass
+     */
+    public void commit(int samplesPerPixel) {
+        working.force();
+        // the sample count of a copy is only written while the state does not point at that copy
+        header.putInt(WORKING_SAMPLES, samplesPerPixel);
+        header.putInt(STATE, STATE_WORKING_COMPLETE);
+        header.force();
+        writeCheckpoint();
+    }
+
+    private void writeCheckpoint() {
+        header.putInt(CHECKPOINT_SAMPLES, header.getInt(WORKING_SAMPLES));
+        checkpoint.copyFrom(working);
+        checkpoint.force();
+        header.putInt(STATE, STATE_CHECKPOINT_VALID);
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,42 @@
+package com.raytracing.render;
+
+/**
+ * Settings of adaptive sampling. Pixels are sampled in rounds, and a pixel stops taking samples once the standard
+ * error of its mean luminance falls below a fraction of the mean.
+ *
+ * @param maxRelativeError the standard error relative to the mean at which a pixel counts as converged
+ * @param minSamples       the number of samples every pixel takes before convergence is tested
+ * @param samplesPerRound  the number of samples an unconverged pixel takes per round
+ * @param maxSamples       the number of samples after which a pixel stops in any case
+ */
+public record AdaptiveSampling(double maxRelativeError, int minSamples, int samplesPerRound, int maxSamples) {
+    /**
+     * Pixels darker than this are judged by their absolute error, so that black pixels can converge
+     */
+    private static final double MIN_LUMINANCE = 1e-2;
+
+    public AdaptiveSampling {
+        if (minSamples < 2 || samplesPerRound < 1 || maxSamples < minSamples) {
+            throw new IllegalArgumentException("need 2 <= minSamples <= maxSamples and samplesPerRound >= 1");
+        }
+    }
+
+    /**
+     * @return the number of samples pixel (x, y) should take in the next round, 0 if it has converged
+     */
+    public int samplesThisRound(FrameBuffer frame, int x, int y) {
+        int n = frame.sampleCount(x, y);
+        if (n < minSamples) {
+            return minSamples - n;
+        }
+        if (n >= maxSamples) {
+            return 0;
+        }
+
+        double tolerance = maxRelativeError * Math.max(frame.meanLuminance(x, y), MIN_LUMINANCE);
+        if (frame.standardError(x, y) <= tolerance) {
+            return 0;
+        }
+        return Math.min(samplesPerRound, maxSamples - n);
+    }
+}
@@ -0,0 +1,149 @@
+package com.raytracing.render;
+
+import com.raytracing.base.PixelColor;
+import com.raytracing.utils.Canvas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The final linear colors of an image as 32-bit floats, three per pixel in RGB order.
+ * Unlike an 8-bit image, the film keeps colors above 1 for HDR output.
+ * The colors live in buffers that are either on the heap or mapped from a file, so a large image does not need
+ * to fit on the heap. A buffer holds a window of whole rows of at most {@link #MAX_WINDOW_BYTES} bytes, so the image
+ * may take more than 2 GB; in the file the rows simply follow each other. Different threads may write to the film at
+ * the same time as long as they never write to the same pixel.
+ */
+public class Film {
+    /**
+     * Bytes of storage per pixel
+     */
+    public static final int BYTES_PER_PIXEL = 3 * Float.BYTES;
+
+    /**
+     * The most bytes one window of rows takes
+     */
+    static final long MAX_WINDOW_BYTES = 1L << 30;
+
+    private final int width;
+    private final int height;
+    private final int rowsPerWindow;
+    private final FloatBuffer[] windows;
+
+    private Film(int width, int height, ByteBuffer[] storage) {
+        this.width = width;
+        this.height = height;
+        rowsPerWindow = rowsPerWindow(width, height);
+        windows = new FloatBuffer[storage.length];
+        for (int w = 0; w < storage.length; w++) {
+            windows[w] = storage[w].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    /**
+     * Constructs a black film on the heap
+     */
+    public Film(int width, int height) {
+        this(width, height, allocate(width, height));
+    }
+
+    /**
+     * Constructs a film mapped from a file, replacing any existing file
+     *
+     * @param path the path of the file
+     */
+    public static Film mapped(Path path, int width, int height) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int rows = rowsPerWindow(width, height);
+            ByteBuffer[] storage = new ByteBuffer[windowCount(height, rows)];
+            long position = 0;
+            for (int w = 0; w < storage.length; w++) {
+                long size = (long) Math.min(rows, height - w * rows) * width * BYTES_PER_PIXEL;
+                // the mapping stays valid after the channel is closed
+                storage[w] = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                position += size;
+            }
+            return new Film(width, height, storage);
+        }
+    }
+
+    private static ByteBuffer[] allocate(int width, int height) {
+        int rows = rowsPerWindow(width, height);
+        ByteBuffer[] storage = new ByteBuffer[windowCount(height, rows)];
+        for (int w = 0; w < storage.length; w++) {
+            storage[w] = ByteBuffer.allocate(Math.min(rows, height - w * rows) * width * BYTES_PER_PIXEL);
+        }
+        return storage;
+    }
+
+    private static int rowsPerWindow(int width, int height) {
+        long rowBytes = (long) width * BYTES_PER_PIXEL;
+        if (rowBytes > MAX_WINDOW_BYTES) {
+            throw new IllegalArgumentException("a row of " + width + " pixels does not fit in a film");
+        }
+        return rowBytes == 0 ? Math.max(1, height) : (int) Math.max(1, Math.min(height, MAX_WINDOW_BYTES / rowBytes));
+    }
+
+    private static int windowCount(int height, int rowsPerWindow) {
+        return Math.max(1, (height + rowsPerWindow - 1) / rowsPerWindow);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Sets the color of pixel (x, y)
+     */
+    public void set(int x, int y, float red, float green, float blue) {
+        int i = index(x, y);
+        windows[y / rowsPerWindow].put(i, red).put(i + 1, green).put(i + 2, blue);
+    }
+
+    public float red(int x, int y) {
+        return windows[y / rowsPerWindow].get(index(x, y));
+    }
+
+    public float green(int x, int y) {
+        return windows[y / rowsPerWindow].get(index(x, y) + 1);
+    }
+
+    public float blue(int x, int y) {
+        return windows[y / rowsPerWindow].get(index(x, y) + 2);
+    }
+
+    /**
+     * @return the color of pixel (x, y) as 0xRRGGBB
+     */
+    public int rgb(int x, int y) {
+        FloatBuffer window = windows[y / rowsPerWindow];
+        int i = index(x, y);
+        return PixelColor.rgb(window.get(i), window.get(i + 1), window.get(i + 2));
+    }
+
+    /**
+     * Writes every pixel of this film to the canvas
+     */
+    public void writeTo(Canvas canvas) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                canvas.setRgb(x, y, rgb(x, y));
+            }
+        }
+    }
+
+    // the index of the red component of pixel (x, y) in its window
+    private int index(int x, int y) {
+        return 3 * (y % rowsPerWindow * width + x);
+    }
+}
@@ -0,0 +1,427 @@
+package com.raytracing.render;
+
+import com.raytracing.base.PixelColor;
+import com.raytracing.utils.Canvas;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Accumulates color samples for every pixel of an image.
+ * Besides the sums of colors, the buffer keeps a running mean and variance of the luminance of every pixel
+ * (Welford's algorithm) to tell how noisy the pixel still is.
+ * All state lives in byte buffers, which may be on the heap or mapped from a file. The rows of the image are split
+ * into bands of at most {@link #MAX_BAND_BYTES} bytes, one buffer each, so an image may take more than 2 GB; an
+ * image that fits in one band is stored exactly as before bands existed.
+ * A buffer may also cover just one tile of an image, for renders that send tiles elsewhere as they finish; its
+ * pixels are still addressed by their coordinates in the image.
+ * Different threads may write to the buffer at the same time as long as they never write to the same pixel.
+ */
+public class FrameBuffer {
+    /**
+     * Bytes of storage per pixel: three color sums, the luminance mean and M2, the valid and the taken sample counts
+     */
+    public static final int BYTES_PER_PIXEL = 5 * Double.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * The most bytes one band of rows takes, the most a single buffer can hold
+     */
+    static final long MAX_BAND_BYTES = Integer.MAX_VALUE;
+
+    private final int x0;
+    private final int y0;
+    private final int width;
+    private final int height;
+    private final int rowsPerBand;
+    private final ByteBuffer[] storage;
+    private final DoubleBuffer[] sums;
+    private final DoubleBuffer[] luminanceMean;
+    private final DoubleBuffer[] luminanceM2;
+    private final IntBuffer[] counts;
+    private final IntBuffer[] taken;
+
+    /**
+     * Constructs an empty frame buffer on the heap
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     */
+    public FrameBuffer(int width, int height) {
+        this(0, 0, width, height, allocate(width, height));
+    }
+
+    /**
+     * Constructs an empty frame buffer on the heap that holds only the pixels of a tile
+     *
+     * @param tile the pixels of the image the buffer holds
+     */
+    public FrameBuffer(Tile tile) {
+        this(tile.x0(), tile.y0(), tile.x1() - tile.x0(), tile.y1() - tile.y0(),
+                allocate(tile.x1() - tile.x0(), tile.y1() - tile.y0()));
+    }
+
+    private FrameBuffer(int x0, int y0, int width, int height, ByteBuffer[] storage) {
+        this.x0 = x0;
+        this.y0 = y0;
+        this.width = width;
+        this.height = height;
+        this.storage = storage;
+        rowsPerBand = rowsPerBand(width, height);
+
+        int bands = storage.length;
+        sums = new DoubleBuffer[bands];
+        luminanceMean = new DoubleBuffer[bands];
+        luminanceM2 = new DoubleBuffer[bands];
+        counts = new IntBuffer[bands];
+        taken = new IntBuffer[bands];
+        for (int b = 0; b < bands; b++) {
+            int n = bandRows(b) * width;
+            if (storage[b].capacity() != n * BYTES_PER_PIXEL) {
+                throw new IllegalArgumentException("storage of " + storage[b].capacity() + " bytes does not fit "
+                        + width + "x" + bandRows(b) + " pixels");
+            }
+            int offset = 0;
+            sums[b] = view(storage[b], offset, 3 * n * Double.BYTES).asDoubleBuffer();
+            offset += 3 * n * Double.BYTES;
+            luminanceMean[b] = view(storage[b], offset, n * Double.BYTES).asDoubleBuffer();
+            offset += n * Double.BYTES;
+            luminanceM2[b] = view(storage[b], offset, n * Double.BYTES).asDoubleBuffer();
+            offset += n * Double.BYTES;
+            counts[b] = view(storage[b], offset, n * Integer.BYTES).asIntBuffer();
+            offset += n * Integer.BYTES;
+            taken[b] = view(storage[b], offset, n * Integer.BYTES).asIntBuffer();
+        }
+    }
+
+    /**
+     * Constructs a frame buffer mapped from a region of a file, keeping whatever samples the region already holds
+     *
+     * @param channel  the file, open for reading, and for writing unless the mode is read-only
+     * @param mode     how the file is mapped
+     * @param position where the {@link #storageSize} bytes of the buffer start in the file
+     */
+    public static FrameBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, int width, int height)
+            throws IOException {
+        int rows = rowsPerBand(width, height);
+        ByteBuffer[] storage = new ByteBuffer[bandCount(height, rows)];
+        for (int b = 0; b < storage.length; b++) {
+            long bandBytes = (long) Math.min(rows, height - b * rows) * width * BYTES_PER_PIXEL;
+            storage[b] = channel.map(mode, position, bandBytes);
+            position += bandBytes;
+        }
+        return new FrameBuffer(0, 0, width, height, storage);
+    }
+
+    /**
+     * Constructs an empty frame buffer mapped from a file, replacing any existing file
+     *
+     * @param path the path of the file
+     */
+    public static FrameBuffer mapped(Path path, int width, int height) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mappings stay valid after the channel is closed
+            return map(channel, FileChannel.MapMode.READ_WRITE, 0, width, height);
+        }
+    }
+
+    /**
+     * @return the number of bytes of storage for a width x height image
+     */
+    public static long storageSize(int width, int height) {
+        if ((long) width * BYTES_PER_PIXEL > MAX_BAND_BYTES) {
+            throw new IllegalArgumentException("a row of " + width + " pixels does not fit in a frame buffer");
+        }
+        return (long) width * height * BYTES_PER_PIXEL;
+    }
+
+    private static ByteBuffer[] allocate(int width, int height) {
+        int rows = rowsPerBand(width, height);
+        ByteBuffer[] storage = new ByteBuffer[bandCount(height, rows)];
+        for (int b = 0; b < storage.length; b++) {
+            storage[b] = ByteBuffer.allocate(Math.min(rows, height - b * rows) * width * BYTES_PER_PIXEL);
+        }
+        return storage;
+    }
+
+    private static int rowsPerBand(int width, int height) {
+        long rowBytes = storageSize(width, 1);
+        return rowBytes == 0 ? Math.max(1, height) : (int) Math.max(1, Math.min(height, MAX_BAND_BYTES / rowBytes));
+    }
+
+    private static int bandCount(int height, int rowsPerBand) {
+        return Math.max(1, (height + rowsPerBand - 1) / rowsPerBand);
+    }
+
+    private int bandRows(int band) {
+        return Math.min(rowsPerBand, height - band * rowsPerBand);
+    }
+
+    /**
+     * Overwrites all samples of this buffer with the samples of another buffer of the same size
+     */
+    public void copyFrom(FrameBuffer other) {
+        if (!sameRegion(other)) {
+            throw new IllegalArgumentException("frame buffers differ in size");
+        }
+        for (int b = 0; b < storage.length; b++) {
+            storage[b].duplicate().clear().put(other.storage[b].duplicate().clear());
+        }
+    }
+
+    /**
+     * Removes all samples, for an image that starts over
+     */
+    public void clear() {
+        var zeros = ByteBuffer.allocate(1 << 16);
+        for (ByteBuffer band : storage) {
+            var target = band.duplicate().clear();
+            while (target.hasRemaining()) {
+                zeros.clear().limit(Math.min(zeros.capacity(), target.remaining()));
+                target.put(zeros);
+            }
+        }
+    }
+
+    /**
+     * Makes the samples of a buffer mapped from a file durable
+     */
+    public void force() {
+        for (ByteBuffer band : storage) {
+            if (band instanceof MappedByteBuffer mapped) mapped.force();
+        }
+    }
+
+    /**
+     * Adds all samples of another buffer of the same size to this buffer.
+     * The luminance statistics of the two buffers are combined with Chan's parallel variance formula.
+     */
+    public void merge(FrameBuffer other) {
+        if (!sameRegion(other)) {
+            throw new IllegalArgumentException("frame buffers differ in size");
+        }
+        for (int b = 0; b < storage.length; b++) {
+            var sums = this.sums[b];
+            var otherSums = other.sums[b];
+            for (int i = 0; i < bandRows(b) * width; i++) {
+                for (int c = 3 * i; c < 3 * i + 3; c++) {
+                    sums.put(c, sums.get(c) + otherSums.get(c));
+                }
+                taken[b].put(i, taken[b].get(i) + other.taken[b].get(i));
+
+                int na = counts[b].get(i);
+                int nb = other.counts[b].get(i);
+                if (nb == 0) continue;
+                int n = na + nb;
+                double delta = other.luminanceMean[b].get(i) - luminanceMean[b].get(i);
+                luminanceMean[b].put(i, luminanceMean[b].get(i) + delta * nb / n);
+                luminanceM2[b].put(i, luminanceM2[b].get(i) + other.luminanceM2[b].get(i)
+                        + delta * delta * na / n * nb);
+                counts[b].put(i, n);
+            }
+        }
+    }
+
+    /**
+     * Writes the complete state of every pixel of the tile, so another buffer can take it over with {@link #readTile}
+     */
+    public void writeTile(Tile tile, DataOutput out) throws IOException {
+        for (int y = tile.y0(); y < tile.y1(); y++) {
+            int b = band(y);
+            for (int x = tile.x0(); x < tile.x1(); x++) {
+                int i = index(x, y);
+                out.writeDouble(sums[b].get(3 * i));
+                out.writeDouble(sums[b].get(3 * i + 1));
+                out.writeDouble(sums[b].get(3 * i + 2));
+                out.writeDouble(luminanceMean[b].get(i));
+                out.writeDouble(luminanceM2[b].get(i));
+                out.writeInt(counts[b].get(i));
+                out.writeInt(taken[b].get(i));
+            }
+        }
+    }
+
+    /**
+     * Overwrites every pixel of the tile with the state written by {@link #writeTile}
+     */
+    public void readTile(Tile tile, DataInput in) throws IOException {
+        for (int y = tile.y0(); y < tile.y1(); y++) {
+            int b = band(y);
+            for (int x = tile.x0(); x < tile.x1(); x++) {
+                int i = index(x, y);
+                sums[b].put(3 * i, in.readDouble());
+                sums[b].put(3 * i + 1, in.readDouble());
+                sums[b].put(3 * i + 2, in.readDouble());
+                luminanceMean[b].put(i, in.readDouble());
+                luminanceM2[b].put(i, in.readDouble());
+                counts[b].put(i, in.readInt());
+                taken[b].put(i, in.readInt());
+            }
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Adds all samples of a pixel to pixel (x, y)
+     *
+     * @param x     the x-coordinate of the pixel
+     * @param y     the y-coordinate of the pixel
+     * @param pixel a pixel holding one or more samples
+     */
+    public void addSample(int x, int y, PixelColor pixel) {
+        addSample(x, y, pixel.red(), pixel.green(), pixel.blue());
+    }
+
+    /**
+     * Adds a sample to pixel (x, y). Samples that are not finite are counted as taken but otherwise dropped.
+     */
+    public void addSample(int x, int y, double red, double green, double blue) {
+        int b = band(y);
+        int i = index(x, y);
+        taken[b].put(i, taken[b].get(i) + 1);
+        if (Double.isFinite(red) && Double.isFinite(green) && Double.isFinite(blue)) {
+            var sums = this.sums[b];
+            sums.put(3 * i, sums.get(3 * i) + red);
+            sums.put(3 * i + 1, sums.get(3 * i + 1) + green);
+            sums.put(3 * i + 2, sums.get(3 * i + 2) + blue);
+            int n = counts[b].get(i) + 1;
+            counts[b].put(i, n);
+
+            double luminance = PixelColor.luminance(red, green, blue);
+            double mean = luminanceMean[b].get(i);
+            double delta = luminance - mean;
+            mean += delta / n;
+            luminanceMean[b].put(i, mean);
+            luminanceM2[b].put(i, luminanceM2[b].get(i) + delta * (luminance - mean));
+        }
+    }
+
+    /**
+     * @return the number of samples taken at pixel (x, y), which is also the index of the next sample
+     */
+    public int sampleCount(int x, int y) {
+        return taken[band(y)].get(index(x, y));
+    }
+
+    /**
+     * @return the averaged color of pixel (x, y), black while the pixel has no valid samples
+     */
+    public PixelColor pixel(int x, int y) {
+        int b = band(y);
+        int i = index(x, y);
+        return new PixelColor(average(b, 3 * i, i), average(b, 3 * i + 1, i), average(b, 3 * i + 2, i));
+    }
+
+    /**
+     * @return the averaged color of pixel (x, y) as 0xRRGGBB, black while the pixel has no valid samples
+     */
+    public int rgb(int x, int y) {
+        int b = band(y);
+        int i = index(x, y);
+        return PixelColor.rgb(average(b, 3 * i, i), average(b, 3 * i + 1, i), average(b, 3 * i + 2, i));
+    }
+
+    /**
+     * @return the mean luminance of pixel (x, y)
+     */
+    public double meanLuminance(int x, int y) {
+        return luminanceMean[band(y)].get(index(x, y));
+    }
+
+    /**
+     * @return the standard error of the mean luminance of pixel (x, y), infinite with fewer than two samples
+     */
+    public double standardError(int x, int y) {
+        int b = band(y);
+        int i = index(x, y);
+        int n = counts[b].get(i);
+        if (n < 2) return Double.POSITIVE_INFINITY;
+        double variance = luminanceM2[b].get(i) / (n - 1);
+        return Math.sqrt(variance / n);
+    }
+
+    /**
+     * Writes every pixel of this buffer to the canvas, pixels without valid samples in black
+     */
+    public void writeTo(Canvas canvas) {
+        for (int y = y0; y < y0 + height; y++) {
+            for (int x = x0; x < x0 + width; x++) {
+                canvas.setRgb(x - x0, y - y0, rgb(x, y));
+            }
+        }
+    }
+
+    /**
+     * Writes the averaged colors of the pixels of the tile to the film, pixels without valid samples in black
+     */
+    public void writeTo(Film film, Tile tile) {
+        for (int y = tile.y0(); y < tile.y1(); y++) {
+            int b = band(y);
+            for (int x = tile.x0(); x < tile.x1(); x++) {
+                int i = index(x, y);
+                film.set(x, y, (float) average(b, 3 * i, i), (float) average(b, 3 * i + 1, i),
+                        (float) average(b, 3 * i + 2, i));
+            }
+        }
+    }
+
+    /**
+     * Writes the number of samples of every pixel to the canvas as a heatmap,
+     * from black for no samples over red to yellow for the most samples of any pixel
+     */
+    public void writeSampleHeatmapTo(Canvas canvas) {
+        int max = 1;
+        for (IntBuffer band : taken) {
+            for (int i = 0; i < band.limit(); i++) {
+                max = Math.max(max, band.get(i));
+            }
+        }
+        for (int y = y0; y < y0 + height; y++) {
+            for (int x = x0; x < x0 + width; x++) {
+                float heat = (float) sampleCount(x, y) / max;
+                int red = Math.round(255 * Math.min(1f, 2f * heat));
+                int green = Math.round(255 * Math.max(0f, 2f * heat - 1f));
+                canvas.setRgb(x - x0, y - y0, red << 16 | green << 8);
+            }
+        }
+    }
+
+    // a pixel whose samples were all dropped, or that was never sampled, has no mean; it is written black
+    private double average(int band, int sum, int pixel) {
+        int n = counts[band].get(pixel);
+        return n == 0 ? 0.0 : sums[band].get(sum) / n;
+    }
+
+    private static ByteBuffer view(ByteBuffer storage, int offset, int length) {
+        return storage.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private boolean sameRegion(FrameBuffer other) {
+        return other.x0 == x0 && other.y0 == y0 && other.width == width && other.height == height;
+    }
+
+    private int band(int y) {
+        return (y - y0) / rowsPerBand;
+    }
+
+    // the index of pixel (x, y) in its band
+    private int index(int x, int y) {
+        return (y - y0) % rowsPerBand * width + (x - x0);
+    }
+}
@@ -0,0 +1,154 @@
+package com.raytracing.render;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders an image in passes. Every pass adds the same number of samples to every pixel of a frame buffer that
+ * lives across passes, so the image can be saved after any pass and only gets better with more passes.
+ * When the frame buffer lives in an accumulation file, every pass is committed to the file once it is done.
+ * A scene that is edited while it is rendered gets a new renderer for a pass, which starts the image over.
+ */
+public class ProgressiveRender {
+    /**
+     * Receives the frame buffer whenever a snapshot is due
+     */
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        /**
+         * @param frame           the frame buffer
+         * @param samplesPerPixel the number of samples every pixel has so far
+         * @param last            true if no pass follows this snapshot
+         */
+        void write(FrameBuffer frame, int samplesPerPixel, boolean last) throws IOException;
+    }
+
+    /**
+     * Supplies the renderer of every pass, such as one of the latest version of a {@link VersionedScene}
+     */
+    @FunctionalInterface
+    public interface RendererSource {
+        /**
+         * @return the renderer of the next pass; any other renderer than the one of the last pass starts the image
+         * over
+         */
+        Renderer next();
+    }
+
+    /**
+     * Settings of a progressive render
+     *
+     * @param samplesPerPass      the number of samples every pass adds to every pixel
+     * @param targetSamples       the number of samples per pixel after which rendering stops
+     * @param timeBudget          the wall-clock time after which rendering stops, null for no limit
+     * @param snapshotEveryPasses the number of passes between snapshots, 0 to not snapshot by passes
+     * @param snapshotInterval    the wall-clock time between snapshots, null to not snapshot by time
+     */
+    public record Settings(int samplesPerPass, int targetSamples, Duration timeBudget,
+                           int snapshotEveryPasses, Duration snapshotInterval) {
+        public Settings {
+            if (samplesPerPass < 1 || targetSamples < 1) {
+                throw new IllegalArgumentException("samples per pass and target samples must be positive");
+            }
+        }
+    }
+
+    private final RendererSource source;
+    // the renderer of the last pass, null before the first pass
+    private Renderer renderer;
+    private final TileScheduler scheduler;
+    private final ForkJoinPool pool;
+    private final FrameBuffer frame;
+    private final AccumulationFile checkpoint;
+
+    /**
+     * @param renderer  the renderer
+     * @param scheduler the tiles of the image
+     * @param pool      the pool that renders the tiles, null to render on the calling thread
+     * @param frame     the frame buffer that accumulates the passes
+     */
+    public ProgressiveRender(Renderer renderer, TileScheduler scheduler, ForkJoinPool pool, FrameBuffer frame) {
+        this(() -> renderer, scheduler, pool, frame, null);
+    }
+
+    /**
+     * @param source    supplies the renderer of every pass
+     * @param scheduler the tiles of the image
+     * @param pool      the pool that renders the tiles, null to render on the calling thread
+     * @param frame     the frame buffer that accumulates the passes
+     */
+    public ProgressiveRender(RendererSource source, TileScheduler scheduler, ForkJoinPool pool, FrameBuffer frame) {
+        this(source, scheduler, pool, frame, null);
+    }
+
+    /**
+     * @param renderer   the renderer
+     * @param scheduler  the tiles of the image
+     * @param pool       the pool that renders the tiles, null to render on the calling thread
+     * @param checkpoint the file that holds the frame buffer and that every finished pass is committed to
+     */
+    public ProgressiveRender(Renderer renderer, TileScheduler scheduler, ForkJoinPool pool,
+                             AccumulationFile checkpoint) {
+        this(() -> renderer, scheduler, pool, checkpoint.frame(), checkpoint);
+    }
+
+    private ProgressiveRender(RendererSource source, TileScheduler scheduler, ForkJoinPool pool, FrameBuffer frame,
+                              AccumulationFile checkpoint) {
+        this.source = source;
+        this.scheduler = scheduler;
+        this.pool = pool;
+        this.frame = frame;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Renders passes until the target samples are reached or the next pass would likely overrun the time budget.
+     * The last pass always ends with a snapshot. If the renderer changes between passes, the frame buffer is
+     * cleared and the samples count from 0 again.
+     *
+     * @param settings        the settings
+     * @param samplesRendered the number of samples every pixel of the frame buffer already has
+     * @param snapshot        the writer of snapshots
+     * @return the number of samples every pixel has at the end
+     */
+    public int run(Settings settings, int samplesRendered, SnapshotWriter snapshot) throws IOException {
+        long start = System.nanoTime();
+        long lastSnapshot = start;
+        long budget = settings.timeBudget() == null ? Long.MAX_VALUE : settings.timeBudget().toNanos();
+        long interval = settings.snapshotInterval() == null ? Long.MAX_VALUE : settings.snapshotInterval().toNanos();
+
+        int samples = samplesRendered;
+        for (int pass = 1; samples < settings.targetSamples(); pass++) {
+            Renderer next = source.next();
+            if (renderer != null && next != renderer) {
+                frame.clear();
+                samples = 0;
+                System.out.printf("Pass %d starts over for a new version of the scene%n", pass);
+            }
+            renderer = next;
+            int passSamples = Math.min(settings.samplesPerPass(), settings.targetSamples() - samples);
+            long passStart = System.nanoTime();
+            scheduler.render(pool, tile -> next.renderTile(tile, frame, passSamples));
+            samples += passSamples;
+            if (checkpoint != null) {
+                checkpoint.commit(samples);
+            }
+
+            long now = System.nanoTime();
+            long passTime = now - passStart;
+            // assume the next pass takes as long as this one
+            boolean last = samples >= settings.targetSamples() || now - start + passTime > budget;
+            System.out.printf("Pass %d: %d spp, %.1f s%n", pass, samples, (now - start) / 1e9);
+
+            boolean snapshotDue = settings.snapshotEveryPasses() > 0 && pass % settings.snapshotEveryPasses() == 0
+                    || now - lastSnapshot >= interval;
+            if (last || snapshotDue) {
+                snapshot.write(frame, samples, last);
+                lastSnapshot = System.nanoTime();
+            }
+            if (last) break;
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,186 @@
+package com.raytracing.render;
+
+import com.raytracing.base.Interval;
+import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.interfaces.Material;
+import com.raytracing.interfaces.PDF;
+import com.raytracing.interfaces.Sampler;
+import com.raytracing.pdf.HittablePdf;
+import com.raytracing.pdf.MixturePdf;
+import com.raytracing.scene.Camera;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+
+/**
+ * Traces the rays of every pixel in a tile and accumulates the results in a frame buffer
+ */
+public class Renderer {
+    private static final double EPSILON = 1E-3;
+
+    private final Hittable world;
+    private final HittableList lights;
+    private final Camera camera;
+    private final PixelColor background;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int samplesPerPixel;
+    private final int maxDepth;
+    private final Sampler sampler;
+
+    /**
+     * Constructs a renderer of a scene
+     *
+     * @param world           the objects in the scene
+     * @param lights          the objects that are sampled directly as light sources
+     * @param camera          the camera
+     * @param background      the color of rays that hit nothing
+     * @param imageWidth      the width of the image
+     * @param imageHeight     the height of the image
+     * @param samplesPerPixel the number of samples per pixel
+     * @param maxDepth        the maximum number of bounces of a ray
+     * @param sampler         the source of all random numbers drawn while rendering
+     */
+    public Renderer(Hittable world, HittableList lights, Camera camera, PixelColor background,
+                    int imageWidth, int imageHeight, int samplesPerPixel, int maxDepth, Sampler sampler) {
+        this.world = world;
+        this.lights = lights;
+        this.camera = camera;
+        this.background = background;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.samplesPerPixel = samplesPerPixel;
+        this.maxDepth = maxDepth;
+        this.sampler = sampler;
+    }
+
+    public int imageWidth() {
+        return imageWidth;
+    }
+
+    public int imageHeight() {
+        return imageHeight;
+    }
+
+    public int samplesPerPixel() {
+        return samplesPerPixel;
+    }
+
+    /**
+     * Renders every pixel of the tile into the frame buffer.
+     * Every sample draws its random numbers from its own context, so it does not matter which thread renders a tile
+     * or how the image is split into tiles.
+     */
+    public void renderTile(Tile tile, FrameBuffer frame) {
+        renderTile(tile, frame, samplesPerPixel);
+    }
+
+    /**
+     * Adds the given number of samples to every pixel of the tile
+     */
+    public void renderTile(Tile tile, FrameBuffer frame, int samples) {
+        renderTile(tile, frame, samples, 0);
+    }
+
+    /**
+     * Adds the given number of samples to every pixel of the tile, counting sample indices from an offset.
+     * Frame buffers rendered with disjoint ranges of sample indices can be merged into one.
+     *
+     * @param firstSample the index of the sample that the first sample in the frame buffer stands for
+     */
+    public void renderTile(Tile tile, FrameBuffer frame, int samples, long firstSample) {
+        for (int x = tile.x0(); x < tile.x1(); x++) {
+            for (int y = tile.y0(); y < tile.y1(); y++) {
+                addSamples(frame, x, y, samples, firstSample);
+            }
+        }
+    }
+
+    /**
+     * Renders one round of adaptive sampling of the tile, skipping the pixels that have converged
+     *
+     * @return the number of pixels of the tile that took samples in this round
+     */
+    public int renderTile(Tile tile, FrameBuffer frame, AdaptiveSampling adaptive) {
+        int active = 0;
+        for (int x = tile.x0(); x < tile.x1(); x++) {
+            for (int y = tile.y0(); y < tile.y1(); y++) {
+                int samples = adaptive.samplesThisRound(frame, x, y);
+                if (samples > 0) {
+                    addSamples(frame, x, y, samples, 0);
+                    active++;
+                }
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Adds samples to a pixel, continuing from the samples the pixel already has in the frame buffer
+     */
+    private void addSamples(FrameBuffer frame, int x, int y, int samples, long firstSample) {
+        for (int s = 0; s < samples; s++) {
+            frame.addSample(x, y, samplePixel(x, y, firstSample + frame.sampleCount(x, y)));
+        }
+    }
+
+    /**
+     * Traces one sample of a pixel. The first two dimensions of the sample jitter the position inside the pixel.
+     *
+     * @param x           the x-coordinate of the pixel
+     * @param y           the y-coordinate of the pixel
+     * @param sampleIndex the index of the sample in the pixel
+     * @return the color of the sample
+     */
+    public PixelColor samplePixel(int x, int y, long sampleIndex) {
+        var context = new SamplingContext(sampler, x, y, sampleIndex);
+        var jitter = context.next2D();
+        double u = (x + jitter.x() - 0.5) / (imageWidth - 1);
+        double v = (y + jitter.y() - 0.5) / (imageHeight - 1);
+        // ray start from Q and hit at u portion of width and v portion of height
+        Ray ray = camera.getRay(u, v, context);
+        return rayColor(ray, maxDepth, context);
+    }
+
+    /**
+     * @return the color carried back by the ray
+     */
+    public PixelColor rayColor(Ray ray, int depth, SamplingContext context) {
+        if (depth <= 0) {
+            return PixelColor.BLACK;
+        }
+        context.startBounce(maxDepth - depth);
+
+        Hittable.HitRecord hit = world.hit(ray, new Interval(EPSILON, Double.POSITIVE_INFINITY));
+        if (hit == null) return background;
+
+        PixelColor colorFromEmission = hit.material().emitted(hit, hit.u(), hit.v(), hit.point());
+
+        Material.ScatterRecord scatter = hit.material().scatter(hit, context);
+        if (scatter == null) {
+            return colorFromEmission;
+        }
+
+        PixelColor colorFromScatter;
+        if (scatter.pdf() == null) {
+            return rayColor(scatter.scatteredRay(), depth - 1, context).dot(scatter.attenuation());
+        } else {
+            // without lights to sample, the scattering pdf alone is used
+            PDF pdf = scatter.pdf();
+            if (!lights.objects().isEmpty()) {
+                var lightPdf = new HittablePdf(lights, hit.point());
+                pdf = new MixturePdf(scatter.pdf(), lightPdf);
+            }
+
+            var scatteredRay = new Ray(hit.point(), pdf.generate(context), ray.time());
+            var pdfValue = pdf.value(scatteredRay.direction());
+
+            double scatteringPdf = hit.material().scatteringPdf(hit, scatteredRay);
+
+            colorFromScatter = rayColor(scatteredRay, depth - 1, context).dot(scatter.attenuation()).scale(scatteringPdf / pdfValue);
+        }
+
+        return colorFromEmission.add(colorFromScatter);
+    }
+}
@@ -0,0 +1,157 @@
+package com.raytracing.render;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A frame buffer mapped from a file that holds one shard of a render.
+ * <p>
+ * A shard renders every pixel of the image with its own range of sample indices. Since the samples of a pixel are
+ * plain sums, shards with disjoint ranges can be rendered by independent processes and merged into the same image
+ * a single process rendering all ranges would have produced.
+ */
+public class ShardFile implements Closeable {
+    private static final byte[] MAGIC = "RTSHARD1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 64;
+    private static final int SAMPLER_NAME_LENGTH = 16;
+
+    // offsets of the header fields
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 12;
+    private static final int SCENE = 16;
+    private static final int SEED = 20;
+    private static final int SAMPLER = 28;
+    private static final int FIRST_SAMPLE = 44;
+    private static final int SAMPLES = 52;
+    private static final int COMPLETE = 56;
+
+    /**
+     * What was rendered into the shard
+     *
+     * @param width           the width of the image
+     * @param height          the height of the image
+     * @param scene           the number of the scene
+     * @param sampler         the name of the sampler
+     * @param seed            the seed of the sampler
+     * @param firstSample     the index of the first sample of every pixel
+     * @param samplesPerPixel the number of samples of every pixel
+     */
+    public record Header(int width, int height, int scene, String sampler, long seed,
+                         long firstSample, int samplesPerPixel) {
+        /**
+         * @return true if both shards render the same image, no matter which samples they take
+         */
+        public boolean sameImage(Header other) {
+            return width == other.width && height == other.height && scene == other.scene
+                    && sampler.equals(other.sampler) && seed == other.seed;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final FrameBuffer frame;
+
+    private ShardFile(FileChannel channel, FileChannel.MapMode mode, int width, int height) throws IOException {
+        this.channel = channel;
+        header = channel.map(mode, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        frame = FrameBuffer.map(channel, mode, HEADER_SIZE, width, height);
+    }
+
+    /**
+     * Creates a new shard with an empty frame buffer, replacing any existing file
+     *
+     * @param path   the path of the file
+     * @param header what is going to be rendered
+     */
+    public static ShardFile create(Path path, Header header) throws IOException {
+        byte[] samplerName = header.sampler().getBytes(StandardCharsets.US_ASCII);
+        if (samplerName.length > SAMPLER_NAME_LENGTH) {
+            throw new IllegalArgumentException("sampler name too long: " + header.sampler());
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var file = new ShardFile(channel, FileChannel.MapMode.READ_WRITE, header.width(), header.height());
+        file.header.put(0, MAGIC)
+                .putInt(WIDTH, header.width())
+                .putInt(HEIGHT, header.height())
+                .putInt(SCENE, header.scene())
+                .putLong(SEED, header.seed())
+                .put(SAMPLER, Arrays.copyOf(samplerName, SAMPLER_NAME_LENGTH))
+                .putLong(FIRST_SAMPLE, header.firstSample())
+                .putInt(SAMPLES, header.samplesPerPixel())
+                .putInt(COMPLETE, 0);
+        return file;
+    }
+
+    /**
+     * Opens a finished shard for reading
+     *
+     * @param path the path of the file
+     */
+    public static ShardFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer prefix = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(prefix, 0);
+        byte[] magic = new byte[MAGIC.length];
+        prefix.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            channel.close();
+            throw new IOException(path + " is not a shard file");
+        }
+        if (prefix.getInt(COMPLETE) == 0) {
+            channel.close();
+            throw new IOException(path + " is not finished rendering");
+        }
+        return new ShardFile(channel, FileChannel.MapMode.READ_ONLY, prefix.getInt(WIDTH), prefix.getInt(HEIGHT));
+    }
+
+    /**
+     * @return what was rendered into the shard
+     */
+    public Header header() {
+        byte[] samplerName = new byte[SAMPLER_NAME_LENGTH];
+        header.get(SAMPLER, samplerName);
+        int length = 0;
+        while (length < samplerName.length && samplerName[length] != 0) length++;
+        return new Header(
+                header.getInt(WIDTH),
+                header.getInt(HEIGHT),
+                header.getInt(SCENE),
+                new String(samplerName, 0, length, StandardCharsets.US_ASCII),
+                header.getLong(SEED),
+                header.getLong(FIRST_SAMPLE),
+                header.getInt(SAMPLES)
+        );
+    }
+
+    /**
+     * @return the frame buffer of the shard
+     */
+    public FrameBuffer frame() {
+        return frame;
+    }
+
+    /**
+     * Flushes the frame buffer to disk and marks the shard as finished, so it can be merged
+     */
+    public void finish() {
+        frame.force();
+        header.putInt(COMPLETE, 1);
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,19 @@
+package com.raytracing.render;
+
+/**
+ * A rectangular region of the image covering pixels [x0, x1) x [y0, y1)
+ *
+ * @param index the position of this tile in scan order
+ * @param x0    the first column
+ * @param y0    the first row
+ * @param x1    one past the last column
+ * @param y1    one past the last row
+ */
+public record Tile(int index, int x0, int y0, int x1, int y1) {
+    /**
+     * @return the number of pixels in this tile
+     */
+    public int pixelCount() {
+        return (x1 - x0) * (y1 - y0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.raytracing.render;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Splits an image into tiles and renders them either on the calling thread or on a fork-join pool.
+ * Idle workers of the pool steal halves of the remaining tile ranges from busy ones.
+ */
+public class TileScheduler {
+    private final List<Tile> tiles;
+
+    /**
+     * Splits a width x height image into square tiles. Tiles on the right and top edges may be smaller.
+     *
+     * @param width    the width of the image
+     * @param height   the height of the image
+     * @param tileSize the side length of a tile
+     */
+    public TileScheduler(int width, int height, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tile size must be positive: " + tileSize);
+        }
+        tiles = new ArrayList<>();
+        for (int y0 = 0; y0 < height; y0 += tileSize) {
+            for (int x0 = 0; x0 < width; x0 += tileSize) {
+                int x1 = Math.min(x0 + tileSize, width);
+                int y1 = Math.min(y0 + tileSize, height);
+                tiles.add(new Tile(tiles.size(), x0, y0, x1, y1));
+            }
+        }
+    }
+
+    /**
+     * @return the tiles in scan order
+     */
+    public List<Tile> tiles() {
+        return tiles;
+    }
+
+    /**
+     * Renders every tile one after another on the calling thread
+     */
+    public void renderSequential(Consumer<Tile> task) {
+        for (var tile : tiles) {
+            task.accept(tile);
+        }
+    }
+
+    /**
+     * Renders every tile on the pool and waits until all of them are done
+     */
+    public void renderParallel(ForkJoinPool pool, Consumer<Tile> task) {
+        pool.invoke(new TileRange(task, 0, tiles.size()));
+    }
+
+    /**
+     * Renders every tile on the pool, or one after another on the calling thread without a pool
+     *
+     * @param pool the pool, may be null
+     */
+    public void render(ForkJoinPool pool, Consumer<Tile> task) {
+        if (pool == null) {
+            renderSequential(task);
+        } else {
+            renderParallel(pool, task);
+        }
+    }
+
+    /**
+     * A range of tiles that is split in halves until a single tile is left
+     */
+    private class TileRange extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        // a range of tiles is never serialized, only run
+        private final transient Consumer<Tile> task;
+        private final int start;
+        private final int end;
+
+        TileRange(Consumer<Tile> task, int start, int end) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                task.accept(tiles.get(start));
+            } else if (end - start > 1) {
+                int mid = (start + end) / 2;
+                invokeAll(new TileRange(task, start, mid), new TileRange(task, mid, end));
+            }
+        }
+    }
+}
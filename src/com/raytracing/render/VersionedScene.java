@@ -0,0 +1,74 @@
+package com.raytracing.render;
+
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * A scene that is edited while it is rendered.
+ * <p>
+ * Every version of the scene is an immutable value. An editor makes the next version from the latest one, sharing
+ * whatever it does not change, and stages it; the render traces the version it published last and only publishes
+ * the latest staged version between two passes, so every pass sees a single version and no thread waits for
+ * another. Versions that are staged and replaced before a pass boundary are never rendered.
+ *
+ * @param <T> the type of the versions, which must not change once they are staged
+ */
+public class VersionedScene<T> {
+    /**
+     * A version of the scene with its number, which counts the edits made before it
+     */
+    public record Version<T>(long number, T scene) {
+    }
+
+    // written by editors, read by the render
+    private volatile Version<T> staged;
+    // written and read by the render only
+    private Version<T> published;
+
+    /**
+     * Constructs a scene whose first version is published already
+     */
+    public VersionedScene(T initial) {
+        staged = new Version<>(0, Objects.requireNonNull(initial));
+        published = staged;
+    }
+
+    /**
+     * Makes the next version from the latest one and stages it. Edits from several threads are applied one after
+     * another.
+     *
+     * @param edit makes the next version from the latest one without changing it
+     * @return the staged version
+     */
+    public synchronized Version<T> edit(UnaryOperator<T> edit) {
+        Version<T> latest = staged;
+        T next = Objects.requireNonNull(edit.apply(latest.scene()));
+        if (next == latest.scene()) return latest;
+        staged = new Version<>(latest.number() + 1, next);
+        return staged;
+    }
+
+    /**
+     * Returns the latest staged version, which may not be published yet
+     */
+    public Version<T> latest() {
+        return staged;
+    }
+
+    /**
+     * Publishes the latest staged version, to be called by the render between passes
+     *
+     * @return the version to render next
+     */
+    public Version<T> publish() {
+        published = staged;
+        return published;
+    }
+
+    /**
+     * Returns the version the render traces
+     */
+    public Version<T> published() {
+        return published;
+    }
+}
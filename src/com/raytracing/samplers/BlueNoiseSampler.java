@@ -0,0 +1,126 @@
+package com.raytracing.samplers;
+
+import com.raytracing.base.SamplingContext;
+import com.raytracing.interfaces.Sampler;
+
+import java.util.SplittableRandom;
+
+/**
+ * Blue-noise dithered sampling (Georgiev and Fajardo, 2016). Every pixel uses the same scrambled Sobol points,
+ * shifted toroidally by a value read from a tiled blue-noise mask. Neighboring pixels get very different shifts, so
+ * what is left of the error looks like high-frequency noise that is much less visible than white noise.
+ *
+ * @param seed the seed of the scrambling and of the offsets into the mask
+ */
+public record BlueNoiseSampler(long seed) implements Sampler {
+    private static final int SIZE = 64;
+    private static final int MASK = SIZE - 1;
+
+    @Override
+    public double sample(int x, int y, long sampleIndex, int dimension) {
+        long dimensionHash = SamplingContext.hash(seed, dimension);
+        int offsetX = (int) dimensionHash & MASK;
+        int offsetY = (int) (dimensionHash >>> 32) & MASK;
+        double shift = (Mask.RANKS[((y + offsetY) & MASK) * SIZE + ((x + offsetX) & MASK)] + 0.5) / (SIZE * SIZE);
+
+        int pairSeed = (int) SamplingContext.hash(seed, dimension >>> 1);
+        double value = Sobol.toUnit(Sobol.sample((int) sampleIndex, dimension & 1, pairSeed)) + shift;
+        return value >= 1.0 ? value - 1.0 : value;
+    }
+
+    /**
+     * The blue-noise mask, built on first use with the void-and-cluster method (Ulichney, 1993)
+     */
+    private static final class Mask {
+        private static final double SIGMA = 1.5;
+        private static final int[] RANKS = generate(42);
+
+        /**
+         * @return the rank of every pixel of the mask, a permutation of 0 until SIZE * SIZE
+         */
+        private static int[] generate(long seed) {
+            int n = SIZE * SIZE;
+            double[] kernel = new double[n];
+            for (int dy = 0; dy < SIZE; dy++) {
+                for (int dx = 0; dx < SIZE; dx++) {
+                    int wx = Math.min(dx, SIZE - dx);
+                    int wy = Math.min(dy, SIZE - dy);
+                    kernel[dy * SIZE + dx] = Math.exp(-(wx * wx + wy * wy) / (2 * SIGMA * SIGMA));
+                }
+            }
+
+            // a random initial pattern of about a tenth of the pixels
+            boolean[] pattern = new boolean[n];
+            double[] energy = new double[n];
+            SplittableRandom rng = new SplittableRandom(seed);
+            int ones = 0;
+            while (ones < n / 10) {
+                int i = rng.nextInt(n);
+                if (!pattern[i]) {
+                    toggle(pattern, energy, kernel, i);
+                    ones++;
+                }
+            }
+
+            // move the tightest clusters into the largest voids until the pattern stops changing
+            while (true) {
+                int cluster = extreme(pattern, energy, true);
+                toggle(pattern, energy, kernel, cluster);
+                int largestVoid = extreme(pattern, energy, false);
+                toggle(pattern, energy, kernel, largestVoid);
+                if (largestVoid == cluster) break;
+            }
+
+            int[] ranks = new int[n];
+            boolean[] prototype = pattern.clone();
+            double[] prototypeEnergy = energy.clone();
+
+            // rank the initial points by removing the tightest cluster first
+            for (int rank = ones - 1; rank >= 0; rank--) {
+                int cluster = extreme(pattern, energy, true);
+                toggle(pattern, energy, kernel, cluster);
+                ranks[cluster] = rank;
+            }
+
+            // rank the remaining pixels by filling the largest void first
+            pattern = prototype;
+            energy = prototypeEnergy;
+            for (int rank = ones; rank < n; rank++) {
+                int largestVoid = extreme(pattern, energy, false);
+                toggle(pattern, energy, kernel, largestVoid);
+                ranks[largestVoid] = rank;
+            }
+            return ranks;
+        }
+
+        /**
+         * @return the set pixel with the highest energy if {@code ones}, else the unset pixel with the lowest energy
+         */
+        private static int extreme(boolean[] pattern, double[] energy, boolean ones) {
+            int best = -1;
+            for (int i = 0; i < pattern.length; i++) {
+                if (pattern[i] != ones) continue;
+                if (best < 0 || (ones ? energy[i] > energy[best] : energy[i] < energy[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Flips a pixel and updates the energy of every pixel with the toroidal gaussian kernel
+         */
+        private static void toggle(boolean[] pattern, double[] energy, double[] kernel, int index) {
+            pattern[index] = !pattern[index];
+            double sign = pattern[index] ? 1.0 : -1.0;
+            int px = index % SIZE;
+            int py = index / SIZE;
+            for (int y = 0; y < SIZE; y++) {
+                int row = ((y - py) & MASK) * SIZE;
+                for (int x = 0; x < SIZE; x++) {
+                    energy[y * SIZE + x] += sign * kernel[row + ((x - px) & MASK)];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.raytracing.samplers;
+
+import com.raytracing.base.SamplingContext;
+import com.raytracing.interfaces.Sampler;
+
+import java.util.SplittableRandom;
+
+/**
+ * The Halton sequence with a random permutation of the digits of every dimension and a random toroidal shift per
+ * pixel. Dimension d uses the d-th prime as its base. Dimensions beyond the table of primes fall back to
+ * independent random numbers.
+ */
+public class HaltonSampler implements Sampler {
+    private static final int MAX_DIMENSIONS = 128;
+
+    private final long seed;
+    private final int[] bases;
+    private final int[][] digitPermutations;
+
+    /**
+     * Constructs a Halton sampler with digit permutations drawn from the seed
+     */
+    public HaltonSampler(long seed) {
+        this.seed = seed;
+        bases = firstPrimes(MAX_DIMENSIONS);
+        digitPermutations = new int[MAX_DIMENSIONS][];
+
+        SplittableRandom rng = new SplittableRandom(seed);
+        for (int d = 0; d < MAX_DIMENSIONS; d++) {
+            int[] permutation = new int[bases[d]];
+            for (int i = 0; i < permutation.length; i++) permutation[i] = i;
+            // keep 0 in place so that an index of 0 still maps to 0 before the shift
+            for (int i = permutation.length - 1; i > 1; i--) {
+                int target = 1 + rng.nextInt(i);
+                int tmp = permutation[i];
+                permutation[i] = permutation[target];
+                permutation[target] = tmp;
+            }
+            digitPermutations[d] = permutation;
+        }
+    }
+
+    @Override
+    public double sample(int x, int y, long sampleIndex, int dimension) {
+        long pixelSeed = SamplingContext.hash(SamplingContext.hash(seed, x), y);
+        if (dimension >= MAX_DIMENSIONS) {
+            return (SamplingContext.hash(SamplingContext.hash(pixelSeed, sampleIndex), dimension) >>> 11) * 0x1.0p-53;
+        }
+
+        double shift = (SamplingContext.hash(pixelSeed, dimension) >>> 11) * 0x1.0p-53;
+        double value = scrambledRadicalInverse(sampleIndex, bases[dimension], digitPermutations[dimension]) + shift;
+        return value >= 1.0 ? value - 1.0 : value;
+    }
+
+    /**
+     * Mirrors the digits of the index in the given base about the radix point, permuting every digit
+     */
+    private static double scrambledRadicalInverse(long index, int base, int[] permutation) {
+        double inverseBase = 1.0 / base;
+        double factor = inverseBase;
+        double result = 0.0;
+        while (index > 0) {
+            int digit = (int) (index % base);
+            result += permutation[digit] * factor;
+            factor *= inverseBase;
+            index /= base;
+        }
+        return Math.min(result, 1.0 - 0x1.0p-53);
+    }
+
+    private static int[] firstPrimes(int count) {
+        int[] primes = new int[count];
+        int found = 0;
+        for (int n = 2; found < count; n++) {
+            boolean isPrime = true;
+            for (int i = 0; i < found && primes[i] * primes[i] <= n; i++) {
+                if (n % primes[i] == 0) {
+                    isPrime = false;
+                    break;
+                }
+            }
+            if (isPrime) primes[found++] = n;
+        }
+        return primes;
+    }
+}
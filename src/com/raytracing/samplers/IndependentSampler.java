@@ -0,0 +1,18 @@
+package com.raytracing.samplers;
+
+import com.raytracing.base.SamplingContext;
+import com.raytracing.interfaces.Sampler;
+
+/**
+ * Uniform random numbers without any stratification, every dimension is a hash of (seed, pixel, sample, dimension)
+ *
+ * @param seed the seed
+ */
+public record IndependentSampler(long seed) implements Sampler {
+    @Override
+    public double sample(int x, int y, long sampleIndex, int dimension) {
+        long h = SamplingContext.hash(SamplingContext.hash(seed, x), y);
+        h = SamplingContext.hash(SamplingContext.hash(h, sampleIndex), dimension);
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
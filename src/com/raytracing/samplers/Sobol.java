@@ -0,0 +1,73 @@
+package com.raytracing.samplers;
+
+/**
+ * The first two dimensions of the Sobol sequence with hash-based Owen scrambling
+ * (Burley, "Practical Hash-based Owen Scrambling", 2020).
+ * Higher dimensions are padded from independently scrambled copies of these two.
+ */
+final class Sobol {
+    private static final int[] DIRECTIONS = new int[32];
+
+    static {
+        // generator matrix of the second Sobol dimension, the first one is the identity (van der Corput)
+        DIRECTIONS[0] = 0x80000000;
+        for (int i = 1; i < 32; i++) {
+            DIRECTIONS[i] = DIRECTIONS[i - 1] ^ (DIRECTIONS[i - 1] >>> 1);
+        }
+    }
+
+    private Sobol() {
+    }
+
+    /**
+     * Returns a scrambled 2D Sobol point as a fixed-point fraction.
+     * The index is shuffled first, so differently seeded copies are not correlated with each other.
+     *
+     * @param index the index of the point
+     * @param axis  0 or 1
+     * @param seed  the seed of the scrambling
+     * @return the coordinate, a fraction of 2^32
+     */
+    static int sample(int index, int axis, int seed) {
+        int shuffled = nestedUniformScramble(index, seed);
+        int value = axis == 0 ? Integer.reverse(shuffled) : sobol1(shuffled);
+        return nestedUniformScramble(value, hashCombine(seed, axis));
+    }
+
+    /**
+     * @return the fraction as a double in [0, 1)
+     */
+    static double toUnit(int fraction) {
+        return (fraction & 0xFFFFFFFFL) * 0x1.0p-32;
+    }
+
+    private static int sobol1(int index) {
+        int result = 0;
+        for (int bit = 0; index != 0; bit++, index >>>= 1) {
+            if ((index & 1) != 0) {
+                result ^= DIRECTIONS[bit];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Owen scrambling of the bits of a fraction
+     */
+    private static int nestedUniformScramble(int x, int seed) {
+        return Integer.reverse(laineKarrasPermutation(Integer.reverse(x), seed));
+    }
+
+    private static int laineKarrasPermutation(int x, int seed) {
+        x += seed;
+        x ^= x * 0x6c50b47c;
+        x ^= x * 0xb82f1e52;
+        x ^= x * 0xc7afe638;
+        x ^= x * 0x8d22f6e6;
+        return x;
+    }
+
+    private static int hashCombine(int seed, int value) {
+        return seed ^ (value + 0x9e3779b9 + (seed << 6) + (seed >>> 2));
+    }
+}
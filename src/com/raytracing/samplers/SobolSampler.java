@@ -0,0 +1,20 @@
+package com.raytracing.samplers;
+
+import com.raytracing.base.SamplingContext;
+import com.raytracing.interfaces.Sampler;
+
+/**
+ * Owen-scrambled Sobol points. Every pair of dimensions is a 2D Sobol point set that is scrambled and shuffled
+ * independently per pixel and per pair, so any number of dimensions can be drawn.
+ * The first 2^k samples of a pixel are well stratified in every pair for any k.
+ *
+ * @param seed the seed of the scrambling
+ */
+public record SobolSampler(long seed) implements Sampler {
+    @Override
+    public double sample(int x, int y, long sampleIndex, int dimension) {
+        long pixelSeed = SamplingContext.hash(SamplingContext.hash(seed, x), y);
+        int pairSeed = (int) SamplingContext.hash(pixelSeed, dimension >>> 1);
+        return Sobol.toUnit(Sobol.sample((int) sampleIndex, dimension & 1, pairSeed));
+    }
+}
@@ -1,5 +1,6 @@
 package com.raytracing.scene;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 
 /**
@@ -44,21 +45,44 @@ public class Camera {
      *
      * @param u the scale of the horizontal axis
      * @param v the scale of the vertical axis
+     * @param context the source of random numbers
      * @return the ray that shoots to (u, v)
      */
-    public Ray getRay(double u, double v) {
-        Vector3d offset = horizontal.normalized().scale(2.0 * Math.random() - 1.0)
-                .add(vertical.normalized().scale(2.0 * Math.random() - 1.0));
-        while (offset.length() > 1.0) {
-            offset = horizontal.normalized().scale(2.0 * Math.random() - 1.0)
-                    .add(vertical.normalized().scale(2.0 * Math.random() - 1.0));
-        }
-        offset = offset.scale(lensRadius);
+    public Ray getRay(double u, double v, SamplingContext context) {
+        Vector3d lens = concentricDisk(context.next2D());
+        Vector3d offset = horizontal.normalized().scale(lens.x())
+                .add(vertical.normalized().scale(lens.y()))
+                .scale(lensRadius);
         Vector3d point = bottomLeft.add(horizontal.scale(u)).add(vertical.scale(v));
         Vector3d rayOrigin = origin.add(offset);
         Vector3d rayDirection = point.subtract(rayOrigin);
-        double rayTime = Math.random();
+        double rayTime = context.next1D();
 
         return new Ray(rayOrigin, rayDirection, rayTime);
     }
+
+    /**
+     * Maps a point of the unit square to the unit disk (Shirley and Chiu, 1997).
+     * Unlike rejection sampling, it takes exactly one 2D sample and keeps its stratification.
+     *
+     * @param sample a point in the unit square as the first components of a vector
+     * @return a point in the unit disk as the first components of a vector
+     */
+    private static Vector3d concentricDisk(Vector3d sample) {
+        double a = 2.0 * sample.x() - 1.0;
+        double b = 2.0 * sample.y() - 1.0;
+        if (a == 0 && b == 0) {
+            return Vector3d.ZERO;
+        }
+
+        double r, theta;
+        if (Math.abs(a) > Math.abs(b)) {
+            r = a;
+            theta = Math.PI / 4 * (b / a);
+        } else {
+            r = b;
+            theta = Math.PI / 2 - Math.PI / 4 * (a / b);
+        }
+        return new Vector3d(r * Math.cos(theta), r * Math.sin(theta), 0.0);
+    }
 }
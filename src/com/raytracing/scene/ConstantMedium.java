@@ -3,6 +3,7 @@ package com.raytracing.scene;
 import com.raytracing.base.AABB;
 import com.raytracing.base.Interval;
 import com.raytracing.base.PixelColor;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Texture;
@@ -41,7 +42,13 @@ public record ConstantMedium(Hittable boundary, double density, Isotropic phaseF
 
         double rayLength = ray.direction().length();
         double distanceInside = (tLeave - tEnter) * rayLength;
-        double hitDistance = -Math.log(Math.random()) / density;
+        // hit testing has no sampling context, so the free path is drawn from a hash of the ray instead
+        double random = SamplingContext.hashToUnit(
+                ray.origin().x(), ray.origin().y(), ray.origin().z(),
+                ray.direction().x(), ray.direction().y(), ray.direction().z(),
+                ray.time()
+        );
+        double hitDistance = -Math.log(1.0 - random) / density;
         if (hitDistance > distanceInside) return null;
 
         double t = tEnter + hitDistance / rayLength;
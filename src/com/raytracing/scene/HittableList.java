@@ -1,5 +1,6 @@
 package com.raytracing.scene;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.base.AABB;
@@ -7,15 +8,12 @@ import com.raytracing.base.AABB;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Represents a list of {@code Hittable} that itself can be hit as any of {@code Hittable} in the list.
  */
 public class HittableList implements Hittable, Iterable<Hittable> {
 
-    private static final Random rng = new Random(42);
-
     private final List<Hittable> list;
     private AABB boundingBox;
 
@@ -101,11 +99,13 @@ public class HittableList implements Hittable, Iterable<Hittable> {
 
     /**
      * @param origin the origin of generating a sample ray
+     * @param context the source of random numbers
      * @return a random direction from the origin by randomly choose an object in list to generate a sample ray
      */
     @Override
-    public Vector3d random(Vector3d origin) {
-        return list.get(rng.nextInt(0, list.size())).random(origin);
+    public Vector3d random(Vector3d origin, SamplingContext context) {
+        int index = (int) (context.next1D() * list.size());
+        return list.get(Math.min(index, list.size() - 1)).random(origin, context);
     }
 
     /**
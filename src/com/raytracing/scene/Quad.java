@@ -1,19 +1,16 @@
 package com.raytracing.scene;
 
 import com.raytracing.base.Interval;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Material;
 import com.raytracing.base.AABB;
 
-import java.util.Random;
-
 /**
  * Parallelogram primitive
  */
 public record Quad(Vector3d Q, Vector3d u, Vector3d v, Vector3d w, Material material, AABB boundingBox, Vector3d normal, double D, double area) implements Hittable {
-    private static final Random rng = new Random(42);
-
     /**
      * Constructs a parallelogram with an Q, two sides vector, and material
      */
@@ -52,11 +49,13 @@ public record Quad(Vector3d Q, Vector3d u, Vector3d v, Vector3d w, Material mate
 
     /**
      * @param origin the origin of light (from this quad)
+     * @param context the source of random numbers
      * @return a random direction from the origin pointing to this quad
      */
     @Override
-    public Vector3d random(Vector3d origin) {
-        var p = Q.add(u.scale(rng.nextDouble())).add(v.scale(rng.nextDouble()));
+    public Vector3d random(Vector3d origin, SamplingContext context) {
+        var r = context.next2D();
+        var p = Q.add(u.scale(r.x())).add(v.scale(r.y()));
         return p.subtract(origin);
     }
 
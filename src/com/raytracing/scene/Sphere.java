@@ -1,17 +1,14 @@
 package com.raytracing.scene;
 
 import com.raytracing.base.ONB;
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 import com.raytracing.interfaces.Hittable;
 import com.raytracing.interfaces.Material;
 import com.raytracing.base.AABB;
 
-import java.util.Random;
-
 public record Sphere(Vector3d center, double radius, Material material, boolean isMoving, Vector3d velocity, AABB boundingBox) implements Hittable {
 
-    private static final Random rng = new Random(42);
-
     /**
      * Construct a sphere with the given center, radius, and material that's not moving
      * @param center the center
@@ -135,25 +132,28 @@ public record Sphere(Vector3d center, double radius, Material material, boolean
 
     /**
      * @param origin the origin of ray shooting to this sphere
+     * @param context the source of random numbers
      * @return a random direction shooting to this sphere
      */
     @Override
-    public Vector3d random(Vector3d origin) {
+    public Vector3d random(Vector3d origin, SamplingContext context) {
         var distanceVec = center.subtract(origin);
         var distanceSquared = distanceVec.lengthSquared();
         var uvw = new ONB(distanceVec);
-        return uvw.transform(randomToSphere(radius, distanceSquared));
+        return uvw.transform(randomToSphere(radius, distanceSquared, context));
     }
 
     /**
      * Generate a random direction shoot to a sphere assuming the axis is z-direction
      * @param radius the radius of sphere
      * @param distanceSquared the ray origin to sphere origin distance squared
+     * @param context the source of random numbers
      * @return a random direction
      */
-    private static Vector3d randomToSphere(double radius, double distanceSquared) {
-        double r1 = rng.nextDouble();
-        double r2 = rng.nextDouble();
+    private static Vector3d randomToSphere(double radius, double distanceSquared, SamplingContext context) {
+        Vector3d r = context.next2D();
+        double r1 = r.x();
+        double r2 = r.y();
         double cosThetaMax = Math.sqrt(1 - radius * radius / distanceSquared);
 
         double z = 1 + r2 * (cosThetaMax - 1);
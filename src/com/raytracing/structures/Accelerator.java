@@ -0,0 +1,23 @@
+package com.raytracing.structures;
+
+import com.raytracing.interfaces.Hittable;
+
+/**
+ * A structure that speeds up finding the closest object a ray hits. {@link Accelerators} builds them by name.
+ */
+public interface Accelerator extends Hittable {
+    /**
+     * Returns the expected cost of a ray through the structure in units of one intersection test, by the surface
+     * area heuristic, as {@link BVHBuilder#cost} does for trees
+     *
+     * @param traversalCost the cost of a step of the structure relative to the cost of one intersection test
+     */
+    double cost(double traversalCost);
+
+    /**
+     * Returns the bytes taken by the structure, not counting the objects
+     *
+     * @return the bytes, or -1 if the nodes are objects of their own, whose size is up to the JVM
+     */
+    long footprint();
+}
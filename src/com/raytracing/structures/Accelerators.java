@@ -0,0 +1,247 @@
+package com.raytracing.structures;
+
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The accelerators a scene can put its objects under, each built by a factory registered under its name, and the
+ * choice among them
+ */
+public final class Accelerators {
+    /**
+     * A bounding volume hierarchy, built by the surface area heuristic and collapsed into a 4-wide BVH, see
+     * {@link BVHBuilder} and {@link WideBVH}
+     */
+    public static final String BVH = "BVH";
+    /**
+     * A grid of equal cells, with grids of their own in crowded cells, see {@link Grid}
+     */
+    public static final String GRID = "grid";
+    /**
+     * A kd-tree split by the surface area heuristic, see {@link KdTree}
+     */
+    public static final String KD_TREE = "kd-tree";
+
+    /**
+     * Builds an accelerator over objects. The list itself is not changed.
+     */
+    @FunctionalInterface
+    public interface Factory {
+        Accelerator build(HittableList objects);
+    }
+
+    // by their names in lower case, in the order they were registered
+    private static final Map<String, Factory> FACTORIES = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    static {
+        register(BVH, objects -> BVHLayout.WIDE.compile(BVHMode.SAH.build(objects)));
+        register(GRID, objects -> new Grid(objects.objects()));
+        register(KD_TREE, objects -> new KdTree(objects.objects()));
+    }
+
+    private Accelerators() {
+    }
+
+    // fewer objects are found fast enough by any structure, and a BVH has the least to set up
+    static final int MIN_OBJECTS = 256;
+    // where more cells than this are empty, the objects gather in a few places that the boxes of a BVH wrap
+    static final double MAX_EMPTY_CELLS = 0.6;
+    // boxes whose diagonals vary more than this relative to their mean are too different for one size of cells
+    static final double MAX_SIZE_VARIATION = 2.5;
+    // boxes that overlap more others than this are tested again in every cell they share with them; balls that
+    // overlap 400 others each still trace faster in a grid
+    static final double MAX_OVERLAP = 1000;
+
+    /**
+     * What the choice of an accelerator looks at, measured on a grid of about one cell per object
+     *
+     * @param objects       the number of objects
+     * @param sizeVariation the standard deviation of the diagonals of the boxes of the objects relative to their
+     *                      mean
+     * @param overlap       the mean number of other objects whose boxes overlap the box of an object
+     * @param emptyCells    the share of cells no object overlaps, about a third for objects spread evenly and
+     *                      more where they cluster
+     */
+    public record Statistics(int objects, double sizeVariation, double overlap, double emptyCells) {
+        // the overlap is measured for this many objects spread over the list
+        private static final int OVERLAP_SAMPLES = 1024;
+
+        /**
+         * Measures the objects
+         */
+        public static Statistics of(List<Hittable> objects) {
+            int n = objects.size();
+            if (n == 0) return new Statistics(0, 0, 0, 0);
+            double[] boxes = Grid.boxes(objects);
+            double[] bounds = Grid.union(boxes);
+
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int i = 0; i < n; i++) {
+                double dx = boxes[6 * i + 3] - boxes[6 * i];
+                double dy = boxes[6 * i + 4] - boxes[6 * i + 1];
+                double dz = boxes[6 * i + 5] - boxes[6 * i + 2];
+                double diagonal = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                sum += diagonal;
+                sumOfSquares += diagonal * diagonal;
+            }
+            double mean = sum / n;
+            double deviation = Math.sqrt(Math.max(0, sumOfSquares / n - mean * mean));
+
+            // list the objects of every cell, as a grid does
+            int[] resolution = new int[3];
+            Grid.resolution(bounds, n, 1, resolution);
+            double[] scale = new double[3];
+            for (int axis = 0; axis < 3; axis++) {
+                scale[axis] = resolution[axis] / (bounds[axis + 3] - bounds[axis]);
+            }
+            int cells = resolution[0] * resolution[1] * resolution[2];
+            int[] starts = new int[cells + 1];
+            int[] ranges = new int[6 * n];
+            for (int i = 0; i < n; i++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    ranges[6 * i + axis] = cellIndex(boxes[6 * i + axis], bounds[axis], scale[axis],
+                            resolution[axis]);
+                    ranges[6 * i + axis + 3] = cellIndex(boxes[6 * i + axis + 3], bounds[axis], scale[axis],
+                            resolution[axis]);
+                }
+                forEachCell(ranges, i, resolution, cell -> starts[cell + 1]++);
+            }
+            int empty = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                if (starts[cell + 1] == 0) empty++;
+                starts[cell + 1] += starts[cell];
+            }
+            int[] listed = new int[starts[cells]];
+            int[] next = Arrays.copyOf(starts, cells);
+            for (int i = 0; i < n; i++) {
+                int object = i;
+                forEachCell(ranges, i, resolution, cell -> listed[next[cell]++] = object);
+            }
+
+            // count the other boxes that overlap a box among those in its cells, each once
+            int[] seenBy = new int[n];
+            Arrays.fill(seenBy, -1);
+            long overlaps = 0;
+            int sampled = 0;
+            for (int i = 0; i < n; i += Math.max(1, n / OVERLAP_SAMPLES)) {
+                sampled++;
+                int object = i;
+                long[] found = new long[1];
+                forEachCell(ranges, i, resolution, cell -> {
+                    for (int k = starts[cell]; k < starts[cell + 1]; k++) {
+                        int other = listed[k];
+                        if (other == object || seenBy[other] == object) continue;
+                        seenBy[other] = object;
+                        if (overlap(boxes, object, other)) found[0]++;
+                    }
+                });
+                overlaps += found[0];
+            }
+            return new Statistics(n, mean > 0 ? deviation / mean : 0, (double) overlaps / sampled,
+                    (double) empty / cells);
+        }
+
+        private static int cellIndex(double position, double min, double scale, int resolution) {
+            // a flat box has one layer of cells, and an infinite scale makes a NaN, which lands in it too
+            int index = (int) Math.floor((position - min) * scale);
+            return Math.max(0, Math.min(resolution - 1, index));
+        }
+
+        private static void forEachCell(int[] ranges, int object, int[] resolution, IntConsumer action) {
+            int r = 6 * object;
+            for (int z = ranges[r + 2]; z <= ranges[r + 5]; z++) {
+                for (int y = ranges[r + 1]; y <= ranges[r + 4]; y++) {
+                    for (int x = ranges[r]; x <= ranges[r + 3]; x++) {
+                        action.accept((z * resolution[1] + y) * resolution[0] + x);
+                    }
+                }
+            }
+        }
+
+        private static boolean overlap(double[] boxes, int a, int b) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (boxes[6 * a + axis] > boxes[6 * b + axis + 3] || boxes[6 * b + axis] > boxes[6 * a + axis + 3]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The name of an accelerator for some objects with the reason it suits them
+     */
+    public record Choice(String accelerator, Statistics statistics, String reason) {
+        @Override
+        public String toString() {
+            return accelerator + " because " + reason;
+        }
+    }
+
+    /**
+     * Registers a factory under a name, replacing any factory of the same name. Names are not case-sensitive.
+     */
+    public static void register(String name, Factory factory) {
+        FACTORIES.put(name.toLowerCase(), factory);
+    }
+
+    /**
+     * Returns the factory registered under a name
+     *
+     * @throws IllegalArgumentException if no factory has the name
+     */
+    public static Factory factory(String name) {
+        Factory factory = FACTORIES.get(name.toLowerCase());
+        if (factory == null) {
+            throw new IllegalArgumentException("unknown accelerator: " + name + ", known are " + names());
+        }
+        return factory;
+    }
+
+    /**
+     * Returns the names of the registered factories in lower case
+     */
+    public static List<String> names() {
+        synchronized (FACTORIES) {
+            return List.copyOf(FACTORIES.keySet());
+        }
+    }
+
+    /**
+     * Chooses an accelerator for the objects: a grid for many objects spread over their box, and a BVH for few
+     * objects, objects that gather in a few places, objects of very different sizes or objects that overlap a lot.
+     * A kd-tree is never chosen, since it was never faster than both of the others for the scenes here, and
+     * neither is any accelerator registered besides these, which is only built when asked for by name.
+     */
+    public static Choice choose(List<Hittable> objects) {
+        var statistics = Statistics.of(objects);
+        if (statistics.objects() < MIN_OBJECTS) {
+            return new Choice(BVH, statistics, String.format("%d objects are too few for a grid to pay off",
+                    statistics.objects()));
+        }
+        if (statistics.emptyCells() > MAX_EMPTY_CELLS) {
+            return new Choice(BVH, statistics, String.format("the objects gather in a few places, leaving %.0f%% "
+                    + "of the cells of a grid empty", 100 * statistics.emptyCells()));
+        }
+        if (statistics.sizeVariation() > MAX_SIZE_VARIATION) {
+            return new Choice(BVH, statistics, String.format("the sizes of the objects vary by %.1f times their "
+                    + "mean, more than one size of cells can suit", statistics.sizeVariation()));
+        }
+        if (statistics.overlap() > MAX_OVERLAP) {
+            return new Choice(BVH, statistics, String.format("a box overlaps %.0f others, which a grid would test "
+                    + "in every cell they share", statistics.overlap()));
+        }
+        return new Choice(GRID, statistics, String.format("%d objects are spread out, leaving %.0f%% of the cells "
+                        + "empty, their sizes vary by %.2f of their mean and they overlap %.1f others each",
+                statistics.objects(), 100 * statistics.emptyCells(), statistics.sizeVariation(),
+                statistics.overlap()));
+    }
+}
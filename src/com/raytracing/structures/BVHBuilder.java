@@ -0,0 +1,423 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a bounding volume hierarchy with the surface area heuristic (SAH).
+ * <p>
+ * The probability that a ray through a node also passes through a child is about the ratio of their surface areas,
+ * so the expected cost of a split is {@code traversalCost + (area(L) * count(L) + area(R) * count(R)) / area}
+ * in units of one intersection test. Instead of trying every possible split, the centroids of the objects are
+ * sorted into a fixed number of bins along each axis and only the planes between bins are tried, which makes
+ * every level linear in the number of objects. A node becomes a leaf when no split is cheaper than testing all of
+ * its objects, as long as it holds at most the maximum leaf size.
+ * <p>
+ * Subtrees of many objects are built in parallel in the fork-join pool of the calling thread, or the common pool.
+ * Every split depends only on the objects, so the tree is the same no matter how many threads build it.
+ */
+public class BVHBuilder {
+    public static final int DEFAULT_BINS = 16;
+    public static final int DEFAULT_MAX_LEAF_SIZE = 4;
+    public static final double DEFAULT_TRAVERSAL_COST = 0.125;
+    // smaller subtrees are not worth a task
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    private final int bins;
+    private final int maxLeafSize;
+    private final double traversalCost;
+
+    private List<Hittable> objects;
+    private ObjectBounds bounds;
+
+    /**
+     * Constructs a builder with 16 bins, at most 4 objects per leaf and a traversal step an eighth as expensive as
+     * one intersection test
+     */
+    public BVHBuilder() {
+        this(DEFAULT_BINS, DEFAULT_MAX_LEAF_SIZE, DEFAULT_TRAVERSAL_COST);
+    }
+
+    /**
+     * @param bins          the number of bins per axis
+     * @param maxLeafSize   the maximum number of objects in a leaf
+     * @param traversalCost the cost of visiting a node relative to the cost of one intersection test
+     */
+    public BVHBuilder(int bins, int maxLeafSize, double traversalCost) {
+        if (bins < 2 || maxLeafSize < 1 || traversalCost < 0) {
+            throw new IllegalArgumentException("need at least 2 bins, 1 object per leaf and a non-negative cost");
+        }
+        this.bins = bins;
+        this.maxLeafSize = maxLeafSize;
+        this.traversalCost = traversalCost;
+    }
+
+    /**
+     * Builds a BVH over the objects of the list. The list itself is not changed.
+     *
+     * @return the root, which is a single object or a list of objects if there are few enough for one leaf
+     */
+    public Hittable build(HittableList list) {
+        return build(list.objects());
+    }
+
+    /**
+     * Builds a BVH over the objects. The list itself is not changed.
+     *
+     * @return the root, which is a single object or a list of objects if there are few enough for one leaf
+     */
+    public synchronized Hittable build(List<Hittable> objects) {
+        if (objects.isEmpty()) {
+            throw new IllegalArgumentException("cannot build a BVH without objects");
+        }
+        this.objects = objects;
+        bounds = new ObjectBounds(objects, false);
+        try {
+            return build(0, objects.size());
+        } finally {
+            this.objects = null;
+            bounds = null;
+        }
+    }
+
+    private Hittable build(int start, int end) {
+        int count = end - start;
+        if (count == 1) {
+            return objects.get(bounds.order[start]);
+        }
+
+        double[] box = bounds.bounds(start, end);
+        Split split = bounds.split(start, end, box, new Bins(bins, 1), traversalCost, false);
+        if (count <= maxLeafSize && !(split.cost() < count)) {
+            return leaf(start, end);
+        }
+        int mid = bounds.partition(start, end, split);
+
+        Hittable left;
+        Hittable right;
+        if (count >= PARALLEL_THRESHOLD) {
+            var leftTask = ForkJoinTask.adapt(() -> build(start, mid)).fork();
+            right = build(mid, end);
+            left = leftTask.join();
+        } else {
+            left = build(start, mid);
+            right = build(mid, end);
+        }
+        var nodeBounds = new AABB(new Interval(box[0], box[3]), new Interval(box[1], box[4]),
+                new Interval(box[2], box[5]));
+        return new BVHNode(left, right, nodeBounds);
+    }
+
+    private Hittable leaf(int start, int end) {
+        var leaf = new HittableList();
+        for (int i = start; i < end; i++) {
+            leaf.add(objects.get(bounds.order[i]));
+        }
+        return leaf;
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree in units of one intersection test, by the same model
+     * the builder minimizes. Lower is better; it allows comparing trees built in different ways.
+     */
+    public static double cost(Hittable root) {
+        return cost(root, DEFAULT_TRAVERSAL_COST);
+    }
+
+    /**
+     * Returns the expected cost of a ray through an accelerator, the objects of a leaf or a single object
+     */
+    static double cost(Hittable node, double traversalCost) {
+        if (node instanceof Accelerator accelerator) {
+            return accelerator.cost(traversalCost);
+        } else if (node instanceof HittableList list) {
+            double cost = 0;
+            for (var object : list) {
+                cost += cost(object, traversalCost);
+            }
+            return cost;
+        }
+        return 1.0;
+    }
+
+    static double surfaceArea(double[] bounds, int offset) {
+        double dx = bounds[offset + 3] - bounds[offset];
+        double dy = bounds[offset + 4] - bounds[offset + 1];
+        double dz = bounds[offset + 5] - bounds[offset + 2];
+        if (!(dx >= 0 && dy >= 0 && dz >= 0)) return 0;
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    static double[] emptyBounds() {
+        double[] bounds = new double[6];
+        resetBounds(bounds, 0);
+        return bounds;
+    }
+
+    static void resetBounds(double[] bounds, int offset) {
+        Arrays.fill(bounds, offset, offset + 3, Double.POSITIVE_INFINITY);
+        Arrays.fill(bounds, offset + 3, offset + 6, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Grows the six bounds at the start of the array to include the six bounds of the other array at the offset
+     */
+    static void grow(double[] bounds, double[] other, int offset) {
+        grow(bounds, 0, other, offset);
+    }
+
+    static void grow(double[] bounds, int at, double[] other, int offset) {
+        for (int k = 0; k < 3; k++) {
+            bounds[at + k] = Math.min(bounds[at + k], other[offset + k]);
+            bounds[at + k + 3] = Math.max(bounds[at + k + 3], other[offset + k + 3]);
+        }
+    }
+
+    /**
+     * The bounds and centroids of a list of objects, three values per object, and the order the objects are
+     * partitioned into ranges by splits
+     */
+    static final class ObjectBounds {
+        final double[] lower;
+        final double[] upper;
+        final double[] centroids;
+        final int[] order;
+
+        /**
+         * @param parallel whether to read the boxes of the objects in parallel
+         */
+        ObjectBounds(List<Hittable> objects, boolean parallel) {
+            int n = objects.size();
+            lower = new double[3 * n];
+            upper = new double[3 * n];
+            centroids = new double[3 * n];
+            order = new int[n];
+            var indices = IntStream.range(0, n);
+            (parallel ? indices.parallel() : indices).forEach(i -> {
+                AABB box = objects.get(i).boundingBox();
+                for (int axis = 0; axis < 3; axis++) {
+                    Interval interval = box.axisInterval(axis);
+                    lower[3 * i + axis] = interval.min();
+                    upper[3 * i + axis] = interval.max();
+                    centroids[3 * i + axis] = 0.5 * (interval.min() + interval.max());
+                }
+                order[i] = i;
+            });
+        }
+
+        /**
+         * Returns the bounds of the objects of a range
+         */
+        double[] bounds(int start, int end) {
+            double[] box = emptyBounds();
+            for (int i = start; i < end; i++) {
+                include(box, 0, lower, upper, order[i]);
+            }
+            return box;
+        }
+
+        /**
+         * Grows six bounds to include three lower and three upper values of an object
+         */
+        private static void include(double[] box, int offset, double[] lower, double[] upper, int object) {
+            for (int axis = 0; axis < 3; axis++) {
+                box[offset + axis] = Math.min(box[offset + axis], lower[3 * object + axis]);
+                box[offset + axis + 3] = Math.max(box[offset + axis + 3], upper[3 * object + axis]);
+            }
+        }
+
+        /**
+         * Finds the cheapest of the planes between bins of the centroids of a range along each axis
+         *
+         * @param box         the bounds of the range
+         * @param longestOnly whether to bin along the longest axis of the centroids only
+         */
+        Split split(int start, int end, double[] box, Bins bins, double traversalCost, boolean longestOnly) {
+            double[] centroidBox = emptyBounds();
+            for (int i = start; i < end; i++) {
+                include(centroidBox, 0, centroids, centroids, order[i]);
+            }
+            int longest = 0;
+            for (int axis = 1; axis < 3; axis++) {
+                if (centroidBox[axis + 3] - centroidBox[axis] > centroidBox[longest + 3] - centroidBox[longest]) {
+                    longest = axis;
+                }
+            }
+            double area = Math.max(surfaceArea(box, 0), Double.MIN_NORMAL);
+            Split best = bins.none();
+            for (int axis = 0; axis < 3; axis++) {
+                double min = centroidBox[axis];
+                double extent = centroidBox[axis + 3] - min;
+                if (!(extent > 0) || longestOnly && axis != longest) continue;
+
+                bins.clear();
+                for (int i = start; i < end; i++) {
+                    int object = order[i];
+                    int b = bins.bin(centroids[3 * object + axis], min, extent);
+                    bins.counts[b]++;
+                    include(bins.bounds, bins.offset(b, 0), lower, upper, object);
+                }
+                best = bins.sweep(axis, min, extent, traversalCost, area, best);
+            }
+            return best;
+        }
+
+        /**
+         * Moves the objects of a range that go to the left of a split in front of the others
+         *
+         * @return the index of the first object of the right side
+         */
+        int partition(int start, int end, Split split) {
+            if (split.axis() < 0) {
+                // every centroid is at the same point, so any split is as good as any other
+                return (start + end) / 2;
+            }
+            int i = start;
+            int j = end - 1;
+            while (i <= j) {
+                if (split.left(centroids[3 * order[i] + split.axis()])) {
+                    i++;
+                } else {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    j--;
+                }
+            }
+            return i;
+        }
+    }
+
+    /**
+     * The cheapest plane between two bins of centroids along one axis
+     *
+     * @param cost   the expected cost of the split relative to one intersection test, or infinity if no plane
+     *               separates the objects
+     * @param axis   the axis of the plane, or -1 if every centroid is at the same point
+     * @param bin    the last bin on the left of the plane
+     * @param min    where the bins start along the axis
+     * @param extent the length of the bins along the axis together
+     * @param bins   the number of bins
+     */
+    record Split(double cost, int axis, int bin, double min, double extent, int bins) {
+        /**
+         * Returns whether an object whose centroid is at a position along the axis goes to the left
+         */
+        boolean left(double centroid) {
+            return BVHBuilder.bin(centroid, min, extent, bins) <= bin;
+        }
+    }
+
+    private static int bin(double centroid, double min, double extent, int bins) {
+        return Math.min(bins - 1, (int) ((centroid - min) / extent * bins));
+    }
+
+    /**
+     * Bins of centroids along one axis, with the count and the bounds of the objects of every bin. The bounds of a
+     * bin are kept at one or more frames, such as times at which a moving node is bounded, and the area of a box
+     * is the mean of its areas at every frame.
+     */
+    static final class Bins {
+        final int size;
+        final int frames;
+        final int[] counts;
+        // six bounds per frame per bin
+        final double[] bounds;
+        private final double[] rightAreas;
+        private final int[] rightCounts;
+        private final double[] sweep;
+
+        Bins(int size, int frames) {
+            this.size = size;
+            this.frames = frames;
+            counts = new int[size];
+            bounds = new double[6 * frames * size];
+            rightAreas = new double[size];
+            rightCounts = new int[size];
+            sweep = new double[6 * frames];
+        }
+
+        /**
+         * Returns a split that any split is cheaper than
+         */
+        Split none() {
+            return new Split(Double.POSITIVE_INFINITY, -1, -1, 0, 0, size);
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            for (int b = 0; b < size * frames; b++) {
+                resetBounds(bounds, 6 * b);
+            }
+        }
+
+        int bin(double centroid, double min, double extent) {
+            return BVHBuilder.bin(centroid, min, extent, size);
+        }
+
+        /**
+         * Returns where the bounds of a bin at a frame start
+         */
+        int offset(int bin, int frame) {
+            return 6 * (frames * bin + frame);
+        }
+
+        /**
+         * Sweeps the filled bins for the cheapest plane between two of them
+         *
+         * @param area the area of the node, positive
+         * @param best the cheapest split found so far
+         * @return the cheaper of the best split and the cheapest split along this axis
+         */
+        Split sweep(int axis, double min, double extent, double traversalCost, double area, Split best) {
+            // sweep from the right, then from the left; split k puts bins 0..k on the left
+            clearSweep();
+            int sweepCount = 0;
+            for (int b = size - 1; b > 0; b--) {
+                growSweep(b);
+                sweepCount += counts[b];
+                rightAreas[b - 1] = sweepArea();
+                rightCounts[b - 1] = sweepCount;
+            }
+            clearSweep();
+            sweepCount = 0;
+            for (int b = 0; b < size - 1; b++) {
+                growSweep(b);
+                sweepCount += counts[b];
+                if (sweepCount == 0 || rightCounts[b] == 0) continue;
+                double cost = traversalCost + (sweepArea() * sweepCount + rightAreas[b] * rightCounts[b]) / area;
+                if (cost < best.cost()) {
+                    best = new Split(cost, axis, b, min, extent, size);
+                }
+            }
+            return best;
+        }
+
+        private void clearSweep() {
+            for (int frame = 0; frame < frames; frame++) {
+                resetBounds(sweep, 6 * frame);
+            }
+        }
+
+        private void growSweep(int bin) {
+            for (int frame = 0; frame < frames; frame++) {
+                grow(sweep, 6 * frame, bounds, offset(bin, frame));
+            }
+        }
+
+        private double sweepArea() {
+            double area = 0;
+            for (int frame = 0; frame < frames; frame++) {
+                area += surfaceArea(sweep, 6 * frame);
+            }
+            return area / frames;
+        }
+    }
+}
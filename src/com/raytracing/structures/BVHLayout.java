@@ -0,0 +1,36 @@
+package com.raytracing.structures;
+
+import com.raytracing.interfaces.Hittable;
+
+/**
+ * The ways to store a built bounding volume hierarchy for rendering
+ */
+public enum BVHLayout {
+    /**
+     * Binary nodes in arrays, see {@link FlatBVH}
+     */
+    FLAT,
+    /**
+     * Nodes of 4 children whose boxes are tested at once, see {@link WideBVH}
+     */
+    WIDE,
+    /**
+     * Binary nodes with 8-bit bounds relative to their parents, the smallest, see {@link CompressedBVH}
+     */
+    COMPRESSED;
+
+    /**
+     * Compiles a tree of {@link BVHNode}s into this layout. A {@link LazyBVH} has no tree to compile yet, and a
+     * {@link MotionBVH} and a {@link DynamicBVH} are stored in their own layouts, so they are returned as they are.
+     */
+    public Accelerator compile(Hittable root) {
+        if (root instanceof LazyBVH lazy) return lazy;
+        if (root instanceof MotionBVH motion) return motion;
+        if (root instanceof DynamicBVH dynamic) return dynamic;
+        return switch (this) {
+            case FLAT -> new FlatBVH(root);
+            case WIDE -> new WideBVH(root, 4);
+            case COMPRESSED -> new CompressedBVH(root, 8);
+        };
+    }
+}
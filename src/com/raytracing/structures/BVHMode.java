@@ -0,0 +1,57 @@
+package com.raytracing.structures;
+
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+
+/**
+ * The ways to build a bounding volume hierarchy
+ */
+public enum BVHMode {
+    /**
+     * Splits at the median of the longest axis, see {@link BVHNode#BVHNode(HittableList)}
+     */
+    MEDIAN,
+    /**
+     * Splits by the surface area heuristic in parallel, see {@link BVHBuilder}
+     */
+    SAH,
+    /**
+     * Splits along a Morton curve, the fastest to build, see {@link LinearBVHBuilder}
+     */
+    LINEAR,
+    /**
+     * Splits by the surface area heuristic as rays first enter each node, the fastest to the first pixel, see
+     * {@link LazyBVH}
+     */
+    LAZY,
+    /**
+     * Splits by the surface area heuristic in space and in time, with bounds that follow moving objects through
+     * the shutter interval, see {@link MotionBVH}
+     */
+    MOTION,
+    /**
+     * Inserts the objects one by one into a tree that can be edited afterwards, see {@link DynamicBVH}
+     */
+    DYNAMIC;
+
+    /**
+     * Builds a binary BVH over the objects. The list itself is not changed. A lazy BVH is built as rays go, a
+     * motion BVH has bounds for every time and a dynamic BVH stays editable, so they are returned as they are
+     * rather than as trees of {@link BVHNode}s.
+     */
+    public Hittable build(HittableList objects) {
+        return switch (this) {
+            case MEDIAN -> {
+                // the median split sorts the list it is given
+                var copy = new HittableList();
+                objects.forEach(copy::add);
+                yield new BVHNode(copy);
+            }
+            case SAH -> new BVHBuilder().build(objects);
+            case LINEAR -> new LinearBVHBuilder().build(objects);
+            case LAZY -> new LazyBVH(objects);
+            case MOTION -> new MotionBVH(objects);
+            case DYNAMIC -> new DynamicBVH(objects);
+        };
+    }
+}
@@ -7,13 +7,17 @@ import com.raytracing.scene.Ray;
 
 import java.util.*;
 
-public class BVHNode implements Hittable {
+/**
+ * A node of a bounding volume hierarchy with two children, each of which is a node or the objects of a leaf
+ */
+public class BVHNode implements Accelerator {
     private final Hittable left;
     private final Hittable right;
     private AABB boundingBox;
 
     /**
-     * Constructs a BVH with a list of hittable
+     * Constructs a BVH with a list of hittable by splitting at the median of the longest axis.
+     * {@link BVHBuilder} builds trees that are much cheaper to traverse.
      */
     public BVHNode(HittableList list) {
         this(list.objects(), 0, list.objects().size());
@@ -24,7 +28,7 @@ public class BVHNode implements Hittable {
      */
     private BVHNode(List<Hittable> objects, int start, int end) {
         boundingBox = new AABB();
-        for (var object : objects) {
+        for (var object : objects.subList(start, end)) {
             boundingBox = new AABB(boundingBox, object.boundingBox());
         }
         int axis = boundingBox.longestAxis();
@@ -51,6 +55,23 @@ public class BVHNode implements Hittable {
         boundingBox = new AABB(left.boundingBox(), right.boundingBox());
     }
 
+    /**
+     * Constructs a node of two children with the box that bounds both
+     */
+    BVHNode(Hittable left, Hittable right, AABB boundingBox) {
+        this.left = left;
+        this.right = right;
+        this.boundingBox = boundingBox;
+    }
+
+    Hittable left() {
+        return left;
+    }
+
+    Hittable right() {
+        return right;
+    }
+
     /**
      * Returns a record that the ray hit this object at the given range.
      *
@@ -69,6 +90,30 @@ public class BVHNode implements Hittable {
         return hitRight == null ? hitLeft : hitRight;
     }
 
+    /**
+     * Returns the expected cost of a ray through the tree below this node, as {@link BVHBuilder#cost} does
+     */
+    @Override
+    public double cost(double traversalCost) {
+        double area = boundingBox.surfaceArea();
+        double leftCost = BVHBuilder.cost(left, traversalCost);
+        if (area <= 0) return traversalCost + leftCost + BVHBuilder.cost(right, traversalCost);
+        double cost = traversalCost + left.boundingBox().surfaceArea() / area * leftCost;
+        // a leaf of one object is stored as both children but tested once
+        if (right != left) {
+            cost += right.boundingBox().surfaceArea() / area * BVHBuilder.cost(right, traversalCost);
+        }
+        return cost;
+    }
+
+    /**
+     * Returns -1, since the nodes are objects of their own
+     */
+    @Override
+    public long footprint() {
+        return -1;
+    }
+
     /**
      * @return The bounding box of hittable object
      */
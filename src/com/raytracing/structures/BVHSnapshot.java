@@ -0,0 +1,380 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.PixelColor;
+import com.raytracing.base.Vector3d;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.interfaces.Material;
+import com.raytracing.interfaces.Texture;
+import com.raytracing.materials.Dielectric;
+import com.raytracing.materials.DiffuseLight;
+import com.raytracing.materials.Isotropic;
+import com.raytracing.materials.Lambertian;
+import com.raytracing.materials.Metal;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Quad;
+import com.raytracing.scene.Sphere;
+import com.raytracing.textures.SolidColor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled BVH saved to a file together with its primitives and materials, so that later runs can map the file
+ * and start tracing without generating the objects or building the tree.
+ * <p>
+ * The file holds a header, a table of materials, one fixed-size record per primitive and the nodes of a
+ * {@link FlatBVH}, all little endian. Its key is a SHA-256 hash of whatever the tree was made from, which a run
+ * compares to its own before it trusts the file. Loading copies the nodes out of the mapping, since rays walk
+ * arrays faster than buffers, and decodes every primitive from the mapping when a ray first reaches it.
+ * <p>
+ * Spheres and quads with solid colored materials are supported; lists, such as boxes, are stored as their members.
+ */
+public class BVHSnapshot {
+    private static final byte[] MAGIC = "RTBVHSN1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 64;
+    private static final int KEY_SIZE = 32;
+    private static final int MATERIAL_SIZE = 40;
+    private static final int PRIMITIVE_SIZE = 80;
+    private static final int NODE_SIZE = 56;
+
+    // offsets of the header fields
+    private static final int KEY = 8;
+    private static final int NODES = 40;
+    private static final int PRIMITIVES = 44;
+    private static final int MATERIALS = 48;
+    private static final int MAX_DEPTH = 52;
+
+    // kinds of materials and primitives
+    private static final int LAMBERTIAN = 0;
+    private static final int METAL = 1;
+    private static final int DIELECTRIC = 2;
+    private static final int DIFFUSE_LIGHT = 3;
+    private static final int ISOTROPIC = 4;
+    private static final int SPHERE = 0;
+    private static final int MOVING_SPHERE = 1;
+    private static final int QUAD = 2;
+
+    // the code that decides what a snapshot holds besides the generator of the objects
+    private static final List<Class<?>> CONTENT_CODE = List.of(BVHSnapshot.class, BVHBuilder.class,
+            LinearBVHBuilder.class, FlatBVH.class, Sphere.class, Quad.class, HittableList.class);
+
+    /**
+     * Thrown when a tree holds an object or material a snapshot cannot store, or is too large to map
+     */
+    public static class UnsupportedContentException extends Exception {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedContentException(String message) {
+            super(message);
+        }
+    }
+
+    private BVHSnapshot() {
+    }
+
+    /**
+     * Returns the key of a tree: a hash of everything the tree was made from. That is the number of the scene, the
+     * mode and layout of the tree, a description of what made the objects, such as the parameters of a generator,
+     * and the class files of the generator, the builders and the primitives, so that editing any of that code
+     * invalidates the snapshots too. The objects themselves are not hashed, since a snapshot exists to skip making
+     * them.
+     *
+     * @param scene       the number of the scene
+     * @param mode        how the tree was built
+     * @param layout      how the tree is stored
+     * @param description what the objects were made from
+     * @param source      the class that made the objects
+     */
+    public static byte[] key(int scene, BVHMode mode, BVHLayout layout, String description, Class<?> source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(MAGIC);
+            String header = "scene=" + scene + " mode=" + mode + " layout=" + layout + "\n";
+            digest.update(header.getBytes(StandardCharsets.UTF_8));
+            digest.update(description.getBytes(StandardCharsets.UTF_8));
+            List<Class<?>> code = new ArrayList<>(CONTENT_CODE);
+            code.add(0, source);
+            for (Class<?> type : code) {
+                try (InputStream file = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+                    if (file != null) digest.update(file.readAllBytes());
+                }
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("cannot hash " + source.getName(), e);
+        }
+    }
+
+    /**
+     * Returns the key as a file name
+     */
+    public static String fileName(byte[] key) {
+        var name = new StringBuilder();
+        for (byte b : key) {
+            name.append(String.format("%02x", b));
+        }
+        return name.append(".bvh").toString();
+    }
+
+    /**
+     * Saves a tree, replacing any existing file only once the new one is complete
+     *
+     * @param path the path of the file
+     * @param key  the key of the tree, see {@link #key}
+     * @param root the root of a tree of {@link BVHNode}s or a compiled {@link FlatBVH}
+     * @throws UnsupportedContentException if the tree holds an object or material that cannot be saved
+     */
+    public static void write(Path path, byte[] key, Hittable root) throws IOException, UnsupportedContentException {
+        if (key.length != KEY_SIZE) {
+            throw new IllegalArgumentException("a key has " + KEY_SIZE + " bytes, not " + key.length);
+        }
+        var flat = root instanceof FlatBVH compiled ? compiled : new FlatBVH(root);
+        var writer = new Writer();
+        int[] nodes = writer.addNodes(flat);
+
+        long size = HEADER_SIZE + (long) MATERIAL_SIZE * writer.materials.size()
+                + (long) PRIMITIVE_SIZE * writer.primitives.size() + (long) NODE_SIZE * flat.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new UnsupportedContentException("a snapshot of " + size + " bytes is too large to map");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC).put(key)
+                .putInt(NODES, flat.size())
+                .putInt(PRIMITIVES, writer.primitives.size())
+                .putInt(MATERIALS, writer.materials.size())
+                .putInt(MAX_DEPTH, flat.maxDepth())
+                .position(HEADER_SIZE);
+        for (MaterialRecord material : writer.materials) {
+            buffer.putInt(material.kind).putInt(0)
+                    .putDouble(material.red).putDouble(material.green).putDouble(material.blue)
+                    .putDouble(material.parameter);
+        }
+        for (Hittable primitive : writer.primitives) {
+            writePrimitive(buffer, primitive, writer.materialIds);
+        }
+        for (int node = 0; node < flat.size(); node++) {
+            for (int bound = 0; bound < 6; bound++) {
+                buffer.putDouble(flat.bound(node, bound));
+            }
+        }
+        for (int value : nodes) {
+            buffer.putInt(value);
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.write(temporary, buffer.array());
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A material as it is stored
+     */
+    private record MaterialRecord(int kind, double red, double green, double blue, double parameter) {
+    }
+
+    /**
+     * Collects the primitives in the order of the leaves and the distinct materials they use
+     */
+    private static class Writer {
+        final List<Hittable> primitives = new ArrayList<>();
+        final List<MaterialRecord> materials = new ArrayList<>();
+        final Map<MaterialRecord, Integer> ids = new HashMap<>();
+        final Map<Material, Integer> materialIds = new IdentityHashMap<>();
+
+        /**
+         * @return the nodes of the tree with the leaves pointing at the primitives
+         */
+        int[] addNodes(FlatBVH flat) throws UnsupportedContentException {
+            int[] nodes = new int[2 * flat.size()];
+            for (int node = 0; node < flat.size(); node++) {
+                int count = flat.node(node, 1);
+                if (count == 0) {
+                    nodes[2 * node] = flat.node(node, 0);
+                    continue;
+                }
+                int first = primitives.size();
+                for (int i = flat.node(node, 0); i < flat.node(node, 0) + count; i++) {
+                    add(flat.object(i));
+                }
+                nodes[2 * node] = first;
+                nodes[2 * node + 1] = primitives.size() - first;
+            }
+            return nodes;
+        }
+
+        private void add(Hittable object) throws UnsupportedContentException {
+            Material material;
+            if (object instanceof HittableList list) {
+                for (Hittable member : list.objects()) {
+                    add(member);
+                }
+                return;
+            } else if (object instanceof Sphere sphere) {
+                material = sphere.material();
+            } else if (object instanceof Quad quad) {
+                material = quad.material();
+            } else {
+                throw new UnsupportedContentException("cannot save a " + object.getClass().getSimpleName());
+            }
+            primitives.add(object);
+            if (!materialIds.containsKey(material)) {
+                MaterialRecord record = encode(material);
+                materialIds.put(material, ids.computeIfAbsent(record, r -> {
+                    materials.add(r);
+                    return materials.size() - 1;
+                }));
+            }
+        }
+
+        private static MaterialRecord encode(Material material) throws UnsupportedContentException {
+            if (material instanceof Lambertian lambertian) {
+                return textured(LAMBERTIAN, lambertian.texture());
+            } else if (material instanceof DiffuseLight light) {
+                return textured(DIFFUSE_LIGHT, light.texture());
+            } else if (material instanceof Isotropic isotropic) {
+                return textured(ISOTROPIC, isotropic.texture());
+            } else if (material instanceof Metal metal) {
+                PixelColor albedo = metal.albedo();
+                return new MaterialRecord(METAL, albedo.red(), albedo.green(), albedo.blue(), metal.fuzziness());
+            } else if (material instanceof Dielectric dielectric) {
+                return new MaterialRecord(DIELECTRIC, 0, 0, 0, dielectric.indexOfRefraction());
+            }
+            throw new UnsupportedContentException("cannot save a " + material.getClass().getSimpleName());
+        }
+
+        private static MaterialRecord textured(int kind, Texture texture) throws UnsupportedContentException {
+            if (!(texture instanceof SolidColor solid)) {
+                throw new UnsupportedContentException("cannot save a " + texture.getClass().getSimpleName());
+            }
+            PixelColor albedo = solid.albedo();
+            return new MaterialRecord(kind, albedo.red(), albedo.green(), albedo.blue(), 0);
+        }
+    }
+
+    private static void writePrimitive(ByteBuffer buffer, Hittable primitive, Map<Material, Integer> materialIds) {
+        int start = buffer.position();
+        if (primitive instanceof Sphere sphere) {
+            buffer.putInt(sphere.isMoving() ? MOVING_SPHERE : SPHERE).putInt(materialIds.get(sphere.material()));
+            putVector(buffer, sphere.center());
+            putVector(buffer, sphere.velocity());
+            buffer.putDouble(sphere.radius());
+        } else {
+            var quad = (Quad) primitive;
+            buffer.putInt(QUAD).putInt(materialIds.get(quad.material()));
+            putVector(buffer, quad.Q());
+            putVector(buffer, quad.u());
+            putVector(buffer, quad.v());
+        }
+        buffer.position(start + PRIMITIVE_SIZE);
+    }
+
+    private static void putVector(ByteBuffer buffer, Vector3d vector) {
+        buffer.putDouble(vector.x()).putDouble(vector.y()).putDouble(vector.z());
+    }
+
+    /**
+     * Maps a snapshot
+     *
+     * @param path the path of the file
+     * @param key  the key the snapshot must have
+     * @return the tree, whose primitives are read from the file as rays reach them
+     * @throws IOException if the file is not a snapshot or has another key
+     */
+    public static FlatBVH load(Path path, byte[] key) throws IOException {
+        MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a BVH snapshot");
+            }
+            // the mapping stays valid after the channel is closed
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        file.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(path + " is not a BVH snapshot");
+        }
+        byte[] fileKey = new byte[KEY_SIZE];
+        file.get(KEY, fileKey);
+        if (!Arrays.equals(fileKey, key)) {
+            throw new IOException(path + " is a snapshot of another tree");
+        }
+
+        int nodeCount = file.getInt(NODES);
+        int primitiveCount = file.getInt(PRIMITIVES);
+        int materialCount = file.getInt(MATERIALS);
+        int primitives = HEADER_SIZE + MATERIAL_SIZE * materialCount;
+        int bounds = primitives + PRIMITIVE_SIZE * primitiveCount;
+        int nodes = bounds + 6 * Double.BYTES * nodeCount;
+        if ((long) bounds + (long) NODE_SIZE * nodeCount != file.capacity()) {
+            throw new IOException(path + " is truncated");
+        }
+
+        Material[] materials = new Material[materialCount];
+        for (int i = 0; i < materialCount; i++) {
+            materials[i] = readMaterial(file, HEADER_SIZE + MATERIAL_SIZE * i);
+        }
+        double[] boundArray = new double[6 * nodeCount];
+        file.slice(bounds, 6 * Double.BYTES * nodeCount).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(boundArray);
+        int[] nodeArray = new int[2 * nodeCount];
+        file.slice(nodes, 2 * Integer.BYTES * nodeCount).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(nodeArray);
+        return new FlatBVH(boundArray, nodeArray, primitiveCount,
+                index -> readPrimitive(file, primitives + PRIMITIVE_SIZE * index, materials), file.getInt(MAX_DEPTH));
+    }
+
+    private static Material readMaterial(ByteBuffer file, int offset) {
+        int kind = file.getInt(offset);
+        var color = new PixelColor(file.getDouble(offset + 8), file.getDouble(offset + 16), file.getDouble(offset + 24));
+        double parameter = file.getDouble(offset + 32);
+        return switch (kind) {
+            case LAMBERTIAN -> new Lambertian(color);
+            case METAL -> new Metal(color, parameter);
+            case DIELECTRIC -> new Dielectric(parameter);
+            case DIFFUSE_LIGHT -> new DiffuseLight(color);
+            case ISOTROPIC -> new Isotropic(color);
+            default -> throw new IllegalStateException("unknown material " + kind);
+        };
+    }
+
+    private static Hittable readPrimitive(ByteBuffer file, int offset, Material[] materials) {
+        int kind = file.getInt(offset);
+        Material material = materials[file.getInt(offset + 4)];
+        Vector3d first = getVector(file, offset + 8);
+        Vector3d second = getVector(file, offset + 32);
+        return switch (kind) {
+            case SPHERE -> new Sphere(first, file.getDouble(offset + 56), material);
+            case MOVING_SPHERE -> {
+                double radius = file.getDouble(offset + 56);
+                var box = new Sphere(first, first.add(second), radius, material).boundingBox();
+                yield new Sphere(first, radius, material, true, second, box);
+            }
+            case QUAD -> new Quad(first, second, getVector(file, offset + 56), material);
+            default -> throw new IllegalStateException("unknown primitive " + kind);
+        };
+    }
+
+    private static Vector3d getVector(ByteBuffer file, int offset) {
+        return new Vector3d(file.getDouble(offset), file.getDouble(offset + 8), file.getDouble(offset + 16));
+    }
+}
@@ -0,0 +1,166 @@
+package com.raytracing.structures;
+
+import com.raytracing.interfaces.Hittable.HitRecord;
+import com.raytracing.scene.Ray;
+
+/**
+ * The walk of one ray through a BVH whose inner nodes have two children, as {@link FlatBVH} and the BVHs that are
+ * edited or move trace their rays.
+ * <p>
+ * The walk keeps an explicit stack, visits the nearer child first and skips every node it enters beyond the
+ * closest hit found so far. Nodes are named by ints, which a BVH maps to its nodes as it likes; a walk is made for
+ * every ray, so it may keep state of its own for that.
+ */
+abstract class BVHTraversal {
+    /**
+     * The child of an inner node that the ray does not enter, such as the other half of a split in time
+     */
+    static final int NONE = -1;
+
+    final Ray ray;
+    final double ox;
+    final double oy;
+    final double oz;
+    final double ix;
+    final double iy;
+    final double iz;
+    // offsets of the near planes; the far planes are on the other side
+    final int nearX;
+    final int nearY;
+    final int nearZ;
+
+    BVHTraversal(Ray ray) {
+        this.ray = ray;
+        ox = ray.origin().x();
+        oy = ray.origin().y();
+        oz = ray.origin().z();
+        ix = 1.0 / ray.direction().x();
+        iy = 1.0 / ray.direction().y();
+        iz = 1.0 / ray.direction().z();
+        nearX = ix < 0 ? 3 : 0;
+        nearY = iy < 0 ? 4 : 1;
+        nearZ = iz < 0 ? 5 : 2;
+    }
+
+    abstract boolean isLeaf(int node);
+
+    /**
+     * Returns the closest hit of the ray with the objects of a leaf within the range, or null if there is none
+     */
+    abstract HitRecord hitLeaf(int node, double tMin, double tMax);
+
+    /**
+     * Returns the left child of an inner node. The walk asks for it right before the right child.
+     */
+    abstract int left(int node);
+
+    /**
+     * Returns the right child of an inner node, or {@link #NONE} if the ray only enters the left one
+     */
+    abstract int right(int node);
+
+    /**
+     * Tells that the walk is done with a node and will not name it again, so that a BVH that maps the names of nodes
+     * to its nodes for the walk may reuse the name. Does nothing by default.
+     */
+    void release(int node) {
+    }
+
+    /**
+     * Intersects the ray with the box of a node
+     *
+     * @return the t where the ray enters the node, or positive infinity if it misses the node within the range
+     */
+    abstract double enter(int node, double tMin, double tMax);
+
+    /**
+     * Finds the closest hit of the ray below a node
+     *
+     * @param depth the number of levels below the node
+     */
+    HitRecord hit(int root, int depth, double tMin, double tMax) {
+        double closest = tMax;
+        HitRecord record = null;
+        double entry = enter(root, tMin, closest);
+        if (entry == Double.POSITIVE_INFINITY) return null;
+
+        // an inner node pushes at most one more node than it pops
+        int[] stack = new int[depth + 2];
+        double[] entries = new double[depth + 2];
+        int size = 0;
+        stack[size] = root;
+        entries[size++] = entry;
+        while (size > 0) {
+            int node = stack[--size];
+            if (entries[size] >= closest) {
+                release(node);
+                continue;
+            }
+
+            if (isLeaf(node)) {
+                HitRecord hit = hitLeaf(node, tMin, closest);
+                if (hit != null) {
+                    record = hit;
+                    closest = hit.t();
+                }
+                release(node);
+                continue;
+            }
+
+            int left = left(node);
+            int right = right(node);
+            release(node);
+            double leftEntry = enter(left, tMin, closest);
+            if (leftEntry == Double.POSITIVE_INFINITY) release(left);
+            double rightEntry = Double.POSITIVE_INFINITY;
+            if (right != NONE) {
+                rightEntry = enter(right, tMin, closest);
+                if (rightEntry == Double.POSITIVE_INFINITY) release(right);
+            }
+            // push the farther child first, so the nearer one is visited next
+            if (leftEntry <= rightEntry) {
+                if (rightEntry != Double.POSITIVE_INFINITY) {
+                    stack[size] = right;
+                    entries[size++] = rightEntry;
+                }
+                if (leftEntry != Double.POSITIVE_INFINITY) {
+                    stack[size] = left;
+                    entries[size++] = leftEntry;
+                }
+            } else {
+                if (leftEntry != Double.POSITIVE_INFINITY) {
+                    stack[size] = left;
+                    entries[size++] = leftEntry;
+                }
+                stack[size] = right;
+                entries[size++] = rightEntry;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Intersects the ray with six bounds, the minimum x, y, z followed by the maximum x, y, z
+     *
+     * @param offset the index of the first bound
+     * @return the t where the ray enters the box, or positive infinity if it misses the box within the range
+     */
+    double enter(double[] bounds, int offset, double tMin, double tMax) {
+        double tNear = tMin;
+        double tFar = tMax;
+        // written so that a NaN from a ray in the plane of a bound leaves the range unchanged
+        double t0 = (bounds[offset + nearX] - ox) * ix;
+        double t1 = (bounds[offset + 3 - nearX] - ox) * ix;
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+        t0 = (bounds[offset + nearY] - oy) * iy;
+        t1 = (bounds[offset + 5 - nearY] - oy) * iy;
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+        t0 = (bounds[offset + nearZ] - oz) * iz;
+        t1 = (bounds[offset + 7 - nearZ] - oz) * iz;
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+        return tNear < tFar ? tNear : Double.POSITIVE_INFINITY;
+    }
+}
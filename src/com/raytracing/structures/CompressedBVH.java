@@ -0,0 +1,316 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy whose bounds are quantized to 8 or 16 bits relative to the box of the parent.
+ * <p>
+ * The two children of an inner node are stored next to each other, so a node needs one int: an inner node stores
+ * the index of its left child, a leaf stores the complement of the index of its first object shifted left by 4
+ * plus the number of its objects less one. Each axis of the box of the parent is divided into 255 or 65535 steps,
+ * and every bound of a node is stored as the number of steps from the minimum of the parent, rounded outwards,
+ * so the decoded box always contains the exact box. Only the box of the root is stored exactly.
+ * <p>
+ * A node takes 10 bytes with 8-bit bounds and 16 bytes with 16-bit bounds, against 56 bytes in a {@link FlatBVH}
+ * and roughly 150 bytes in a tree of {@link BVHNode}s. Rays decode the boxes of the children as they go, and the
+ * looser boxes lead them into a few more nodes.
+ */
+public class CompressedBVH implements Accelerator {
+    // larger leaves are kept as one list
+    private static final int MAX_LEAF_SIZE = 16;
+
+    private final int levels;
+    private final int bytesPerBound;
+    private final byte[] bounds;
+    private final int[] nodes;
+    private final Hittable[] objects;
+    private final double[] rootBox;
+    private final int maxDepth;
+    private final AABB boundingBox;
+
+    /**
+     * Compiles a tree of {@link BVHNode}s. Anything else in the tree, including lists, becomes a leaf whose
+     * objects are tested one by one.
+     *
+     * @param bits the bits per bound, 8 or 16
+     */
+    public CompressedBVH(Hittable root, int bits) {
+        if (bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("bounds are quantized to 8 or 16 bits, not " + bits);
+        }
+        levels = (1 << bits) - 1;
+        bytesPerBound = bits / 8;
+        boundingBox = root.boundingBox();
+        rootBox = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            rootBox[axis] = boundingBox.axisInterval(axis).min();
+            rootBox[axis + 3] = boundingBox.axisInterval(axis).max();
+        }
+
+        var builder = new Builder();
+        builder.reserve(1);
+        builder.add(root, 0, rootBox, 0);
+        bounds = Arrays.copyOf(builder.bounds, 6 * bytesPerBound * builder.count);
+        nodes = Arrays.copyOf(builder.nodes, builder.count);
+        objects = builder.objects.toArray(new Hittable[0]);
+        maxDepth = builder.maxDepth;
+    }
+
+    /**
+     * Collects the nodes with the children of every inner node next to each other
+     */
+    private class Builder {
+        byte[] bounds = new byte[6 * bytesPerBound * 64];
+        int[] nodes = new int[64];
+        int count;
+        int maxDepth;
+        final List<Hittable> objects = new ArrayList<>();
+
+        /**
+         * @return the index of the first of the reserved nodes
+         */
+        int reserve(int nodeCount) {
+            int first = count;
+            count += nodeCount;
+            while (count > nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+            }
+            return first;
+        }
+
+        /**
+         * Fills in a node whose own box is already stored
+         *
+         * @param box the decoded box of the node, minimum x, y, z followed by maximum x, y, z
+         */
+        void add(Hittable node, int index, double[] box, int depth) {
+            maxDepth = Math.max(maxDepth, depth);
+            if (node instanceof BVHNode bvh && bvh.left() != bvh.right()) {
+                int left = reserve(2);
+                nodes[index] = left;
+                double[] leftBox = encode(exactBox(bvh.left()), box, left);
+                double[] rightBox = encode(exactBox(bvh.right()), box, left + 1);
+                add(bvh.left(), left, leftBox, depth + 1);
+                add(bvh.right(), left + 1, rightBox, depth + 1);
+                return;
+            }
+
+            int first = objects.size();
+            if (node instanceof BVHNode bvh) {
+                // a leaf of one object is stored as both children
+                objects.add(bvh.left());
+            } else if (node instanceof HittableList list && list.objects().size() <= MAX_LEAF_SIZE) {
+                list.forEach(objects::add);
+            } else {
+                objects.add(node);
+            }
+            nodes[index] = ~(first << 4 | (objects.size() - first - 1));
+        }
+
+        /**
+         * Stores the box of a node relative to the box of its parent
+         *
+         * @return the decoded box, which contains the exact box
+         */
+        double[] encode(double[] exact, double[] parent, int index) {
+            double[] decoded = new double[6];
+            for (int axis = 0; axis < 3; axis++) {
+                double min = parent[axis];
+                double step = (parent[axis + 3] - min) / levels;
+                int low = 0;
+                int high = levels;
+                if (step > 0) {
+                    low = (int) Math.max(0, Math.min(levels, Math.floor((exact[axis] - min) / step)));
+                    high = (int) Math.max(0, Math.min(levels, Math.ceil((exact[axis + 3] - min) / step)));
+                    // rounding of the decoding may still move a bound inwards
+                    while (low > 0 && min + low * step > exact[axis]) low--;
+                    while (high < levels && min + high * step < exact[axis + 3]) high++;
+                }
+                put(6 * index + axis, low);
+                put(6 * index + axis + 3, high);
+                decoded[axis] = min + low * step;
+                decoded[axis + 3] = high == levels ? parent[axis + 3] : min + high * step;
+            }
+            return decoded;
+        }
+
+        /**
+         * Returns the box that the objects below a node need. The box of a list grows by a margin with every
+         * object added, so it may stick out of its parent; the boxes of its objects do not.
+         */
+        private static double[] exactBox(Hittable node) {
+            double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            if (node instanceof HittableList list) {
+                list.forEach(object -> grow(box, object.boundingBox()));
+            } else if (node instanceof BVHNode bvh && bvh.left() == bvh.right()) {
+                grow(box, bvh.left().boundingBox());
+            } else {
+                grow(box, node.boundingBox());
+            }
+            return box;
+        }
+
+        private static void grow(double[] box, AABB other) {
+            for (int axis = 0; axis < 3; axis++) {
+                Interval interval = other.axisInterval(axis);
+                box[axis] = Math.min(box[axis], interval.min());
+                box[axis + 3] = Math.max(box[axis + 3], interval.max());
+            }
+        }
+
+        private void put(int bound, int value) {
+            if (bytesPerBound == 1) {
+                bounds[bound] = (byte) value;
+            } else {
+                bounds[2 * bound] = (byte) (value >>> 8);
+                bounds[2 * bound + 1] = (byte) value;
+            }
+        }
+    }
+
+    private int get(int bound) {
+        if (bytesPerBound == 1) return bounds[bound] & 0xff;
+        return (bounds[2 * bound] & 0xff) << 8 | bounds[2 * bound + 1] & 0xff;
+    }
+
+    /**
+     * Decodes the box of a node from the box of its parent
+     */
+    private void decode(int node, double[] parent, int parentOffset, double[] box, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            double min = parent[parentOffset + axis];
+            double max = parent[parentOffset + axis + 3];
+            double step = (max - min) / levels;
+            int high = get(6 * node + axis + 3);
+            box[offset + axis] = min + get(6 * node + axis) * step;
+            box[offset + axis + 3] = high == levels ? max : min + high * step;
+        }
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the bytes taken by the nodes, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        return bounds.length + (long) Integer.BYTES * nodes.length;
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        var slabRay = SlabTester.SlabRay.of(ray);
+        double closest = tMax;
+        HitRecord record = null;
+
+        // every entry of the stack carries the decoded box of its node
+        int[] stack = new int[maxDepth + 2];
+        double[] entries = new double[stack.length];
+        double[] boxes = new double[6 * stack.length];
+        double[] children = new double[12];
+        int size = 0;
+        stack[size] = 0;
+        entries[size] = tMin;
+        System.arraycopy(rootBox, 0, boxes, 0, 6);
+        size++;
+        while (size > 0) {
+            int node = stack[--size];
+            if (entries[size] >= closest) continue;
+
+            int value = nodes[node];
+            if (value < 0) {
+                int first = ~value >>> 4;
+                int last = first + (~value & 0xf);
+                for (int i = first; i <= last; i++) {
+                    HitRecord hit = objects[i].hit(ray, tMin, closest);
+                    if (hit != null) {
+                        record = hit;
+                        closest = hit.t();
+                    }
+                }
+                continue;
+            }
+
+            decode(value, boxes, 6 * size, children, 0);
+            decode(value + 1, boxes, 6 * size, children, 6);
+            double leftEntry = enter(children, 0, slabRay, tMin, closest);
+            double rightEntry = enter(children, 6, slabRay, tMin, closest);
+            // push the farther child first, so the nearer one is visited next
+            int nearer = leftEntry <= rightEntry ? 0 : 1;
+            for (int k = 1; k >= 0; k--) {
+                int child = k == 0 ? nearer : 1 - nearer;
+                double entry = child == 0 ? leftEntry : rightEntry;
+                if (entry == Double.POSITIVE_INFINITY) continue;
+                stack[size] = value + child;
+                entries[size] = entry;
+                System.arraycopy(children, 6 * child, boxes, 6 * size, 6);
+                size++;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Intersects the ray with a decoded box
+     *
+     * @return the t where the ray enters the box, or positive infinity if it misses the box within the range
+     */
+    private static double enter(double[] box, int offset, SlabTester.SlabRay ray, double tMin, double tMax) {
+        double tNear = Math.max(tMin, Math.max((box[offset + ray.nearX()] - ray.ox()) * ray.ix(),
+                Math.max((box[offset + ray.nearY()] - ray.oy()) * ray.iy(),
+                        (box[offset + ray.nearZ()] - ray.oz()) * ray.iz())));
+        double tFar = Math.min(tMax, Math.min((box[offset + 3 - ray.nearX()] - ray.ox()) * ray.ix(),
+                Math.min((box[offset + 5 - ray.nearY()] - ray.oy()) * ray.iy(),
+                        (box[offset + 7 - ray.nearZ()] - ray.oz()) * ray.iz())));
+        return tNear < tFar ? tNear : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree with its decoded boxes, as {@link BVHBuilder#cost}
+     * does for trees
+     */
+    @Override
+    public double cost(double traversalCost) {
+        return cost(0, rootBox, traversalCost);
+    }
+
+    private double cost(int node, double[] box, double traversalCost) {
+        int value = nodes[node];
+        if (value < 0) {
+            double cost = 0;
+            for (int i = ~value >>> 4; i <= (~value >>> 4) + (~value & 0xf); i++) {
+                cost += BVHBuilder.cost(objects[i], traversalCost);
+            }
+            return cost;
+        }
+        double area = BVHBuilder.surfaceArea(box, 0);
+        double cost = traversalCost;
+        for (int child = value; child <= value + 1; child++) {
+            double[] childBox = new double[6];
+            decode(child, box, 0, childBox, 0);
+            double childCost = cost(child, childBox, traversalCost);
+            cost += area > 0 ? BVHBuilder.surfaceArea(childBox, 0) / area * childCost : childCost;
+        }
+        return cost;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return boundingBox;
+    }
+}
@@ -0,0 +1,415 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+
+import java.util.Arrays;
+
+/**
+ * A bounding volume hierarchy that objects are inserted into and removed from one at a time, for scenes that are
+ * edited while they are shown.
+ * <p>
+ * Every leaf holds one object, and its node index is the handle of the object until it is removed. An object is
+ * inserted next to the node where it adds the least surface area, found by walking down from the root, and a
+ * removed leaf is replaced by its sibling. Either way only the nodes above the edit are refitted, and on the way
+ * up every node tries to swap one of its children with a grandchild on the other side, whichever shrinks the
+ * surface area of the nodes the most, which keeps the cost of the tree by the surface area heuristic close to that
+ * of a tree built from scratch. An edit takes time in the order of the height of the tree.
+ * <p>
+ * The nodes are stored in arrays as {@link FlatBVH} stores them, but in no particular order and with their
+ * children and parents linked by index; the nodes of removed objects are reused. No ray may be traced while the
+ * tree is edited.
+ */
+public class DynamicBVH implements Accelerator {
+    private static final int BOUNDS = 6;
+    private static final int NONE = -1;
+
+    private double[] bounds = new double[BOUNDS * 16];
+    private int[] parents = new int[16];
+    // the children of inner nodes, NONE for leaves
+    private int[] lefts = new int[16];
+    private int[] rights = new int[16];
+    // 0 for leaves, -1 for unused nodes
+    private int[] heights = new int[16];
+    // the objects of leaves, null for the other nodes
+    private Hittable[] objects = new Hittable[16];
+    private int root = NONE;
+    private int nodeCount;
+    // unused nodes are linked through their parents
+    private int free = NONE;
+    private int objectCount;
+
+    /**
+     * Constructs an empty BVH
+     */
+    public DynamicBVH() {
+        Arrays.fill(heights, -1);
+    }
+
+    /**
+     * Constructs a BVH by inserting the objects of a list one by one. The list itself is not changed.
+     */
+    public DynamicBVH(HittableList list) {
+        this();
+        for (Hittable object : list) {
+            insert(object);
+        }
+    }
+
+    /**
+     * Inserts an object
+     *
+     * @return the handle of the object, by which it is updated or removed
+     */
+    public final int insert(Hittable object) {
+        int leaf = allocate();
+        objects[leaf] = object;
+        setBounds(leaf, object.boundingBox());
+        insertLeaf(leaf);
+        objectCount++;
+        return leaf;
+    }
+
+    /**
+     * Removes an object
+     *
+     * @param handle the handle the object was inserted with
+     * @throws IllegalArgumentException if the handle does not belong to an object in the BVH
+     */
+    public void remove(int handle) {
+        checkHandle(handle);
+        removeLeaf(handle);
+        objects[handle] = null;
+        release(handle);
+        objectCount--;
+    }
+
+    /**
+     * Replaces an object by another one, such as the same object moved elsewhere. The new object keeps the handle.
+     *
+     * @param handle the handle the old object was inserted with
+     * @throws IllegalArgumentException if the handle does not belong to an object in the BVH
+     */
+    public void update(int handle, Hittable object) {
+        checkHandle(handle);
+        objects[handle] = object;
+        AABB box = object.boundingBox();
+        int offset = BOUNDS * handle;
+        boolean moved = false;
+        for (int axis = 0; axis < 3; axis++) {
+            Interval interval = box.axisInterval(axis);
+            moved |= bounds[offset + axis] != interval.min() || bounds[offset + axis + 3] != interval.max();
+        }
+        if (!moved) return;
+        removeLeaf(handle);
+        setBounds(handle, box);
+        insertLeaf(handle);
+    }
+
+    /**
+     * Returns the object of a handle
+     *
+     * @throws IllegalArgumentException if the handle does not belong to an object in the BVH
+     */
+    public Hittable object(int handle) {
+        checkHandle(handle);
+        return objects[handle];
+    }
+
+    /**
+     * Returns the number of objects
+     */
+    public int size() {
+        return objectCount;
+    }
+
+    /**
+     * Returns the number of edges on the longest path from the root to a leaf
+     */
+    public int height() {
+        return root == NONE ? 0 : heights[root];
+    }
+
+    /**
+     * Returns the bytes taken by the nodes, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        return (long) Double.BYTES * bounds.length + 4L * Integer.BYTES * parents.length
+                + (long) Integer.BYTES * objects.length;
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= objects.length || objects[handle] == null) {
+            throw new IllegalArgumentException("no object has the handle " + handle);
+        }
+    }
+
+    private int allocate() {
+        if (free == NONE) {
+            if (nodeCount == parents.length) {
+                int capacity = 2 * nodeCount;
+                bounds = Arrays.copyOf(bounds, BOUNDS * capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                lefts = Arrays.copyOf(lefts, capacity);
+                rights = Arrays.copyOf(rights, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                Arrays.fill(heights, nodeCount, capacity, -1);
+                objects = Arrays.copyOf(objects, capacity);
+            }
+            free = nodeCount++;
+            parents[free] = NONE;
+        }
+        int node = free;
+        free = parents[node];
+        parents[node] = NONE;
+        lefts[node] = NONE;
+        rights[node] = NONE;
+        heights[node] = 0;
+        return node;
+    }
+
+    private void release(int node) {
+        heights[node] = -1;
+        parents[node] = free;
+        free = node;
+    }
+
+    private void setBounds(int node, AABB box) {
+        for (int axis = 0; axis < 3; axis++) {
+            Interval interval = box.axisInterval(axis);
+            bounds[BOUNDS * node + axis] = interval.min();
+            bounds[BOUNDS * node + axis + 3] = interval.max();
+        }
+    }
+
+    /**
+     * Links a leaf into the tree as the sibling of the node where it costs the least
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NONE) {
+            root = leaf;
+            parents[leaf] = NONE;
+            return;
+        }
+
+        // walk down while putting the leaf into a child is cheaper than pairing it with the node; every node
+        // above the new pair grows by the leaf, which the cost of a child inherits
+        int sibling = root;
+        while (lefts[sibling] != NONE) {
+            double area = area(sibling);
+            double combined = unionArea(sibling, leaf);
+            double pairCost = 2 * combined;
+            double inherited = 2 * (combined - area);
+            double leftCost = descentCost(lefts[sibling], leaf) + inherited;
+            double rightCost = descentCost(rights[sibling], leaf) + inherited;
+            if (pairCost < leftCost && pairCost < rightCost) break;
+            sibling = leftCost < rightCost ? lefts[sibling] : rights[sibling];
+        }
+
+        int oldParent = parents[sibling];
+        int pair = allocate();
+        parents[pair] = oldParent;
+        lefts[pair] = sibling;
+        rights[pair] = leaf;
+        parents[sibling] = pair;
+        parents[leaf] = pair;
+        if (oldParent == NONE) {
+            root = pair;
+        } else if (lefts[oldParent] == sibling) {
+            lefts[oldParent] = pair;
+        } else {
+            rights[oldParent] = pair;
+        }
+        refitUpward(pair);
+    }
+
+    /**
+     * Returns the least area a leaf adds by going down into a node
+     */
+    private double descentCost(int node, int leaf) {
+        double combined = unionArea(node, leaf);
+        return lefts[node] == NONE ? combined : combined - area(node);
+    }
+
+    /**
+     * Unlinks a leaf from the tree, putting its sibling in the place of their parent
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NONE;
+            return;
+        }
+        int parent = parents[leaf];
+        int grandparent = parents[parent];
+        int sibling = lefts[parent] == leaf ? rights[parent] : lefts[parent];
+        parents[sibling] = grandparent;
+        if (grandparent == NONE) {
+            root = sibling;
+        } else {
+            if (lefts[grandparent] == parent) {
+                lefts[grandparent] = sibling;
+            } else {
+                rights[grandparent] = sibling;
+            }
+            refitUpward(grandparent);
+        }
+        release(parent);
+        parents[leaf] = NONE;
+    }
+
+    /**
+     * Rotates and refits a node and every node above it
+     */
+    private void refitUpward(int node) {
+        while (node != NONE) {
+            rotate(node);
+            refit(node);
+            node = parents[node];
+        }
+    }
+
+    private void refit(int node) {
+        int left = lefts[node];
+        int right = rights[node];
+        int offset = BOUNDS * node;
+        for (int bound = 0; bound < 3; bound++) {
+            bounds[offset + bound] = Math.min(bounds[BOUNDS * left + bound], bounds[BOUNDS * right + bound]);
+            bounds[offset + bound + 3] = Math.max(bounds[BOUNDS * left + bound + 3],
+                    bounds[BOUNDS * right + bound + 3]);
+        }
+        heights[node] = 1 + Math.max(heights[left], heights[right]);
+    }
+
+    /**
+     * Swaps a child of a node with a child of its other child if that shrinks the other child. The node keeps
+     * its objects, so only the other child changes.
+     */
+    private void rotate(int node) {
+        int left = lefts[node];
+        int right = rights[node];
+        // the best swap of a child with a grandchild on the other side, by the area it saves
+        int bestChild = NONE;
+        int bestGrandchild = NONE;
+        double bestSaving = 0;
+        for (int side = 0; side < 2; side++) {
+            int child = side == 0 ? left : right;
+            int other = side == 0 ? right : left;
+            if (lefts[other] == NONE) continue;
+            double area = area(other);
+            // the child takes the place of one grandchild next to the other
+            double saving = area - unionArea(child, rights[other]);
+            if (saving > bestSaving) {
+                bestSaving = saving;
+                bestChild = child;
+                bestGrandchild = lefts[other];
+            }
+            saving = area - unionArea(child, lefts[other]);
+            if (saving > bestSaving) {
+                bestSaving = saving;
+                bestChild = child;
+                bestGrandchild = rights[other];
+            }
+        }
+        if (bestChild == NONE) return;
+
+        int other = parents[bestGrandchild];
+        if (lefts[node] == bestChild) {
+            lefts[node] = bestGrandchild;
+        } else {
+            rights[node] = bestGrandchild;
+        }
+        if (lefts[other] == bestGrandchild) {
+            lefts[other] = bestChild;
+        } else {
+            rights[other] = bestChild;
+        }
+        parents[bestGrandchild] = node;
+        parents[bestChild] = other;
+        refit(other);
+    }
+
+    private double area(int node) {
+        return BVHBuilder.surfaceArea(bounds, BOUNDS * node);
+    }
+
+    /**
+     * Returns the surface area of the box around two nodes
+     */
+    private double unionArea(int a, int b) {
+        double dx = Math.max(bounds[BOUNDS * a + 3], bounds[BOUNDS * b + 3])
+                - Math.min(bounds[BOUNDS * a], bounds[BOUNDS * b]);
+        double dy = Math.max(bounds[BOUNDS * a + 4], bounds[BOUNDS * b + 4])
+                - Math.min(bounds[BOUNDS * a + 1], bounds[BOUNDS * b + 1]);
+        double dz = Math.max(bounds[BOUNDS * a + 5], bounds[BOUNDS * b + 5])
+                - Math.min(bounds[BOUNDS * a + 2], bounds[BOUNDS * b + 2]);
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        if (root == NONE) return null;
+        return new Traversal(ray).hit(root, heights[root], tMin, tMax);
+    }
+
+    private final class Traversal extends BVHTraversal {
+        Traversal(Ray ray) {
+            super(ray);
+        }
+
+        @Override
+        boolean isLeaf(int node) {
+            return lefts[node] == NONE;
+        }
+
+        @Override
+        HitRecord hitLeaf(int node, double tMin, double tMax) {
+            return objects[node].hit(ray, tMin, tMax);
+        }
+
+        @Override
+        int left(int node) {
+            return lefts[node];
+        }
+
+        @Override
+        int right(int node) {
+            return rights[node];
+        }
+
+        @Override
+        double enter(int node, double tMin, double tMax) {
+            return enter(bounds, BOUNDS * node, tMin, tMax);
+        }
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree, as {@link BVHBuilder#cost} does for trees
+     */
+    @Override
+    public double cost(double traversalCost) {
+        return root == NONE ? 0 : cost(root, traversalCost);
+    }
+
+    private double cost(int node, double traversalCost) {
+        if (lefts[node] == NONE) return BVHBuilder.cost(objects[node], traversalCost);
+        double area = area(node);
+        int left = lefts[node];
+        int right = rights[node];
+        if (area <= 0) return traversalCost + cost(left, traversalCost) + cost(right, traversalCost);
+        return traversalCost + area(left) / area * cost(left, traversalCost)
+                + area(right) / area * cost(right, traversalCost);
+    }
+
+    @Override
+    public AABB boundingBox() {
+        if (root == NONE) return new AABB();
+        int offset = BOUNDS * root;
+        return new AABB(new Interval(bounds[offset], bounds[offset + 3]),
+                new Interval(bounds[offset + 1], bounds[offset + 4]), new Interval(bounds[offset + 2],
+                bounds[offset + 5]));
+    }
+}
@@ -0,0 +1,271 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A bounding volume hierarchy compiled into primitive arrays.
+ * <p>
+ * The nodes are stored depth first, so the left child of an inner node directly follows it. Every node has six
+ * bounds, the minimum x, y, z followed by the maximum x, y, z, and two ints: an inner node stores the index of its
+ * right child and 0, a leaf stores the index of its first object and the number of its objects. A ray walks the
+ * tree with an explicit stack, visits the nearer child first and skips every node it enters beyond the closest
+ * hit found so far.
+ */
+public class FlatBVH implements Accelerator {
+    private static final int BOUNDS = 6;
+
+    private final double[] bounds;
+    private final int[] nodes;
+    private final Hittable[] objects;
+    // creates the objects that are not loaded yet, or null if every object is loaded
+    private final IntFunction<Hittable> loader;
+    private final int maxDepth;
+    private AABB boundingBox;
+
+    /**
+     * Compiles a tree of {@link BVHNode}s. Anything else in the tree, including lists, becomes a leaf whose
+     * objects are tested one by one.
+     */
+    public FlatBVH(Hittable root) {
+        var builder = new Builder();
+        builder.add(root, 0);
+        bounds = Arrays.copyOf(builder.bounds, BOUNDS * builder.count);
+        nodes = Arrays.copyOf(builder.nodes, 2 * builder.count);
+        objects = builder.objects.toArray(new Hittable[0]);
+        loader = null;
+        maxDepth = builder.maxDepth;
+        boundingBox = root.boundingBox();
+    }
+
+    /**
+     * Constructs a BVH from nodes read elsewhere, such as from a {@link BVHSnapshot}, whose objects are created
+     * when a ray first reaches them. The loader must return immutable objects, such as records, since threads may
+     * create and publish the same object at once.
+     *
+     * @param bounds      six bounds per node
+     * @param nodes       two ints per node
+     * @param objectCount the number of objects
+     * @param loader      creates the object of an index
+     * @param maxDepth    the depth of the deepest node
+     */
+    FlatBVH(double[] bounds, int[] nodes, int objectCount, IntFunction<Hittable> loader, int maxDepth) {
+        this.bounds = bounds;
+        this.nodes = nodes;
+        objects = new Hittable[objectCount];
+        this.loader = loader;
+        this.maxDepth = maxDepth;
+        boundingBox = new AABB(new Interval(bounds[0], bounds[3]), new Interval(bounds[1], bounds[4]),
+                new Interval(bounds[2], bounds[5]));
+    }
+
+    /**
+     * Collects the nodes in depth-first order
+     */
+    private static class Builder {
+        double[] bounds = new double[BOUNDS * 64];
+        int[] nodes = new int[2 * 64];
+        int count;
+        int maxDepth;
+        final List<Hittable> objects = new ArrayList<>();
+
+        void add(Hittable node, int depth) {
+            maxDepth = Math.max(maxDepth, depth);
+            int index = count++;
+            if (index * BOUNDS == bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            }
+            AABB box = node.boundingBox();
+            for (int axis = 0; axis < 3; axis++) {
+                Interval interval = box.axisInterval(axis);
+                bounds[BOUNDS * index + axis] = interval.min();
+                bounds[BOUNDS * index + axis + 3] = interval.max();
+            }
+
+            if (node instanceof BVHNode bvh && bvh.left() != bvh.right()) {
+                add(bvh.left(), depth + 1);
+                nodes[2 * index] = count;
+                nodes[2 * index + 1] = 0;
+                add(bvh.right(), depth + 1);
+                return;
+            }
+            nodes[2 * index] = objects.size();
+            if (node instanceof BVHNode bvh) {
+                // a leaf of one object is stored as both children
+                objects.add(bvh.left());
+            } else if (node instanceof HittableList list) {
+                list.forEach(objects::add);
+            } else {
+                objects.add(node);
+            }
+            nodes[2 * index + 1] = objects.size() - nodes[2 * index];
+        }
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int size() {
+        return nodes.length / 2;
+    }
+
+    /**
+     * Returns an object, creating it if it is not loaded yet
+     */
+    Hittable object(int index) {
+        Hittable object = objects[index];
+        if (object == null) {
+            // two threads may both create the object, which is fine as long as it is immutable
+            object = loader.apply(index);
+            objects[index] = object;
+        }
+        return object;
+    }
+
+    /**
+     * Returns one of the six bounds of a node
+     */
+    double bound(int node, int bound) {
+        return bounds[BOUNDS * node + bound];
+    }
+
+    /**
+     * Returns one of the two ints of a node
+     */
+    int node(int node, int field) {
+        return nodes[2 * node + field];
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the bytes taken by the nodes, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        return (long) Double.BYTES * bounds.length + (long) Integer.BYTES * nodes.length;
+    }
+
+    /**
+     * Refits the bounds of every node to the current boxes of its objects, for objects that moved since the BVH
+     * was built. The tree itself is kept, so it gets worse the farther the objects moved, as {@link BVHBuilder#cost}
+     * tells. No ray may be traced at the same time.
+     */
+    public void refit() {
+        // a child follows its parent in depth-first order, so going backwards refits the children first
+        for (int node = size() - 1; node >= 0; node--) {
+            int offset = BOUNDS * node;
+            int count = nodes[2 * node + 1];
+            if (count > 0) {
+                int first = nodes[2 * node];
+                for (int axis = 0; axis < 3; axis++) {
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int i = first; i < first + count; i++) {
+                        Interval interval = object(i).boundingBox().axisInterval(axis);
+                        min = Math.min(min, interval.min());
+                        max = Math.max(max, interval.max());
+                    }
+                    bounds[offset + axis] = min;
+                    bounds[offset + axis + 3] = max;
+                }
+                continue;
+            }
+            int left = offset + BOUNDS;
+            int right = BOUNDS * nodes[2 * node];
+            for (int bound = 0; bound < 3; bound++) {
+                bounds[offset + bound] = Math.min(bounds[left + bound], bounds[right + bound]);
+                bounds[offset + bound + 3] = Math.max(bounds[left + bound + 3], bounds[right + bound + 3]);
+            }
+        }
+        boundingBox = new AABB(new Interval(bounds[0], bounds[3]), new Interval(bounds[1], bounds[4]),
+                new Interval(bounds[2], bounds[5]));
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        return new Traversal(ray).hit(0, maxDepth, tMin, tMax);
+    }
+
+    private final class Traversal extends BVHTraversal {
+        Traversal(Ray ray) {
+            super(ray);
+        }
+
+        @Override
+        boolean isLeaf(int node) {
+            return nodes[2 * node + 1] > 0;
+        }
+
+        @Override
+        HitRecord hitLeaf(int node, double tMin, double tMax) {
+            HitRecord record = null;
+            int first = nodes[2 * node];
+            for (int i = first; i < first + nodes[2 * node + 1]; i++) {
+                HitRecord hit = object(i).hit(ray, tMin, tMax);
+                if (hit != null) {
+                    record = hit;
+                    tMax = hit.t();
+                }
+            }
+            return record;
+        }
+
+        @Override
+        int left(int node) {
+            return node + 1;
+        }
+
+        @Override
+        int right(int node) {
+            return nodes[2 * node];
+        }
+
+        @Override
+        double enter(int node, double tMin, double tMax) {
+            return enter(bounds, BOUNDS * node, tMin, tMax);
+        }
+    }
+
+    @Override
+    public double cost(double traversalCost) {
+        return cost(0, traversalCost);
+    }
+
+    /**
+     * Returns the expected cost of a ray through the subtree of a node, as {@link BVHBuilder#cost} does for trees
+     */
+    double cost(int node, double traversalCost) {
+        int count = nodes[2 * node + 1];
+        if (count > 0) {
+            double cost = 0;
+            for (int i = nodes[2 * node]; i < nodes[2 * node] + count; i++) {
+                cost += BVHBuilder.cost(object(i), traversalCost);
+            }
+            return cost;
+        }
+        double area = BVHBuilder.surfaceArea(bounds, BOUNDS * node);
+        int left = node + 1;
+        int right = nodes[2 * node];
+        if (area <= 0) return traversalCost + cost(left, traversalCost) + cost(right, traversalCost);
+        return traversalCost
+                + BVHBuilder.surfaceArea(bounds, BOUNDS * left) / area * cost(left, traversalCost)
+                + BVHBuilder.surfaceArea(bounds, BOUNDS * right) / area * cost(right, traversalCost);
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return boundingBox;
+    }
+}
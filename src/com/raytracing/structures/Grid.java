@@ -0,0 +1,373 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.Ray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A grid of equal cells over the objects, which a ray walks through cell by cell in the order it enters them with a
+ * 3D digital differential analyzer (3D-DDA).
+ * <p>
+ * The grid has about {@link #CELLS_PER_OBJECT} cells per object, as many along every axis as the extent of the
+ * objects along it allows for cells that are close to cubes. Every cell lists the objects whose boxes overlap it.
+ * A ray tests the objects of every cell it enters and stops at the first cell that ends beyond its closest hit, so
+ * objects behind that cell are never tested. An object in several cells is tested in each of them again, which
+ * costs less than keeping track of the tested objects for the small objects a grid suits.
+ * <p>
+ * Where objects cluster, a cell that still lists more than {@link #MAX_CELL_OBJECTS} of them gets a grid of its own
+ * over its part of space, down to {@link #MAX_LEVELS} levels, which makes the grid hierarchical.
+ */
+public final class Grid implements Accelerator {
+    static final double CELLS_PER_OBJECT = 2;
+    static final int MAX_RESOLUTION = 128;
+    static final int MAX_CELL_OBJECTS = 12;
+    static final int MAX_LEVELS = 2;
+    // a crowded cell only gets a grid if its objects are listed in at most this many cells of it on average,
+    // since large objects would fill every cell of it
+    static final int MAX_NESTED_CELLS_PER_OBJECT = 8;
+
+    // the objects of the cells, followed by the grids of crowded cells
+    private final Hittable[] items;
+    // minimum x, y, z followed by maximum x, y, z
+    private final double[] bounds;
+    private final int[] resolution = new int[3];
+    private final double[] cellSize = new double[3];
+    private final double[] inverseCellSize = new double[3];
+    // the items of cell i are cellItems[cellStarts[i]] up to cellItems[cellStarts[i + 1]]
+    private final int[] cellStarts;
+    private final int[] cellItems;
+    private final int firstGrid;
+    private final int nestedGrids;
+
+    /**
+     * Builds a grid over the objects
+     */
+    public Grid(List<Hittable> objects) {
+        this(objects, null, 1);
+    }
+
+    /**
+     * @param space the part of space the grid covers, or null for the box around the objects
+     * @param level the level of the grid, where the outermost grid is level 1
+     */
+    private Grid(List<Hittable> objects, double[] space, int level) {
+        if (objects.isEmpty()) throw new IllegalArgumentException("cannot build a grid without objects");
+        int n = objects.size();
+        double[] boxes = boxes(objects);
+        bounds = space != null ? space : union(boxes);
+        resolution(bounds, n, CELLS_PER_OBJECT, resolution);
+        for (int axis = 0; axis < 3; axis++) {
+            cellSize[axis] = (bounds[axis + 3] - bounds[axis]) / resolution[axis];
+            inverseCellSize[axis] = cellSize[axis] > 0 ? 1 / cellSize[axis] : 0;
+        }
+
+        // count the objects of every cell, then list them
+        int cells = resolution[0] * resolution[1] * resolution[2];
+        int[] counts = new int[cells + 1];
+        int[] range = new int[6];
+        for (int i = 0; i < n; i++) {
+            cellRange(boxes, i, range);
+            for (int z = range[2]; z <= range[5]; z++) {
+                for (int y = range[1]; y <= range[4]; y++) {
+                    for (int x = range[0]; x <= range[3]; x++) {
+                        counts[cell(x, y, z)]++;
+                    }
+                }
+            }
+        }
+        int[] starts = new int[cells + 1];
+        for (int cell = 0; cell < cells; cell++) {
+            starts[cell + 1] = starts[cell] + counts[cell];
+        }
+        int[] listed = new int[starts[cells]];
+        int[] next = Arrays.copyOf(starts, cells);
+        for (int i = 0; i < n; i++) {
+            cellRange(boxes, i, range);
+            for (int z = range[2]; z <= range[5]; z++) {
+                for (int y = range[1]; y <= range[4]; y++) {
+                    for (int x = range[0]; x <= range[3]; x++) {
+                        listed[next[cell(x, y, z)]++] = i;
+                    }
+                }
+            }
+        }
+
+        // crowded cells become grids of their own, listed in place of their objects
+        var itemList = new ArrayList<>(objects);
+        int nested = 0;
+        if (level < MAX_LEVELS) {
+            int[] compactStarts = new int[cells + 1];
+            int[] compact = new int[listed.length];
+            int size = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                compactStarts[cell] = size;
+                int count = starts[cell + 1] - starts[cell];
+                // a cell every object overlaps would only get the same grid again
+                double[] cellSpace = cellBounds(cell);
+                if (count > MAX_CELL_OBJECTS && count < n && nestedReferences(boxes, listed, starts[cell],
+                        starts[cell + 1], cellSpace) <= (long) MAX_NESTED_CELLS_PER_OBJECT * count) {
+                    var inside = new ArrayList<Hittable>(count);
+                    for (int k = starts[cell]; k < starts[cell + 1]; k++) {
+                        inside.add(objects.get(listed[k]));
+                    }
+                    var grid = new Grid(inside, cellSpace, level + 1);
+                    nested += 1 + grid.nestedGrids;
+                    compact[size++] = itemList.size();
+                    itemList.add(grid);
+                } else {
+                    System.arraycopy(listed, starts[cell], compact, size, count);
+                    size += count;
+                }
+            }
+            compactStarts[cells] = size;
+            starts = compactStarts;
+            listed = Arrays.copyOf(compact, size);
+        }
+        items = itemList.toArray(new Hittable[0]);
+        cellStarts = starts;
+        cellItems = listed;
+        firstGrid = n;
+        nestedGrids = nested;
+    }
+
+    /**
+     * Returns how many cells of a grid over a part of space would list the objects all together
+     *
+     * @param listed the objects, from first up to end
+     */
+    private static long nestedReferences(double[] boxes, int[] listed, int first, int end, double[] space) {
+        int[] cells = new int[3];
+        resolution(space, end - first, CELLS_PER_OBJECT, cells);
+        long references = 0;
+        for (int k = first; k < end; k++) {
+            long product = 1;
+            for (int axis = 0; axis < 3; axis++) {
+                double scale = cells[axis] / (space[axis + 3] - space[axis]);
+                double lower = Math.max(space[axis], boxes[6 * listed[k] + axis]);
+                double upper = Math.min(space[axis + 3], boxes[6 * listed[k] + axis + 3]);
+                int span = (int) Math.floor((upper - space[axis]) * scale)
+                        - (int) Math.floor((lower - space[axis]) * scale);
+                product *= Math.min(cells[axis], Math.max(0, span) + 1);
+            }
+            references += product;
+        }
+        return references;
+    }
+
+    /**
+     * Sets the number of cells along every axis of a box for about a number of cells per object, in proportion to
+     * the extents of the box, with at least one and at most {@link #MAX_RESOLUTION} cells per axis
+     */
+    static void resolution(double[] bounds, int objects, double cellsPerObject, int[] resolution) {
+        double longest = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            longest = Math.max(longest, bounds[axis + 3] - bounds[axis]);
+        }
+        // a flat box still gets a thin layer of cells
+        double minimum = Math.max(longest * 1e-3, Double.MIN_NORMAL);
+        double volume = 1;
+        for (int axis = 0; axis < 3; axis++) {
+            volume *= Math.max(bounds[axis + 3] - bounds[axis], minimum);
+        }
+        double cellsPerUnit = Math.cbrt(cellsPerObject * objects / volume);
+        for (int axis = 0; axis < 3; axis++) {
+            long cells = Math.round(Math.max(bounds[axis + 3] - bounds[axis], minimum) * cellsPerUnit);
+            resolution[axis] = (int) Math.max(1, Math.min(MAX_RESOLUTION, cells));
+        }
+    }
+
+    /**
+     * Returns the bounds of the objects, six values per object
+     */
+    static double[] boxes(List<Hittable> objects) {
+        double[] boxes = new double[6 * objects.size()];
+        for (int i = 0; i < objects.size(); i++) {
+            AABB box = objects.get(i).boundingBox();
+            for (int axis = 0; axis < 3; axis++) {
+                Interval interval = box.axisInterval(axis);
+                boxes[6 * i + axis] = interval.min();
+                boxes[6 * i + axis + 3] = interval.max();
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Returns the bounds around all boxes
+     */
+    static double[] union(double[] boxes) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = 0; i < boxes.length; i += 6) {
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], boxes[i + axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], boxes[i + axis + 3]);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Sets the first and the last cell along every axis that the box of an object overlaps, clamped to the grid
+     */
+    private void cellRange(double[] boxes, int object, int[] range) {
+        for (int axis = 0; axis < 3; axis++) {
+            range[axis] = cellIndex(boxes[6 * object + axis], axis);
+            range[axis + 3] = cellIndex(boxes[6 * object + axis + 3], axis);
+        }
+    }
+
+    private int cellIndex(double position, int axis) {
+        int index = (int) Math.floor((position - bounds[axis]) * inverseCellSize[axis]);
+        return Math.max(0, Math.min(resolution[axis] - 1, index));
+    }
+
+    private int cell(int x, int y, int z) {
+        return (z * resolution[1] + y) * resolution[0] + x;
+    }
+
+    private double[] cellBounds(int cell) {
+        int[] index = {cell % resolution[0], cell / resolution[0] % resolution[1],
+                cell / (resolution[0] * resolution[1])};
+        double[] box = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = bounds[axis] + index[axis] * cellSize[axis];
+            box[axis + 3] = index[axis] == resolution[axis] - 1 ? bounds[axis + 3] : box[axis] + cellSize[axis];
+        }
+        return box;
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        double[] origin = {ray.origin().x(), ray.origin().y(), ray.origin().z()};
+        double[] direction = {ray.direction().x(), ray.direction().y(), ray.direction().z()};
+
+        // the range of t inside the grid
+        double tEnter = tMin;
+        double tExit = tMax;
+        for (int axis = 0; axis < 3; axis++) {
+            double inverse = 1 / direction[axis];
+            double t0 = (bounds[axis] - origin[axis]) * inverse;
+            double t1 = (bounds[axis + 3] - origin[axis]) * inverse;
+            if (inverse < 0) {
+                double swap = t0;
+                t0 = t1;
+                t1 = swap;
+            }
+            // written so that a NaN from a ray in the plane of a bound leaves the range unchanged
+            if (t0 > tEnter) tEnter = t0;
+            if (t1 < tExit) tExit = t1;
+        }
+        if (!(tEnter <= tExit)) return null;
+
+        // the cell where the ray enters, and for every axis the t of the next cell boundary, the t from one
+        // boundary to the next and the direction to step in
+        int[] index = new int[3];
+        double[] tNext = new double[3];
+        double[] tDelta = new double[3];
+        int[] step = new int[3];
+        for (int axis = 0; axis < 3; axis++) {
+            index[axis] = cellIndex(origin[axis] + tEnter * direction[axis], axis);
+            if (direction[axis] > 0) {
+                step[axis] = 1;
+                tNext[axis] = (bounds[axis] + (index[axis] + 1) * cellSize[axis] - origin[axis]) / direction[axis];
+                tDelta[axis] = cellSize[axis] / direction[axis];
+            } else if (direction[axis] < 0) {
+                step[axis] = -1;
+                tNext[axis] = (bounds[axis] + index[axis] * cellSize[axis] - origin[axis]) / direction[axis];
+                tDelta[axis] = -cellSize[axis] / direction[axis];
+            } else {
+                tNext[axis] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        double closest = tMax;
+        HitRecord record = null;
+        while (true) {
+            int cell = cell(index[0], index[1], index[2]);
+            for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                HitRecord hit = items[cellItems[k]].hit(ray, tMin, closest);
+                if (hit != null) {
+                    record = hit;
+                    closest = hit.t();
+                }
+            }
+
+            // step to the next cell along the axis whose boundary comes first
+            int axis = tNext[0] < tNext[1] ? (tNext[0] < tNext[2] ? 0 : 2) : (tNext[1] < tNext[2] ? 1 : 2);
+            double cellExit = Math.min(tNext[axis], tExit);
+            // no cell further along holds a hit before the closest one
+            if (closest <= cellExit || tNext[axis] > tExit) break;
+            index[axis] += step[axis];
+            if (index[axis] < 0 || index[axis] >= resolution[axis]) break;
+            tNext[axis] += tDelta[axis];
+        }
+        return record;
+    }
+
+    /**
+     * Returns the number of cells, counting the cells of nested grids
+     */
+    public int cells() {
+        int cells = resolution[0] * resolution[1] * resolution[2];
+        for (int i = firstGrid; i < items.length; i++) {
+            cells += ((Grid) items[i]).cells();
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the number of grids inside cells of this grid, at every level
+     */
+    public int nestedGrids() {
+        return nestedGrids;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("grid of %d cells with %d grids in crowded cells", cells(), nestedGrids);
+    }
+
+    /**
+     * Returns the expected cost of a ray through the grid, as {@link BVHBuilder#cost} does for trees: a ray passes
+     * through a cell by the ratio of their surface areas and pays a step and the tests of the items of every cell
+     * it passes through, where a nested grid costs what a ray through it costs
+     */
+    @Override
+    public double cost(double traversalCost) {
+        double area = BVHBuilder.surfaceArea(bounds, 0);
+        double cost = 0;
+        for (int cell = 0; cell < cellStarts.length - 1; cell++) {
+            double cellCost = traversalCost;
+            for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                cellCost += BVHBuilder.cost(items[cellItems[k]], traversalCost);
+            }
+            cost += area > 0 ? BVHBuilder.surfaceArea(cellBounds(cell), 0) / area * cellCost : cellCost;
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the bytes taken by the cells and their lists, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        long bytes = (long) Integer.BYTES * (cellStarts.length + cellItems.length)
+                + (long) Long.BYTES * items.length;
+        for (int i = firstGrid; i < items.length; i++) {
+            bytes += ((Grid) items[i]).footprint();
+        }
+        return bytes;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return new AABB(new Interval(bounds[0], bounds[3]), new Interval(bounds[1], bounds[4]),
+                new Interval(bounds[2], bounds[5]));
+    }
+}
@@ -0,0 +1,327 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.Ray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A kd-tree over the objects, split by the surface area heuristic (SAH).
+ * <p>
+ * Unlike a node of a BVH, a node of a kd-tree splits space by a plane, so its children never overlap and a ray
+ * visits the leaves it passes through front to back; an object whose box crosses the plane is listed on both
+ * sides. Planes are tried at every side of every box along all three axes, with the cost model of
+ * {@link BVHBuilder}, except that a split that leaves one side empty costs {@link #EMPTY_BONUS} less, which cuts
+ * empty space away early. A node becomes a leaf when no split pays off a few times in a row or the tree gets
+ * {@code 8 + 1.3 log2(n)} levels deep.
+ * <p>
+ * Nodes are stored in arrays, the child below the plane of a node right after the node.
+ */
+public final class KdTree implements Accelerator {
+    static final double EMPTY_BONUS = 0.5;
+    // splits that cost more than their node are tried this many times along a path before giving up
+    static final int MAX_BAD_SPLITS = 3;
+    private static final int LEAF = 3;
+
+    private final Hittable[] objects;
+    private final double[] bounds;
+    private final double traversalCost;
+    private final int maxDepth;
+
+    // per node the axis of its plane in the lowest two bits, or LEAF, and above them the index of the child above
+    // the plane, or for a leaf where its list starts in leafObjects; the list is the number of objects followed by
+    // the objects
+    private int[] nodeInfo = new int[64];
+    private double[] splits = new double[64];
+    private int nodes;
+    private int[] leafObjects = new int[64];
+    private int listed;
+    private int references;
+    private int depth;
+
+    // bounds of the objects while building, six values per object
+    private double[] boxes;
+
+    /**
+     * Builds a kd-tree over the objects with the traversal cost of {@link BVHBuilder}
+     */
+    public KdTree(List<Hittable> objects) {
+        this(objects, BVHBuilder.DEFAULT_TRAVERSAL_COST);
+    }
+
+    /**
+     * @param traversalCost the cost of visiting a node relative to the cost of one intersection test
+     */
+    public KdTree(List<Hittable> objects, double traversalCost) {
+        if (objects.isEmpty()) throw new IllegalArgumentException("cannot build a kd-tree without objects");
+        if (traversalCost < 0) throw new IllegalArgumentException("need a non-negative traversal cost");
+        this.objects = objects.toArray(new Hittable[0]);
+        this.traversalCost = traversalCost;
+        int n = objects.size();
+        maxDepth = (int) Math.round(8 + 1.3 * (31 - Integer.numberOfLeadingZeros(n)));
+        boxes = Grid.boxes(objects);
+        bounds = Grid.union(boxes);
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) {
+            all[i] = i;
+        }
+        try {
+            build(all, bounds.clone(), 0, 0);
+        } finally {
+            boxes = null;
+        }
+        nodeInfo = Arrays.copyOf(nodeInfo, nodes);
+        splits = Arrays.copyOf(splits, nodes);
+        leafObjects = Arrays.copyOf(leafObjects, listed);
+    }
+
+    private void build(int[] list, double[] nodeBounds, int level, int badSplits) {
+        int node = newNode();
+        depth = Math.max(depth, level + 1);
+        int n = list.length;
+        if (n <= 1 || level >= maxDepth) {
+            leaf(node, list);
+            return;
+        }
+
+        // find the cheapest plane along any axis by sweeping over the sorted lower and upper sides of the boxes
+        double area = BVHBuilder.surfaceArea(nodeBounds, 0);
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestAxis = -1;
+        double bestSplit = 0;
+        double[] lower = new double[n];
+        double[] upper = new double[n];
+        for (int axis = 0; axis < 3; axis++) {
+            double min = nodeBounds[axis];
+            double max = nodeBounds[axis + 3];
+            if (!(max > min)) continue;
+            for (int i = 0; i < n; i++) {
+                lower[i] = boxes[6 * list[i] + axis];
+                upper[i] = boxes[6 * list[i] + axis + 3];
+            }
+            Arrays.sort(lower);
+            Arrays.sort(upper);
+            // the areas of the children only change along this axis
+            int other1 = (axis + 1) % 3;
+            int other2 = (axis + 2) % 3;
+            double d1 = nodeBounds[other1 + 3] - nodeBounds[other1];
+            double d2 = nodeBounds[other2 + 3] - nodeBounds[other2];
+            int started = 0;
+            int ended = 0;
+            while (started < n || ended < n) {
+                // the next side of a box in order, where every plane is tried once
+                double plane = started < n && lower[started] <= upper[ended] ? lower[started] : upper[ended];
+                while (started < n && lower[started] < plane) started++;
+                while (ended < n && upper[ended] <= plane) ended++;
+                // boxes that start before the plane go below, boxes that end after it go above
+                int below = started;
+                int above = n - ended;
+                while (started < n && lower[started] == plane) started++;
+                if (plane > min && plane < max) {
+                    double belowArea = 2 * (d1 * d2 + (plane - min) * (d1 + d2));
+                    double aboveArea = 2 * (d1 * d2 + (max - plane) * (d1 + d2));
+                    double bonus = below == 0 || above == 0 ? EMPTY_BONUS : 0;
+                    double cost = traversalCost
+                            + (1 - bonus) * (belowArea * below + aboveArea * above) / area;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = plane;
+                    }
+                }
+            }
+        }
+
+        if (bestCost > n) badSplits++;
+        if (bestAxis < 0 || badSplits > MAX_BAD_SPLITS || (bestCost > 4 * n && n < 16)) {
+            leaf(node, list);
+            return;
+        }
+
+        int[] below = new int[n];
+        int[] above = new int[n];
+        int belowCount = 0;
+        int aboveCount = 0;
+        for (int object : list) {
+            double min = boxes[6 * object + bestAxis];
+            double max = boxes[6 * object + bestAxis + 3];
+            // a box flat in the plane goes below rather than nowhere
+            if (min < bestSplit || max <= bestSplit) below[belowCount++] = object;
+            if (max > bestSplit) above[aboveCount++] = object;
+        }
+        double[] belowBounds = nodeBounds.clone();
+        belowBounds[bestAxis + 3] = bestSplit;
+        double[] aboveBounds = nodeBounds.clone();
+        aboveBounds[bestAxis] = bestSplit;
+
+        splits[node] = bestSplit;
+        build(Arrays.copyOf(below, belowCount), belowBounds, level + 1, badSplits);
+        nodeInfo[node] = nodes << 2 | bestAxis;
+        build(Arrays.copyOf(above, aboveCount), aboveBounds, level + 1, badSplits);
+    }
+
+    private int newNode() {
+        if (nodes == nodeInfo.length) {
+            nodeInfo = Arrays.copyOf(nodeInfo, 2 * nodes);
+            splits = Arrays.copyOf(splits, 2 * nodes);
+        }
+        return nodes++;
+    }
+
+    private void leaf(int node, int[] list) {
+        nodeInfo[node] = listed << 2 | LEAF;
+        if (listed + 1 + list.length > leafObjects.length) {
+            leafObjects = Arrays.copyOf(leafObjects, Math.max(2 * leafObjects.length, listed + 1 + list.length));
+        }
+        leafObjects[listed] = list.length;
+        System.arraycopy(list, 0, leafObjects, listed + 1, list.length);
+        listed += 1 + list.length;
+        references += list.length;
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        double[] origin = {ray.origin().x(), ray.origin().y(), ray.origin().z()};
+        double[] inverse = {1 / ray.direction().x(), 1 / ray.direction().y(), 1 / ray.direction().z()};
+
+        // the range of t inside the tree
+        double tEnter = tMin;
+        double tExit = tMax;
+        for (int axis = 0; axis < 3; axis++) {
+            double t0 = (bounds[axis] - origin[axis]) * inverse[axis];
+            double t1 = (bounds[axis + 3] - origin[axis]) * inverse[axis];
+            if (inverse[axis] < 0) {
+                double swap = t0;
+                t0 = t1;
+                t1 = swap;
+            }
+            // written so that a NaN from a ray in the plane of a bound leaves the range unchanged
+            if (t0 > tEnter) tEnter = t0;
+            if (t1 < tExit) tExit = t1;
+        }
+        if (!(tEnter <= tExit)) return null;
+
+        // nodes still to visit with their ranges of t, the nearest on top
+        int[] stack = new int[depth + 1];
+        double[] enters = new double[depth + 1];
+        double[] exits = new double[depth + 1];
+        int size = 0;
+        int node = 0;
+        double closest = tMax;
+        HitRecord record = null;
+        while (true) {
+            if (tEnter < closest) {
+                int info = nodeInfo[node];
+                int axis = info & 3;
+                if (axis != LEAF) {
+                    double split = splits[node];
+                    double tPlane = (split - origin[axis]) * inverse[axis];
+                    // the child the ray starts in is the near one
+                    boolean belowFirst = origin[axis] < split || (origin[axis] == split && inverse[axis] <= 0);
+                    int near = belowFirst ? node + 1 : info >>> 2;
+                    int far = belowFirst ? info >>> 2 : node + 1;
+                    if (tPlane > tExit || tPlane <= 0 || Double.isNaN(tPlane)) {
+                        node = near;
+                    } else if (tPlane < tEnter) {
+                        node = far;
+                    } else {
+                        stack[size] = far;
+                        enters[size] = tPlane;
+                        exits[size++] = tExit;
+                        node = near;
+                        tExit = tPlane;
+                    }
+                    continue;
+                }
+                int list = info >>> 2;
+                for (int k = list + 1; k <= list + leafObjects[list]; k++) {
+                    HitRecord hit = objects[leafObjects[k]].hit(ray, tMin, closest);
+                    if (hit != null) {
+                        record = hit;
+                        closest = hit.t();
+                    }
+                }
+            }
+            if (size == 0) break;
+            node = stack[--size];
+            tEnter = enters[size];
+            tExit = exits[size];
+        }
+        return record;
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int size() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of levels
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of objects in all leaves, counting an object once for every leaf it is in
+     */
+    public int references() {
+        return references;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("kd-tree of %d nodes in %d levels with %d entries in leaves", nodes, depth, references);
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree, as {@link BVHBuilder#cost} does for BVHs, with the box
+     * of a node cut by the planes above it. An object in several leaves is counted in each.
+     */
+    @Override
+    public double cost(double traversalCost) {
+        return cost(0, bounds.clone(), traversalCost);
+    }
+
+    private double cost(int node, double[] box, double traversalCost) {
+        int info = nodeInfo[node];
+        int axis = info & 3;
+        if (axis == LEAF) {
+            int list = info >>> 2;
+            double cost = 0;
+            for (int k = list + 1; k <= list + leafObjects[list]; k++) {
+                cost += BVHBuilder.cost(objects[leafObjects[k]], traversalCost);
+            }
+            return cost;
+        }
+        double area = BVHBuilder.surfaceArea(box, 0);
+        double[] below = box.clone();
+        below[axis + 3] = splits[node];
+        double[] above = box.clone();
+        above[axis] = splits[node];
+        double belowCost = cost(node + 1, below, traversalCost);
+        double aboveCost = cost(info >>> 2, above, traversalCost);
+        if (area <= 0) return traversalCost + belowCost + aboveCost;
+        return traversalCost + BVHBuilder.surfaceArea(below, 0) / area * belowCost
+                + BVHBuilder.surfaceArea(above, 0) / area * aboveCost;
+    }
+
+    /**
+     * Returns the bytes taken by the nodes and the lists of the leaves, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        return (long) nodes * (Integer.BYTES + Double.BYTES) + (long) listed * Integer.BYTES;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return new AABB(new Interval(bounds[0], bounds[3]), new Interval(bounds[1], bounds[4]),
+                new Interval(bounds[2], bounds[5]));
+    }
+}
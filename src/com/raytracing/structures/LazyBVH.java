@@ -0,0 +1,239 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounding volume hierarchy that splits a node only when a ray first enters it, so that a render spends no time
+ * on the parts of the scene its rays never reach.
+ * <p>
+ * A node starts as a range of the objects with its box. The first ray that enters a node splits its range in place
+ * by the surface area heuristic and publishes the two children, or marks the node as a leaf, as {@link BVHBuilder}
+ * would have decided. Every node has its own lock, so threads only wait for each other when they enter the same
+ * unsplit node at once; once a node is split, rays pass through it without locking. Only the bounds of the objects
+ * are computed up front, so the first ray is traced right after the objects are made.
+ */
+public class LazyBVH implements Accelerator {
+    // larger nodes are only binned along the longest axis of their centroids, which saves two thirds of the work
+    // of the first rays at little cost to the tree
+    private static final int SINGLE_AXIS_THRESHOLD = 4096;
+
+    private final Hittable[] objects;
+    // the bounds of the objects, whose order is partitioned node by node into the order of the leaves
+    private final BVHBuilder.ObjectBounds bounds;
+    private final int[] order;
+    private final int maxLeafSize;
+    private final Node root;
+    private final AABB boundingBox;
+    private final AtomicInteger splits = new AtomicInteger();
+
+    /**
+     * A range of the objects, which is split into two children when a ray first enters it
+     */
+    private static final class Node {
+        final int start;
+        final int end;
+        // minimum x, y, z followed by maximum x, y, z
+        final double[] box;
+        // published once a ray entered the node, null before
+        volatile Children children;
+
+        Node(int start, int end, double[] box) {
+            this.start = start;
+            this.end = end;
+            this.box = box;
+        }
+    }
+
+    private record Children(Node left, Node right) {
+    }
+
+    // published for nodes found to be leaves, so that no ray has to decide again
+    private static final Children LEAF = new Children(null, null);
+
+    /**
+     * Constructs a lazy BVH with at most 4 objects per leaf
+     */
+    public LazyBVH(HittableList list) {
+        this(list.objects(), BVHBuilder.DEFAULT_MAX_LEAF_SIZE);
+    }
+
+    /**
+     * Constructs a lazy BVH over the objects. The list itself is not changed.
+     *
+     * @param maxLeafSize the maximum number of objects in a leaf
+     */
+    public LazyBVH(List<Hittable> objects, int maxLeafSize) {
+        if (objects.isEmpty()) {
+            throw new IllegalArgumentException("cannot build a BVH without objects");
+        }
+        if (maxLeafSize < 1) {
+            throw new IllegalArgumentException("need at least 1 object per leaf");
+        }
+        int n = objects.size();
+        this.objects = objects.toArray(new Hittable[0]);
+        this.maxLeafSize = maxLeafSize;
+        bounds = new BVHBuilder.ObjectBounds(objects, true);
+        order = bounds.order;
+        root = new Node(0, n, bounds.bounds(0, n));
+        boundingBox = new AABB(new Interval(root.box[0], root.box[3]), new Interval(root.box[1], root.box[4]),
+                new Interval(root.box[2], root.box[5]));
+    }
+
+    /**
+     * Returns the number of nodes split so far
+     */
+    public int splits() {
+        return splits.get();
+    }
+
+    /**
+     * Returns the children of a node, splitting it first if no ray has entered it before
+     *
+     * @return the children, or null if the node is a leaf
+     */
+    private Children children(Node node) {
+        Children children = node.children;
+        if (children == null && node.end - node.start > 1) {
+            synchronized (node) {
+                // another thread may have split the node while this one waited
+                if (node.children == null) {
+                    node.children = split(node);
+                    if (node.children != LEAF) splits.incrementAndGet();
+                }
+                children = node.children;
+            }
+        }
+        return children == LEAF ? null : children;
+    }
+
+    /**
+     * Partitions the range of a node by the cheapest of the planes between 16 bins of centroids along each axis
+     *
+     * @return the children, or {@link #LEAF} if testing every object of a small enough node is cheaper
+     */
+    private Children split(Node node) {
+        int start = node.start;
+        int end = node.end;
+        var split = bounds.split(start, end, node.box, new BVHBuilder.Bins(BVHBuilder.DEFAULT_BINS, 1),
+                BVHBuilder.DEFAULT_TRAVERSAL_COST, end - start >= SINGLE_AXIS_THRESHOLD);
+        if (end - start <= maxLeafSize && !(split.cost() < end - start)) {
+            return LEAF;
+        }
+        int mid = bounds.partition(start, end, split);
+        return new Children(new Node(start, mid, bounds.bounds(start, mid)),
+                new Node(mid, end, bounds.bounds(mid, end)));
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        var slabRay = SlabTester.SlabRay.of(ray);
+        double closest = tMax;
+        HitRecord record = null;
+        double entry = enter(root.box, slabRay, tMin, closest);
+        if (entry == Double.POSITIVE_INFINITY) return null;
+
+        // the depth is not known before the tree is split, so the stack grows as needed
+        Node[] stack = new Node[64];
+        double[] entries = new double[64];
+        int size = 0;
+        stack[size] = root;
+        entries[size++] = entry;
+        while (size > 0) {
+            Node node = stack[--size];
+            if (entries[size] >= closest) continue;
+
+            Children children = children(node);
+            if (children == null) {
+                for (int i = node.start; i < node.end; i++) {
+                    HitRecord hit = objects[order[i]].hit(ray, tMin, closest);
+                    if (hit != null) {
+                        record = hit;
+                        closest = hit.t();
+                    }
+                }
+                continue;
+            }
+
+            if (size + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                entries = Arrays.copyOf(entries, 2 * entries.length);
+            }
+            double leftEntry = enter(children.left.box, slabRay, tMin, closest);
+            double rightEntry = enter(children.right.box, slabRay, tMin, closest);
+            // push the farther child first, so the nearer one is visited next
+            Node near = leftEntry <= rightEntry ? children.left : children.right;
+            Node far = near == children.left ? children.right : children.left;
+            double nearEntry = Math.min(leftEntry, rightEntry);
+            double farEntry = Math.max(leftEntry, rightEntry);
+            if (farEntry != Double.POSITIVE_INFINITY) {
+                stack[size] = far;
+                entries[size++] = farEntry;
+            }
+            if (nearEntry != Double.POSITIVE_INFINITY) {
+                stack[size] = near;
+                entries[size++] = nearEntry;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Intersects the ray with a box
+     *
+     * @return the t where the ray enters the box, or positive infinity if it misses the box within the range
+     */
+    private static double enter(double[] box, SlabTester.SlabRay ray, double tMin, double tMax) {
+        double tNear = Math.max(tMin, Math.max((box[ray.nearX()] - ray.ox()) * ray.ix(),
+                Math.max((box[ray.nearY()] - ray.oy()) * ray.iy(), (box[ray.nearZ()] - ray.oz()) * ray.iz())));
+        double tFar = Math.min(tMax, Math.min((box[3 - ray.nearX()] - ray.ox()) * ray.ix(),
+                Math.min((box[5 - ray.nearY()] - ray.oy()) * ray.iy(), (box[7 - ray.nearZ()] - ray.oz()) * ray.iz())));
+        return tNear < tFar ? tNear : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree, as {@link BVHBuilder#cost} does for trees. This splits
+     * every node that is not split yet.
+     */
+    @Override
+    public double cost(double traversalCost) {
+        return cost(root, traversalCost);
+    }
+
+    private double cost(Node node, double traversalCost) {
+        Children children = children(node);
+        if (children == null) {
+            double cost = 0;
+            for (int i = node.start; i < node.end; i++) {
+                cost += BVHBuilder.cost(objects[order[i]], traversalCost);
+            }
+            return cost;
+        }
+        double area = BVHBuilder.surfaceArea(node.box, 0);
+        double leftCost = cost(children.left, traversalCost);
+        double rightCost = cost(children.right, traversalCost);
+        if (area <= 0) return traversalCost + leftCost + rightCost;
+        return traversalCost + BVHBuilder.surfaceArea(children.left.box, 0) / area * leftCost
+                + BVHBuilder.surfaceArea(children.right.box, 0) / area * rightCost;
+    }
+
+    /**
+     * Returns -1, since the nodes are objects of their own
+     */
+    @Override
+    public long footprint() {
+        return -1;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return boundingBox;
+    }
+}
@@ -0,0 +1,243 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a linear bounding volume hierarchy (LBVH), the fastest way to build a BVH over a huge number of objects.
+ * <p>
+ * The centroid of every object is quantized to 21 bits per axis within the bounding cube of all centroids, and
+ * the bits are interleaved into a 63-bit Morton code, so that sorting the objects by their codes lays them out
+ * along a Z-order curve. After a radix sort, each node splits its range where the highest bit in which its codes differ
+ * turns from 0 to 1, which halves the space the node covers. Nothing is evaluated per split, so the tree is
+ * usually traversed more slowly than one built by {@link BVHBuilder}, but it is built several times faster.
+ * <p>
+ * Codes are computed and subtrees built in parallel; the tree is the same no matter how many threads build it.
+ */
+public class LinearBVHBuilder {
+    public static final int DEFAULT_MAX_LEAF_SIZE = 1;
+    private static final int BITS_PER_AXIS = 21;
+    private static final int RADIX_BITS = 8;
+
+    private final int maxLeafSize;
+
+    // bounds of the objects, three values per object, and the objects in order of their codes
+    private List<Hittable> objects;
+    private double[] lower;
+    private double[] upper;
+    private long[] codes;
+    private int[] order;
+
+    /**
+     * Constructs a builder with one object per leaf, which costs little because every leaf of a binary tree is
+     * merged into its parent when the tree is collapsed into a {@link WideBVH}
+     */
+    public LinearBVHBuilder() {
+        this(DEFAULT_MAX_LEAF_SIZE);
+    }
+
+    /**
+     * @param maxLeafSize the maximum number of objects in a leaf
+     */
+    public LinearBVHBuilder(int maxLeafSize) {
+        if (maxLeafSize < 1) {
+            throw new IllegalArgumentException("need at least 1 object per leaf");
+        }
+        this.maxLeafSize = maxLeafSize;
+    }
+
+    /**
+     * Builds a BVH over the objects of the list. The list itself is not changed.
+     *
+     * @return the root, which is a single object or a list of objects if there are few enough for one leaf
+     */
+    public Hittable build(HittableList list) {
+        return build(list.objects());
+    }
+
+    /**
+     * Builds a BVH over the objects. The list itself is not changed.
+     *
+     * @return the root, which is a single object or a list of objects if there are few enough for one leaf
+     */
+    public synchronized Hittable build(List<Hittable> objects) {
+        if (objects.isEmpty()) {
+            throw new IllegalArgumentException("cannot build a BVH without objects");
+        }
+        int n = objects.size();
+        this.objects = objects;
+        lower = new double[3 * n];
+        upper = new double[3 * n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            AABB box = objects.get(i).boundingBox();
+            for (int axis = 0; axis < 3; axis++) {
+                Interval interval = box.axisInterval(axis);
+                lower[3 * i + axis] = interval.min();
+                upper[3 * i + axis] = interval.max();
+            }
+        });
+        try {
+            computeCodes(n);
+            sortByCode(n);
+            return build(0, n, new double[6]);
+        } finally {
+            this.objects = null;
+            lower = upper = null;
+            codes = null;
+            order = null;
+        }
+    }
+
+    private void computeCodes(int n) {
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = 0; i < n; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double centroid = 0.5 * (lower[3 * i + axis] + upper[3 * i + axis]);
+                min[axis] = Math.min(min[axis], centroid);
+                max[axis] = Math.max(max[axis], centroid);
+            }
+        }
+        // one scale for every axis keeps cells cubes, so that the first splits cut the longest axis
+        double extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        double scale = extent > 0 ? ((1 << BITS_PER_AXIS) - 1) / extent : 0;
+
+        codes = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            long code = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                double centroid = 0.5 * (lower[3 * i + axis] + upper[3 * i + axis]);
+                code |= spread((long) ((centroid - min[axis]) * scale)) << (2 - axis);
+            }
+            codes[i] = code;
+        });
+    }
+
+    /**
+     * Moves the lowest 21 bits of a value apart, so that two zero bits follow every bit
+     */
+    private static long spread(long value) {
+        value &= 0x1fffffL;
+        value = (value | value << 32) & 0x1f00000000ffffL;
+        value = (value | value << 16) & 0x1f0000ff0000ffL;
+        value = (value | value << 8) & 0x100f00f00f00f00fL;
+        value = (value | value << 4) & 0x10c30c30c30c30c3L;
+        value = (value | value << 2) & 0x1249249249249249L;
+        return value;
+    }
+
+    /**
+     * Sorts the objects by code with a least significant digit radix sort, which keeps equal codes in the order of
+     * the list
+     */
+    private void sortByCode(int n) {
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        long[] keys = codes;
+        long[] sortedKeys = new long[n];
+        int[] sortedOrder = new int[n];
+        int buckets = 1 << RADIX_BITS;
+        for (int shift = 0; shift < 3 * BITS_PER_AXIS; shift += RADIX_BITS) {
+            int[] starts = new int[buckets];
+            for (int i = 0; i < n; i++) {
+                starts[(int) (keys[i] >>> shift) & (buckets - 1)]++;
+            }
+            for (int b = 0, start = 0; b < buckets; b++) {
+                int count = starts[b];
+                starts[b] = start;
+                start += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int b = (int) (keys[i] >>> shift) & (buckets - 1);
+                sortedKeys[starts[b]] = keys[i];
+                sortedOrder[starts[b]++] = order[i];
+            }
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapOrder = order;
+            order = sortedOrder;
+            sortedOrder = swapOrder;
+        }
+        codes = keys;
+    }
+
+    /**
+     * Builds the subtree of a range of the sorted objects
+     *
+     * @param box receives the bounds of the objects, minimum x, y, z followed by maximum x, y, z
+     */
+    private Hittable build(int start, int end, double[] box) {
+        int count = end - start;
+        if (count <= maxLeafSize) {
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Double.POSITIVE_INFINITY;
+                box[axis + 3] = Double.NEGATIVE_INFINITY;
+            }
+            for (int i = start; i < end; i++) {
+                int object = order[i];
+                for (int axis = 0; axis < 3; axis++) {
+                    box[axis] = Math.min(box[axis], lower[3 * object + axis]);
+                    box[axis + 3] = Math.max(box[axis + 3], upper[3 * object + axis]);
+                }
+            }
+            if (count == 1) return objects.get(order[start]);
+            var leaf = new HittableList();
+            for (int i = start; i < end; i++) {
+                leaf.add(objects.get(order[i]));
+            }
+            return leaf;
+        }
+
+        int mid = split(start, end);
+        double[] leftBox = new double[6];
+        double[] rightBox = new double[6];
+        Hittable left;
+        Hittable right;
+        if (count >= BVHBuilder.PARALLEL_THRESHOLD) {
+            var leftTask = ForkJoinTask.adapt(() -> build(start, mid, leftBox)).fork();
+            right = build(mid, end, rightBox);
+            left = leftTask.join();
+        } else {
+            left = build(start, mid, leftBox);
+            right = build(mid, end, rightBox);
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Math.min(leftBox[axis], rightBox[axis]);
+            box[axis + 3] = Math.max(leftBox[axis + 3], rightBox[axis + 3]);
+        }
+        var bounds = new AABB(new Interval(box[0], box[3]), new Interval(box[1], box[4]), new Interval(box[2], box[5]));
+        return new BVHNode(left, right, bounds);
+    }
+
+    /**
+     * Returns the index of the first object whose code has a 1 at the highest bit in which the codes of the range
+     * differ, or the middle of the range if all codes are equal
+     */
+    private int split(int start, int end) {
+        long first = codes[start];
+        long last = codes[end - 1];
+        if (first == last) return (start + end) / 2;
+        long bit = Long.highestOneBit(first ^ last);
+        // the codes are sorted and agree above the bit, so the bit turns from 0 to 1 exactly once
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if ((codes[middle] & bit) != 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,454 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+import com.raytracing.scene.Sphere;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy for objects that move while the shutter is open.
+ * <p>
+ * The box of a moving sphere is the union of where it starts and where it ends, which is far larger than the
+ * sphere at any one time, so an ordinary BVH lets most rays into the nodes of fast objects. Every node of this BVH
+ * stores its bounds at a few evenly spaced keys of its time interval instead, and a ray interpolates them at its
+ * own time. Objects move linearly, so the box of an object is exact at every time and the interpolated box of a
+ * node contains all of its objects at every time in between.
+ * <p>
+ * When objects move far, even the bounds of a single time miss little, so a node may be split in time rather than
+ * in space: both children hold all of its objects, each over half of its interval, and a ray only enters the child
+ * of its time. Both kinds of splits are chosen by the surface area heuristic with the area of a node averaged over
+ * its interval.
+ * <p>
+ * The nodes are stored depth first as in {@link FlatBVH}, with a count of -1 marking a split in time.
+ */
+public class MotionBVH implements Accelerator {
+    public static final int DEFAULT_KEYS = 2;
+    private static final int BINS = BVHBuilder.DEFAULT_BINS;
+    private static final int MAX_LEAF_SIZE = BVHBuilder.DEFAULT_MAX_LEAF_SIZE;
+    private static final double TRAVERSAL_COST = BVHBuilder.DEFAULT_TRAVERSAL_COST;
+    // intervals are not split in time below this length, which bounds the copies of an object
+    private static final double MIN_TIME_INTERVAL = 1.0 / 16;
+    private static final int TIME_SPLIT = -1;
+
+    private final int keys;
+    // per node and per span between two keys, the 6 bounds at the first key and how fast they grow up to the next
+    private final double[] bounds;
+    // the start of the interval of every node and the number of spans per unit of time
+    private final double[] times;
+    private final int[] nodes;
+    private final Hittable[] objects;
+    private final int maxDepth;
+    private final int timeSplits;
+    private final AABB boundingBox;
+
+    /**
+     * Builds a BVH with bounds at the start and end of the interval of every node
+     */
+    public MotionBVH(HittableList list) {
+        this(list.objects(), DEFAULT_KEYS);
+    }
+
+    /**
+     * Builds a BVH over the objects. The list itself is not changed.
+     *
+     * @param keys the number of times per node at which bounds are stored, at least 2
+     */
+    public MotionBVH(List<Hittable> objects, int keys) {
+        if (objects.isEmpty()) {
+            throw new IllegalArgumentException("cannot build a BVH without objects");
+        }
+        if (keys < 2) {
+            throw new IllegalArgumentException("need bounds at 2 times at least, got " + keys);
+        }
+        this.keys = keys;
+        var builder = new Builder(objects, keys);
+        int[] all = new int[objects.size()];
+        Arrays.setAll(all, i -> i);
+        builder.add(all, 0, 1, 0);
+        bounds = Arrays.copyOf(builder.bounds, 12 * (keys - 1) * builder.count);
+        times = Arrays.copyOf(builder.times, 2 * builder.count);
+        nodes = Arrays.copyOf(builder.nodes, 2 * builder.count);
+        this.objects = builder.leaves.toArray(new Hittable[0]);
+        maxDepth = builder.maxDepth;
+        timeSplits = builder.timeSplits;
+        var box = new AABB();
+        for (Hittable object : objects) box = new AABB(box, object.boundingBox());
+        boundingBox = box;
+    }
+
+    /**
+     * Chooses the splits and collects the nodes in depth-first order
+     */
+    private static class Builder {
+        final List<Hittable> objects;
+        final int keys;
+        // the bounds of every object at time 0 and at time 1, three values per object
+        final double[] lower0, upper0, lower1, upper1;
+        final boolean[] moving;
+
+        double[] bounds;
+        double[] times = new double[2 * 64];
+        int[] nodes = new int[2 * 64];
+        int count;
+        int maxDepth;
+        int timeSplits;
+        final List<Hittable> leaves = new ArrayList<>();
+
+        Builder(List<Hittable> objects, int keys) {
+            this.objects = objects;
+            this.keys = keys;
+            bounds = new double[12 * (keys - 1) * 64];
+            int n = objects.size();
+            lower0 = new double[3 * n];
+            upper0 = new double[3 * n];
+            lower1 = new double[3 * n];
+            upper1 = new double[3 * n];
+            moving = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                Hittable object = objects.get(i);
+                AABB start = object.boundingBox();
+                AABB end = start;
+                if (object instanceof Sphere sphere && sphere.isMoving()) {
+                    start = sphereBox(sphere, 0);
+                    end = sphereBox(sphere, 1);
+                    moving[i] = true;
+                }
+                for (int axis = 0; axis < 3; axis++) {
+                    lower0[3 * i + axis] = start.axisInterval(axis).min();
+                    upper0[3 * i + axis] = start.axisInterval(axis).max();
+                    lower1[3 * i + axis] = end.axisInterval(axis).min();
+                    upper1[3 * i + axis] = end.axisInterval(axis).max();
+                }
+            }
+        }
+
+        private static AABB sphereBox(Sphere sphere, double time) {
+            var center = sphere.center(time);
+            double r = sphere.radius();
+            return new AABB(new Interval(center.x() - r, center.x() + r), new Interval(center.y() - r, center.y() + r),
+                    new Interval(center.z() - r, center.z() + r));
+        }
+
+        /**
+         * Writes the bounds of an object at a time into six bounds, growing them
+         */
+        void grow(double[] box, int offset, int object, double time) {
+            for (int axis = 0; axis < 3; axis++) {
+                int i = 3 * object + axis;
+                box[offset + axis] = Math.min(box[offset + axis], lower0[i] + time * (lower1[i] - lower0[i]));
+                box[offset + axis + 3] = Math.max(box[offset + axis + 3], upper0[i] + time * (upper1[i] - upper0[i]));
+            }
+        }
+
+        /**
+         * Returns the area of the box of a set of objects averaged over an interval, which is positive
+         */
+        double area(int[] objects, double t0, double t1) {
+            double[] start = BVHBuilder.emptyBounds();
+            double[] end = BVHBuilder.emptyBounds();
+            for (int object : objects) {
+                grow(start, 0, object, t0);
+                grow(end, 0, object, t1);
+            }
+            return Math.max(0.5 * (BVHBuilder.surfaceArea(start, 0) + BVHBuilder.surfaceArea(end, 0)),
+                    Double.MIN_NORMAL);
+        }
+
+        /**
+         * Finds the best split in space of a set of objects over an interval by the bins of {@link BVHBuilder},
+         * with the bounds of every bin at the start and at the end of the interval
+         *
+         * @param area the area of the node averaged over the interval
+         */
+        BVHBuilder.Split split(int[] objects, double t0, double t1, double area) {
+            double tMid = 0.5 * (t0 + t1);
+            double[] centroidBox = BVHBuilder.emptyBounds();
+            for (int object : objects) {
+                for (int axis = 0; axis < 3; axis++) {
+                    double c = centroid(object, axis, tMid);
+                    centroidBox[axis] = Math.min(centroidBox[axis], c);
+                    centroidBox[axis + 3] = Math.max(centroidBox[axis + 3], c);
+                }
+            }
+
+            var bins = new BVHBuilder.Bins(BINS, 2);
+            BVHBuilder.Split best = bins.none();
+            for (int axis = 0; axis < 3; axis++) {
+                double min = centroidBox[axis];
+                double extent = centroidBox[axis + 3] - min;
+                if (!(extent > 0)) continue;
+
+                bins.clear();
+                for (int object : objects) {
+                    int b = bins.bin(centroid(object, axis, tMid), min, extent);
+                    bins.counts[b]++;
+                    grow(bins.bounds, bins.offset(b, 0), object, t0);
+                    grow(bins.bounds, bins.offset(b, 1), object, t1);
+                }
+                best = bins.sweep(axis, min, extent, TRAVERSAL_COST, area, best);
+            }
+            return best;
+        }
+
+        private double centroid(int object, int axis, double time) {
+            int i = 3 * object + axis;
+            return 0.5 * (lower0[i] + time * (lower1[i] - lower0[i]) + upper0[i] + time * (upper1[i] - upper0[i]));
+        }
+
+        void add(int[] objects, double t0, double t1, int depth) {
+            maxDepth = Math.max(maxDepth, depth);
+            int index = count++;
+            if (2 * index == nodes.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                times = Arrays.copyOf(times, 2 * times.length);
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            }
+            times[2 * index] = t0;
+            times[2 * index + 1] = (keys - 1) / (t1 - t0);
+            double[] keyBounds = new double[6 * keys];
+            for (int k = 0; k < keys; k++) {
+                BVHBuilder.resetBounds(keyBounds, 6 * k);
+                double time = t0 + (t1 - t0) * k / (keys - 1);
+                for (int object : objects) grow(keyBounds, 6 * k, object, time);
+            }
+            int offset = 12 * (keys - 1) * index;
+            for (int k = 0; k < keys - 1; k++) {
+                for (int i = 0; i < 6; i++) {
+                    bounds[offset + 12 * k + i] = keyBounds[6 * k + i];
+                    bounds[offset + 12 * k + 6 + i] = keyBounds[6 * k + 6 + i] - keyBounds[6 * k + i];
+                }
+            }
+
+            int count = objects.length;
+            double area = count == 1 ? 0 : area(objects, t0, t1);
+            BVHBuilder.Split split = count == 1 ? null : split(objects, t0, t1, area);
+            double spaceCost = split == null ? Double.POSITIVE_INFINITY : split.cost();
+
+            // a split in time visits one half, whose objects are smaller, split in space or left as a leaf
+            double timeCost = Double.POSITIVE_INFINITY;
+            // the interpolated box of a single object is exact at every time already
+            if (count > 1 && t1 - t0 >= 2 * MIN_TIME_INTERVAL && anyMoving(objects)) {
+                double tMid = 0.5 * (t0 + t1);
+                double firstArea = area(objects, t0, tMid);
+                double secondArea = area(objects, tMid, t1);
+                double firstCost = split(objects, t0, tMid, firstArea).cost();
+                double secondCost = split(objects, tMid, t1, secondArea).cost();
+                timeCost = TRAVERSAL_COST + 0.5 * (firstArea * Math.min(firstCost, count)
+                        + secondArea * Math.min(secondCost, count)) / area;
+            }
+
+            if (timeCost < Math.min(spaceCost, count)) {
+                timeSplits++;
+                double tMid = 0.5 * (t0 + t1);
+                add(objects, t0, tMid, depth + 1);
+                nodes[2 * index] = this.count;
+                nodes[2 * index + 1] = TIME_SPLIT;
+                add(objects, tMid, t1, depth + 1);
+                return;
+            }
+            if (split == null || count <= MAX_LEAF_SIZE && !(spaceCost < count)) {
+                nodes[2 * index] = leaves.size();
+                for (int object : objects) leaves.add(this.objects.get(object));
+                nodes[2 * index + 1] = count;
+                return;
+            }
+
+            int[] left;
+            int[] right;
+            if (split.axis() < 0) {
+                // every centroid is at the same point, so any split is as good as any other
+                left = Arrays.copyOfRange(objects, 0, count / 2);
+                right = Arrays.copyOfRange(objects, count / 2, count);
+            } else {
+                double tMid = 0.5 * (t0 + t1);
+                int[] sides = new int[count];
+                int l = 0;
+                int r = count;
+                for (int object : objects) {
+                    if (split.left(centroid(object, split.axis(), tMid))) {
+                        sides[l++] = object;
+                    } else {
+                        sides[--r] = object;
+                    }
+                }
+                left = Arrays.copyOfRange(sides, 0, l);
+                right = Arrays.copyOfRange(sides, l, count);
+            }
+            add(left, t0, t1, depth + 1);
+            nodes[2 * index] = this.count;
+            nodes[2 * index + 1] = 0;
+            add(right, t0, t1, depth + 1);
+        }
+
+        private boolean anyMoving(int[] objects) {
+            for (int object : objects) {
+                if (moving[object]) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int size() {
+        return nodes.length / 2;
+    }
+
+    /**
+     * Returns the number of nodes split in time
+     */
+    public int timeSplits() {
+        return timeSplits;
+    }
+
+    /**
+     * Returns the bytes taken by the nodes, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        return (long) Double.BYTES * (bounds.length + times.length) + (long) Integer.BYTES * nodes.length;
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        return new Traversal(ray).hit(0, maxDepth, tMin, tMax);
+    }
+
+    private final class Traversal extends BVHTraversal {
+        final double time;
+
+        Traversal(Ray ray) {
+            super(ray);
+            time = ray.time();
+        }
+
+        @Override
+        boolean isLeaf(int node) {
+            return nodes[2 * node + 1] > 0;
+        }
+
+        @Override
+        HitRecord hitLeaf(int node, double tMin, double tMax) {
+            HitRecord record = null;
+            int first = nodes[2 * node];
+            for (int i = first; i < first + nodes[2 * node + 1]; i++) {
+                HitRecord hit = objects[i].hit(ray, tMin, tMax);
+                if (hit != null) {
+                    record = hit;
+                    tMax = hit.t();
+                }
+            }
+            return record;
+        }
+
+        @Override
+        int left(int node) {
+            int right = nodes[2 * node];
+            // only the half of the ray's time holds the objects where the ray sees them
+            if (nodes[2 * node + 1] == TIME_SPLIT && time >= times[2 * right]) return right;
+            return node + 1;
+        }
+
+        @Override
+        int right(int node) {
+            return nodes[2 * node + 1] == TIME_SPLIT ? NONE : nodes[2 * node];
+        }
+
+        /**
+         * Intersects the ray with the bounds of a node at the time of the ray, interpolated between the keys of
+         * the span the time falls in
+         */
+        @Override
+        double enter(int node, double tMin, double tMax) {
+            double position = position(node, time);
+            int span = (int) position;
+            double f = position - span;
+            int offset = 12 * ((keys - 1) * node + span);
+            double tNear = tMin;
+            double tFar = tMax;
+            // written so that a NaN from a ray in the plane of a bound leaves the range unchanged
+            double t0 = (bounds[offset + nearX] + f * bounds[offset + 6 + nearX] - ox) * ix;
+            double t1 = (bounds[offset + 3 - nearX] + f * bounds[offset + 9 - nearX] - ox) * ix;
+            if (t0 > tNear) tNear = t0;
+            if (t1 < tFar) tFar = t1;
+            t0 = (bounds[offset + nearY] + f * bounds[offset + 6 + nearY] - oy) * iy;
+            t1 = (bounds[offset + 5 - nearY] + f * bounds[offset + 11 - nearY] - oy) * iy;
+            if (t0 > tNear) tNear = t0;
+            if (t1 < tFar) tFar = t1;
+            t0 = (bounds[offset + nearZ] + f * bounds[offset + 6 + nearZ] - oz) * iz;
+            t1 = (bounds[offset + 7 - nearZ] + f * bounds[offset + 13 - nearZ] - oz) * iz;
+            if (t0 > tNear) tNear = t0;
+            if (t1 < tFar) tFar = t1;
+            return tNear < tFar ? tNear : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Returns where a time falls among the keys of a node: the integer part is the span between two keys and the
+     * fraction is how far the time is towards the end of the span
+     */
+    private double position(int node, double time) {
+        double position = (time - times[2 * node]) * times[2 * node + 1];
+        // a time outside the interval takes the bounds at its nearer end
+        return Math.min(Math.max(position, 0), Math.nextDown(keys - 1.0));
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree at a random time, as {@link BVHBuilder#cost} does for
+     * trees, with the area of every node averaged over its interval
+     */
+    @Override
+    public double cost(double traversalCost) {
+        return cost(0, traversalCost);
+    }
+
+    private double cost(int node, double traversalCost) {
+        int count = nodes[2 * node + 1];
+        if (count > 0) {
+            double cost = 0;
+            for (int i = nodes[2 * node]; i < nodes[2 * node] + count; i++) {
+                cost += BVHBuilder.cost(objects[i], traversalCost);
+            }
+            return cost;
+        }
+        int left = node + 1;
+        int right = nodes[2 * node];
+        double area = meanArea(node);
+        // a ray enters either half of a split in time, by the share of its time
+        double leftShare = count == TIME_SPLIT ? 0.5 : 1;
+        double rightShare = count == TIME_SPLIT ? 0.5 : 1;
+        if (area <= 0) {
+            return traversalCost + leftShare * cost(left, traversalCost) + rightShare * cost(right, traversalCost);
+        }
+        return traversalCost
+                + leftShare * meanArea(left) / area * cost(left, traversalCost)
+                + rightShare * meanArea(right) / area * cost(right, traversalCost);
+    }
+
+    private double meanArea(int node) {
+        double[] box = new double[6];
+        double area = 0;
+        for (int k = 0; k < keys; k++) {
+            // the last key is the end of the last span
+            int span = Math.min(k, keys - 2);
+            int offset = 12 * ((keys - 1) * node + span);
+            for (int i = 0; i < 6; i++) {
+                box[i] = bounds[offset + i] + (k - span) * bounds[offset + 6 + i];
+            }
+            area += BVHBuilder.surfaceArea(box, 0);
+        }
+        return area / keys;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return boundingBox;
+    }
+}
@@ -0,0 +1,293 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.Ray;
+
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy that is never changed: an edit returns a new BVH, which shares every node the edit
+ * did not touch with the BVH it was made from. Threads can trace one version while another thread makes the next,
+ * without copying the tree and without locks.
+ * <p>
+ * An object is inserted and removed as {@link DynamicBVH} does it, by where it adds the least surface area and by
+ * replacing its leaf with the sibling, with the same swaps of children and grandchildren on the way up. Only the
+ * nodes on the path from the edit to the root are copied, so an edit creates a number of nodes in the order of the
+ * height of the tree. Objects are told apart by identity.
+ */
+public final class PersistentBVH implements Accelerator {
+    /**
+     * The BVH without objects
+     */
+    public static final PersistentBVH EMPTY = new PersistentBVH(null, 0);
+
+    /**
+     * A node, which is a leaf of one object or has two children. Its bounds are the minimum x, y, z followed by
+     * the maximum x, y, z, and are never written after the node is made.
+     */
+    private record Node(Node left, Node right, Hittable object, double[] bounds, int height) {
+        static Node leaf(Hittable object) {
+            AABB box = object.boundingBox();
+            double[] bounds = new double[6];
+            for (int axis = 0; axis < 3; axis++) {
+                Interval interval = box.axisInterval(axis);
+                bounds[axis] = interval.min();
+                bounds[axis + 3] = interval.max();
+            }
+            return new Node(null, null, object, bounds, 0);
+        }
+
+        static Node pair(Node left, Node right) {
+            double[] bounds = new double[6];
+            for (int bound = 0; bound < 3; bound++) {
+                bounds[bound] = Math.min(left.bounds[bound], right.bounds[bound]);
+                bounds[bound + 3] = Math.max(left.bounds[bound + 3], right.bounds[bound + 3]);
+            }
+            return new Node(left, right, null, bounds, 1 + Math.max(left.height, right.height));
+        }
+
+        boolean isLeaf() {
+            return object != null;
+        }
+
+        double area() {
+            return BVHBuilder.surfaceArea(bounds, 0);
+        }
+
+        boolean contains(double[] box) {
+            return bounds[0] <= box[0] && bounds[1] <= box[1] && bounds[2] <= box[2]
+                    && bounds[3] >= box[3] && bounds[4] >= box[4] && bounds[5] >= box[5];
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentBVH(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns a BVH over the objects, inserted one by one
+     */
+    public static PersistentBVH of(List<Hittable> objects) {
+        PersistentBVH bvh = EMPTY;
+        for (Hittable object : objects) {
+            bvh = bvh.with(object);
+        }
+        return bvh;
+    }
+
+    /**
+     * Returns the number of objects
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a BVH with the objects of this one and another object
+     */
+    public PersistentBVH with(Hittable object) {
+        Node leaf = Node.leaf(object);
+        return new PersistentBVH(root == null ? leaf : insert(root, leaf), size + 1);
+    }
+
+    /**
+     * Returns a BVH with the objects of this one but an object
+     *
+     * @throws IllegalArgumentException if the object is not in this BVH
+     */
+    public PersistentBVH without(Hittable object) {
+        if (root == null) throw new IllegalArgumentException("the object is not in the BVH");
+        double[] box = Node.leaf(object).bounds;
+        Node result = remove(root, object, box);
+        if (result == root) throw new IllegalArgumentException("the object is not in the BVH");
+        return new PersistentBVH(result, size - 1);
+    }
+
+    /**
+     * Returns a BVH with an object of this one replaced by another object, such as the same object moved elsewhere
+     *
+     * @throws IllegalArgumentException if the old object is not in this BVH
+     */
+    public PersistentBVH replace(Hittable oldObject, Hittable newObject) {
+        return without(oldObject).with(newObject);
+    }
+
+    /**
+     * Inserts a leaf below a node where it adds the least surface area, as {@link DynamicBVH} does
+     *
+     * @return the copy of the node with the leaf
+     */
+    private static Node insert(Node node, Node leaf) {
+        if (node.isLeaf()) return Node.pair(node, leaf);
+        double combined = unionArea(node, leaf);
+        double pairCost = 2 * combined;
+        // every node above the new pair grows by the leaf, which the cost of a child inherits
+        double inherited = 2 * (combined - node.area());
+        double leftCost = descentCost(node.left, leaf) + inherited;
+        double rightCost = descentCost(node.right, leaf) + inherited;
+        if (pairCost < leftCost && pairCost < rightCost) return Node.pair(node, leaf);
+        return leftCost < rightCost
+                ? rotated(insert(node.left, leaf), node.right)
+                : rotated(node.left, insert(node.right, leaf));
+    }
+
+    private static double descentCost(Node node, Node leaf) {
+        double combined = unionArea(node, leaf);
+        return node.isLeaf() ? combined : combined - node.area();
+    }
+
+    /**
+     * Removes the leaf of an object from below a node, looking only into nodes whose bounds contain the box of the
+     * object
+     *
+     * @return the copy of the node without the leaf, null if the node was the leaf, or the node itself if the
+     * object is not below it
+     */
+    private static Node remove(Node node, Hittable object, double[] box) {
+        if (node.isLeaf()) return node.object == object ? null : node;
+        if (!node.contains(box)) return node;
+        Node left = remove(node.left, object, box);
+        if (left != node.left) return left == null ? node.right : rotated(left, node.right);
+        Node right = remove(node.right, object, box);
+        if (right != node.right) return right == null ? node.left : rotated(node.left, right);
+        return node;
+    }
+
+    /**
+     * Pairs two nodes, after swapping one of them with a child of the other if that shrinks the other, as
+     * {@link DynamicBVH} does
+     */
+    private static Node rotated(Node left, Node right) {
+        double bestSaving = 0;
+        Node best = null;
+        for (int side = 0; side < 2; side++) {
+            Node child = side == 0 ? left : right;
+            Node other = side == 0 ? right : left;
+            if (other.isLeaf()) continue;
+            double area = other.area();
+            // the child takes the place of one grandchild next to the other
+            double saving = area - unionArea(child, other.right);
+            if (saving > bestSaving) {
+                bestSaving = saving;
+                best = side == 0 ? Node.pair(other.left, Node.pair(child, other.right))
+                        : Node.pair(Node.pair(child, other.right), other.left);
+            }
+            saving = area - unionArea(child, other.left);
+            if (saving > bestSaving) {
+                bestSaving = saving;
+                best = side == 0 ? Node.pair(other.right, Node.pair(child, other.left))
+                        : Node.pair(Node.pair(child, other.left), other.right);
+            }
+        }
+        return best != null ? best : Node.pair(left, right);
+    }
+
+    /**
+     * Returns the surface area of the box around two nodes
+     */
+    private static double unionArea(Node a, Node b) {
+        double dx = Math.max(a.bounds[3], b.bounds[3]) - Math.min(a.bounds[0], b.bounds[0]);
+        double dy = Math.max(a.bounds[4], b.bounds[4]) - Math.min(a.bounds[1], b.bounds[1]);
+        double dz = Math.max(a.bounds[5], b.bounds[5]) - Math.min(a.bounds[2], b.bounds[2]);
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        if (root == null) return null;
+        var traversal = new Traversal(ray, root.height);
+        return traversal.hit(traversal.name(root), root.height, tMin, tMax);
+    }
+
+    /**
+     * Names the nodes the walk reaches by slots of a table, since the nodes are shared between versions and have no
+     * index of their own. The slots of the nodes the walk releases are reused, so the table only holds the nodes on
+     * the stack of the walk and the two children being entered, at most the height of the tree and four.
+     */
+    private static final class Traversal extends BVHTraversal {
+        private final Node[] reached;
+        // the slots released and not named again, as a stack
+        private final int[] free;
+        private int freeCount;
+        private int count;
+
+        Traversal(Ray ray, int height) {
+            super(ray);
+            reached = new Node[height + 4];
+            free = new int[height + 4];
+        }
+
+        int name(Node node) {
+            int slot = freeCount > 0 ? free[--freeCount] : count++;
+            reached[slot] = node;
+            return slot;
+        }
+
+        @Override
+        void release(int node) {
+            free[freeCount++] = node;
+        }
+
+        @Override
+        boolean isLeaf(int node) {
+            return reached[node].isLeaf();
+        }
+
+        @Override
+        HitRecord hitLeaf(int node, double tMin, double tMax) {
+            return reached[node].object.hit(ray, tMin, tMax);
+        }
+
+        @Override
+        int left(int node) {
+            return name(reached[node].left);
+        }
+
+        @Override
+        int right(int node) {
+            return name(reached[node].right);
+        }
+
+        @Override
+        double enter(int node, double tMin, double tMax) {
+            return enter(reached[node].bounds, 0, tMin, tMax);
+        }
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree, as {@link BVHBuilder#cost} does for trees
+     */
+    @Override
+    public double cost(double traversalCost) {
+        return root == null ? 0 : cost(root, traversalCost);
+    }
+
+    private static double cost(Node node, double traversalCost) {
+        if (node.isLeaf()) return BVHBuilder.cost(node.object, traversalCost);
+        double area = node.area();
+        if (area <= 0) return traversalCost + cost(node.left, traversalCost) + cost(node.right, traversalCost);
+        return traversalCost + node.left.area() / area * cost(node.left, traversalCost)
+                + node.right.area() / area * cost(node.right, traversalCost);
+    }
+
+    /**
+     * Returns -1, since the nodes are objects of their own, shared with other versions
+     */
+    @Override
+    public long footprint() {
+        return -1;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        if (root == null) return new AABB();
+        return new AABB(new Interval(root.bounds[0], root.bounds[3]), new Interval(root.bounds[1], root.bounds[4]),
+                new Interval(root.bounds[2], root.bounds[5]));
+    }
+}
@@ -0,0 +1,27 @@
+package com.raytracing.structures;
+
+/**
+ * Tests the child boxes one after another
+ */
+class ScalarSlabTester implements SlabTester {
+    @Override
+    public long test(double[] bounds, int offset, int width, SlabRay ray, double tMin, double tMax,
+                     double[] entries) {
+        long hits = 0;
+        for (int c = 0; c < width; c++) {
+            double tNear = Math.max(tMin, Math.max(
+                    (bounds[offset + ray.nearX() * width + c] - ray.ox()) * ray.ix(), Math.max(
+                    (bounds[offset + ray.nearY() * width + c] - ray.oy()) * ray.iy(),
+                    (bounds[offset + ray.nearZ() * width + c] - ray.oz()) * ray.iz())));
+            double tFar = Math.min(tMax, Math.min(
+                    (bounds[offset + (3 - ray.nearX()) * width + c] - ray.ox()) * ray.ix(), Math.min(
+                    (bounds[offset + (5 - ray.nearY()) * width + c] - ray.oy()) * ray.iy(),
+                    (bounds[offset + (7 - ray.nearZ()) * width + c] - ray.oz()) * ray.iz())));
+            if (tNear < tFar) {
+                entries[c] = tNear;
+                hits |= 1L << c;
+            }
+        }
+        return hits;
+    }
+}
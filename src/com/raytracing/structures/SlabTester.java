@@ -0,0 +1,47 @@
+package com.raytracing.structures;
+
+import com.raytracing.scene.Ray;
+
+/**
+ * Intersects a ray with the child boxes of a wide BVH node at once.
+ * <p>
+ * The boxes of a node are stored plane by plane: the minimum x of every child, then the minimum y, the minimum z,
+ * the maximum x, the maximum y and the maximum z. Unused children have empty boxes, which no ray hits.
+ */
+interface SlabTester {
+    /**
+     * A ray prepared for slab tests
+     *
+     * @param nearX the plane of the x slab that the ray crosses first, 0 for the minimum or 3 for the maximum
+     * @param nearY the plane of the y slab that the ray crosses first, 1 or 4
+     * @param nearZ the plane of the z slab that the ray crosses first, 2 or 5
+     */
+    record SlabRay(double ox, double oy, double oz, double ix, double iy, double iz, int nearX, int nearY, int nearZ) {
+        static SlabRay of(Ray ray) {
+            double ix = inverse(ray.direction().x());
+            double iy = inverse(ray.direction().y());
+            double iz = inverse(ray.direction().z());
+            return new SlabRay(ray.origin().x(), ray.origin().y(), ray.origin().z(), ix, iy, iz,
+                    ix < 0 ? 3 : 0, iy < 0 ? 4 : 1, iz < 0 ? 5 : 2);
+        }
+
+        /**
+         * Returns a huge finite value instead of infinity, so a ray in the plane of a bound gives 0 and not NaN
+         */
+        private static double inverse(double component) {
+            double inverse = 1.0 / component;
+            return Double.isInfinite(inverse) ? Math.copySign(Double.MAX_VALUE, inverse) : inverse;
+        }
+    }
+
+    /**
+     * Intersects the ray with the children of a node
+     *
+     * @param bounds  the boxes of all nodes
+     * @param offset  the index of the first bound of the node
+     * @param width   the number of children per node
+     * @param entries receives the t where the ray enters every child that it hits
+     * @return a bit mask of the children that the ray hits within the range
+     */
+    long test(double[] bounds, int offset, int width, SlabRay ray, double tMin, double tMax, double[] entries);
+}
@@ -0,0 +1,89 @@
+package com.raytracing.structures;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Tests four or eight child boxes at once with the incubating Vector API.
+ * <p>
+ * This is the only class that uses {@code jdk.incubator.vector}. It is loaded by name only when that module is
+ * present, so everything else runs without it. The species are constants because the JIT compiles vector
+ * operations to SIMD instructions only for constant species.
+ */
+class VectorSlabTester implements SlabTester {
+    private static final VectorSpecies<Double> SPECIES_256 = DoubleVector.SPECIES_256;
+    private static final VectorSpecies<Double> SPECIES_512 = DoubleVector.SPECIES_512;
+    private static final boolean HAS_512 = DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= 512;
+    // narrower vectors are emulated and slower than scalar code
+    private static final boolean SUPPORTED = DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= 256;
+
+    /**
+     * Returns whether the CPU has vectors of at least 256 bits, without which this tester is slower than
+     * {@link ScalarSlabTester}
+     */
+    static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    @Override
+    public long test(double[] bounds, int offset, int width, SlabRay ray, double tMin, double tMax,
+                     double[] entries) {
+        if (width == 8 && HAS_512) {
+            return test512(bounds, offset, width, ray, tMin, tMax, entries);
+        }
+        long hits = 0;
+        for (int first = 0; first < width; first += 4) {
+            hits |= test256(bounds, offset, width, first, ray, tMin, tMax, entries);
+        }
+        return hits;
+    }
+
+    // the two methods differ only in the species; each names its species directly, since a species passed as an
+    // argument is constant only if the JIT happens to inline the call
+
+    /**
+     * Tests four children from {@code first} on
+     */
+    private static long test256(double[] bounds, int offset, int width, int first, SlabRay ray, double tMin,
+                                double tMax, double[] entries) {
+        int base = offset + first;
+        DoubleVector ox = DoubleVector.broadcast(SPECIES_256, ray.ox());
+        DoubleVector oy = DoubleVector.broadcast(SPECIES_256, ray.oy());
+        DoubleVector oz = DoubleVector.broadcast(SPECIES_256, ray.oz());
+        DoubleVector tNear = DoubleVector.fromArray(SPECIES_256, bounds, base + ray.nearX() * width)
+                .sub(ox).mul(ray.ix())
+                .max(DoubleVector.fromArray(SPECIES_256, bounds, base + ray.nearY() * width).sub(oy).mul(ray.iy()))
+                .max(DoubleVector.fromArray(SPECIES_256, bounds, base + ray.nearZ() * width).sub(oz).mul(ray.iz()))
+                .max(tMin);
+        DoubleVector tFar = DoubleVector.fromArray(SPECIES_256, bounds, base + (3 - ray.nearX()) * width)
+                .sub(ox).mul(ray.ix())
+                .min(DoubleVector.fromArray(SPECIES_256, bounds, base + (5 - ray.nearY()) * width).sub(oy).mul(ray.iy()))
+                .min(DoubleVector.fromArray(SPECIES_256, bounds, base + (7 - ray.nearZ()) * width).sub(oz).mul(ray.iz()))
+                .min(tMax);
+        tNear.intoArray(entries, first);
+        return tNear.compare(VectorOperators.LT, tFar).toLong() << first;
+    }
+
+    /**
+     * Tests all eight children of a node
+     */
+    private static long test512(double[] bounds, int offset, int width, SlabRay ray, double tMin, double tMax,
+                                double[] entries) {
+        DoubleVector ox = DoubleVector.broadcast(SPECIES_512, ray.ox());
+        DoubleVector oy = DoubleVector.broadcast(SPECIES_512, ray.oy());
+        DoubleVector oz = DoubleVector.broadcast(SPECIES_512, ray.oz());
+        DoubleVector tNear = DoubleVector.fromArray(SPECIES_512, bounds, offset + ray.nearX() * width)
+                .sub(ox).mul(ray.ix())
+                .max(DoubleVector.fromArray(SPECIES_512, bounds, offset + ray.nearY() * width).sub(oy).mul(ray.iy()))
+                .max(DoubleVector.fromArray(SPECIES_512, bounds, offset + ray.nearZ() * width).sub(oz).mul(ray.iz()))
+                .max(tMin);
+        DoubleVector tFar = DoubleVector.fromArray(SPECIES_512, bounds, offset + (3 - ray.nearX()) * width)
+                .sub(ox).mul(ray.ix())
+                .min(DoubleVector.fromArray(SPECIES_512, bounds, offset + (5 - ray.nearY()) * width).sub(oy).mul(ray.iy()))
+                .min(DoubleVector.fromArray(SPECIES_512, bounds, offset + (7 - ray.nearZ()) * width).sub(oz).mul(ray.iz()))
+                .min(tMax);
+        tNear.intoArray(entries, 0);
+        return tNear.compare(VectorOperators.LT, tFar).toLong();
+    }
+}
@@ -0,0 +1,280 @@
+package com.raytracing.structures;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Ray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy with 4 or 8 children per node, whose child boxes a ray tests at once.
+ * <p>
+ * A binary tree is collapsed by repeatedly opening the inner child with the largest surface area until a node
+ * has as many children as it may hold. The boxes of the children are stored plane by plane, as
+ * {@link SlabTester} describes, so they can be loaded straight into SIMD registers. The boxes are tested with the
+ * Vector API when the {@code jdk.incubator.vector} module is present (run with
+ * {@code --add-modules jdk.incubator.vector}) and one after another otherwise; setting the system property
+ * {@code raytracing.vector} to {@code false} forces the scalar tests.
+ * <p>
+ * Every child slot has two ints: an inner child stores the index of its node and 0, a leaf stores the index of its
+ * first object and the number of its objects, and an unused slot stores -1 for both.
+ */
+public class WideBVH implements Accelerator {
+    private static final SlabTester SLABS = slabTester();
+
+    private final int width;
+    private final double[] bounds;
+    private final int[] children;
+    private final Hittable[] objects;
+    private final int maxDepth;
+    private final AABB boundingBox;
+
+    /**
+     * Collapses a tree of {@link BVHNode}s. Anything else in the tree, including lists, becomes a leaf whose
+     * objects are tested one by one.
+     *
+     * @param width the number of children per node, 4 or 8
+     */
+    public WideBVH(Hittable root, int width) {
+        if (width != 4 && width != 8) {
+            throw new IllegalArgumentException("a wide BVH has 4 or 8 children per node, not " + width);
+        }
+        this.width = width;
+        var builder = new Builder(width);
+        builder.addNode(isInner(root) ? children(root) : new Hittable[]{root}, 0);
+        bounds = Arrays.copyOf(builder.bounds, 6 * width * builder.count);
+        children = Arrays.copyOf(builder.children, 2 * width * builder.count);
+        objects = builder.objects.toArray(new Hittable[0]);
+        maxDepth = builder.maxDepth;
+        boundingBox = root.boundingBox();
+    }
+
+    private static SlabTester slabTester() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && !"false".equals(System.getProperty("raytracing.vector"))) {
+            try {
+                Class<?> tester = Class.forName("com.raytracing.structures.VectorSlabTester");
+                if ((boolean) tester.getDeclaredMethod("isSupported").invoke(null)) {
+                    return (SlabTester) tester.getDeclaredConstructor().newInstance();
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Falling back to scalar box tests: " + e);
+            }
+        }
+        return new ScalarSlabTester();
+    }
+
+    /**
+     * Returns whether the boxes are tested with the Vector API
+     */
+    public static boolean isVectorized() {
+        return !(SLABS instanceof ScalarSlabTester);
+    }
+
+    private static boolean isInner(Hittable node) {
+        return node instanceof BVHNode bvh && bvh.left() != bvh.right();
+    }
+
+    private static Hittable[] children(Hittable node) {
+        var bvh = (BVHNode) node;
+        return new Hittable[]{bvh.left(), bvh.right()};
+    }
+
+    /**
+     * Collects the nodes in depth-first order
+     */
+    private static class Builder {
+        final int width;
+        double[] bounds;
+        int[] children;
+        int count;
+        int maxDepth;
+        final List<Hittable> objects = new ArrayList<>();
+
+        Builder(int width) {
+            this.width = width;
+            bounds = new double[6 * width * 16];
+            children = new int[2 * width * 16];
+        }
+
+        int addNode(Hittable[] binary, int depth) {
+            maxDepth = Math.max(maxDepth, depth);
+            var slots = Arrays.copyOf(binary, width);
+            double[] areas = new double[width];
+            int used = binary.length;
+            for (int i = 0; i < used; i++) {
+                areas[i] = isInner(slots[i]) ? slots[i].boundingBox().surfaceArea() : -1;
+            }
+            while (used < width) {
+                int open = -1;
+                for (int i = 0; i < used; i++) {
+                    if (areas[i] >= 0 && (open < 0 || areas[i] > areas[open])) open = i;
+                }
+                if (open < 0) break;
+                var bvh = (BVHNode) slots[open];
+                slots[open] = bvh.left();
+                slots[used] = bvh.right();
+                areas[open] = isInner(slots[open]) ? slots[open].boundingBox().surfaceArea() : -1;
+                areas[used] = isInner(slots[used]) ? slots[used].boundingBox().surfaceArea() : -1;
+                used++;
+            }
+
+            int index = count++;
+            if (6 * width * count > bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                children = Arrays.copyOf(children, 2 * children.length);
+            }
+            int boundsOffset = 6 * width * index;
+            int slotOffset = 2 * width * index;
+            for (int c = 0; c < width; c++) {
+                if (c >= used) {
+                    for (int axis = 0; axis < 3; axis++) {
+                        bounds[boundsOffset + axis * width + c] = Double.POSITIVE_INFINITY;
+                        bounds[boundsOffset + (axis + 3) * width + c] = Double.NEGATIVE_INFINITY;
+                    }
+                    children[slotOffset + 2 * c] = -1;
+                    children[slotOffset + 2 * c + 1] = -1;
+                    continue;
+                }
+                Hittable child = slots[c];
+                AABB box = child.boundingBox();
+                for (int axis = 0; axis < 3; axis++) {
+                    Interval interval = box.axisInterval(axis);
+                    bounds[boundsOffset + axis * width + c] = interval.min();
+                    bounds[boundsOffset + (axis + 3) * width + c] = interval.max();
+                }
+                if (isInner(child)) {
+                    // the arrays may grow while the child is added
+                    int node = addNode(children(child), depth + 1);
+                    this.children[slotOffset + 2 * c] = node;
+                    this.children[slotOffset + 2 * c + 1] = 0;
+                } else {
+                    int first = objects.size();
+                    if (child instanceof BVHNode bvh) {
+                        // a leaf of one object is stored as both children
+                        objects.add(bvh.left());
+                    } else if (child instanceof HittableList list) {
+                        list.forEach(objects::add);
+                    } else {
+                        objects.add(child);
+                    }
+                    this.children[slotOffset + 2 * c] = first;
+                    this.children[slotOffset + 2 * c + 1] = objects.size() - first;
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the number of nodes
+     */
+    public int size() {
+        return children.length / (2 * width);
+    }
+
+    /**
+     * Returns the bytes taken by the nodes, not counting the objects
+     */
+    @Override
+    public long footprint() {
+        return (long) Double.BYTES * bounds.length + (long) Integer.BYTES * children.length;
+    }
+
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        var slabRay = SlabTester.SlabRay.of(ray);
+        double closest = tMax;
+        HitRecord record = null;
+
+        // every node pops one entry and pushes at most one per child; leaves are pushed as ~slot
+        int[] stack = new int[(maxDepth + 1) * (width - 1) + 1];
+        double[] entries = new double[stack.length];
+        double[] childEntries = new double[width];
+        int[] order = new int[width];
+        int size = 0;
+        stack[size] = 0;
+        entries[size++] = tMin;
+        while (size > 0) {
+            int item = stack[--size];
+            if (entries[size] >= closest) continue;
+
+            if (item < 0) {
+                int slot = ~item;
+                int first = children[2 * slot];
+                for (int i = first; i < first + children[2 * slot + 1]; i++) {
+                    HitRecord hit = objects[i].hit(ray, tMin, closest);
+                    if (hit != null) {
+                        record = hit;
+                        closest = hit.t();
+                    }
+                }
+                continue;
+            }
+
+            long hits = SLABS.test(bounds, 6 * width * item, width, slabRay, tMin, closest, childEntries);
+            // sort the children that were hit by entry, farthest first, so the nearest is popped next
+            int hitCount = 0;
+            for (int c = 0; c < width; c++) {
+                if ((hits & (1L << c)) == 0) continue;
+                int i = hitCount++;
+                while (i > 0 && childEntries[order[i - 1]] < childEntries[c]) {
+                    order[i] = order[i - 1];
+                    i--;
+                }
+                order[i] = c;
+            }
+            for (int i = 0; i < hitCount; i++) {
+                int c = order[i];
+                int slot = width * item + c;
+                stack[size] = children[2 * slot + 1] == 0 ? children[2 * slot] : ~slot;
+                entries[size++] = childEntries[c];
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Returns the expected cost of a ray through the tree, as {@link BVHBuilder#cost} does for binary trees.
+     * A wide node costs one traversal step no matter how many children it has.
+     */
+    @Override
+    public double cost(double traversalCost) {
+        double rootArea = boundingBox.surfaceArea();
+        return cost(0, rootArea, traversalCost);
+    }
+
+    private double cost(int node, double area, double traversalCost) {
+        double cost = traversalCost;
+        for (int c = 0; c < width; c++) {
+            int slot = width * node + c;
+            int count = children[2 * slot + 1];
+            if (count < 0) continue;
+            int offset = 6 * width * node + c;
+            double dx = bounds[offset + 3 * width] - bounds[offset];
+            double dy = bounds[offset + 4 * width] - bounds[offset + width];
+            double dz = bounds[offset + 5 * width] - bounds[offset + 2 * width];
+            double childArea = 2 * (dx * dy + dy * dz + dz * dx);
+            double childCost;
+            if (count == 0) {
+                childCost = cost(children[2 * slot], childArea, traversalCost);
+            } else {
+                childCost = 0;
+                for (int i = children[2 * slot]; i < children[2 * slot] + count; i++) {
+                    childCost += BVHBuilder.cost(objects[i], traversalCost);
+                }
+            }
+            cost += area > 0 ? childArea / area * childCost : childCost;
+        }
+        return cost;
+    }
+
+    @Override
+    public AABB boundingBox() {
+        return boundingBox;
+    }
+}
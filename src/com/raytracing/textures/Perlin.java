@@ -1,26 +1,33 @@
 package com.raytracing.textures;
 
+import com.raytracing.base.SamplingContext;
 import com.raytracing.base.Vector3d;
 
-import java.util.Random;
-
 public class Perlin {
     private static final int pointCount = 256;
-    private static final Random rng = new Random(42);
+    private static final long DEFAULT_SEED = 42;
     private final Vector3d[] randVec = new Vector3d[pointCount];
     private final int[] permX = new int[pointCount];
     private final int[] permY = new int[pointCount];
     private final int[] permZ = new int[pointCount];
 
     /**
-     * Constructs necessary arrays for generating perlin noise
+     * Constructs necessary arrays for generating perlin noise with the default seed
      */
     public Perlin() {
-        for (int i = 0; i < randVec.length; i++) randVec[i] = Vector3d.randomUnitUniform();
+        this(DEFAULT_SEED);
+    }
+
+    /**
+     * Constructs necessary arrays for generating perlin noise, the same seed always gives the same noise
+     */
+    public Perlin(long seed) {
+        SamplingContext rng = new SamplingContext(seed);
+        for (int i = 0; i < randVec.length; i++) randVec[i] = Vector3d.randomUnitUniform(rng);
 
-        perlinGeneratePerm(permX);
-        perlinGeneratePerm(permY);
-        perlinGeneratePerm(permZ);
+        perlinGeneratePerm(permX, rng);
+        perlinGeneratePerm(permY, rng);
+        perlinGeneratePerm(permZ, rng);
     }
 
     /**
@@ -64,7 +71,7 @@ public class Perlin {
     /**
      * Permute an array by swapping elements randomly
      */
-    private static void permute(int[] p) {
+    private static void permute(int[] p, SamplingContext rng) {
         for (int i = p.length - 1; i > 0; i--) {
             int target = rng.nextInt(i);
             // swap i and target
@@ -77,10 +84,10 @@ public class Perlin {
     /**
      * Generate an array that's randomly permuted
      */
-    private static void perlinGeneratePerm(int[] p) {
+    private static void perlinGeneratePerm(int[] p, SamplingContext rng) {
         for (int i = 0; i < p.length; i++) p[i] = i;
 
-        permute(p);
+        permute(p, rng);
     }
 
     /**
@@ -0,0 +1,238 @@
+package com.raytracing.transform;
+
+import com.raytracing.base.AABB;
+import com.raytracing.base.Interval;
+import com.raytracing.base.Vector3d;
+
+/**
+ * An affine transform of 3D space, a 3x3 linear part followed by a translation, stored as the top three rows of a
+ * 4x4 matrix
+ */
+public final class Affine {
+    public static final Affine IDENTITY = new Affine(
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0
+    );
+
+    private final double m00, m01, m02, m03;
+    private final double m10, m11, m12, m13;
+    private final double m20, m21, m22, m23;
+
+    private Affine(double m00, double m01, double m02, double m03,
+                   double m10, double m11, double m12, double m13,
+                   double m20, double m21, double m22, double m23) {
+        this.m00 = m00;
+        this.m01 = m01;
+        this.m02 = m02;
+        this.m03 = m03;
+        this.m10 = m10;
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m13 = m13;
+        this.m20 = m20;
+        this.m21 = m21;
+        this.m22 = m22;
+        this.m23 = m23;
+    }
+
+    /**
+     * Moves every point by an offset
+     */
+    public static Affine translation(Vector3d offset) {
+        return new Affine(
+                1, 0, 0, offset.x(),
+                0, 1, 0, offset.y(),
+                0, 0, 1, offset.z()
+        );
+    }
+
+    /**
+     * Rotates about the y-axis by an angle, counterclockwise when looking down the axis
+     */
+    public static Affine rotationY(double angleInDegree) {
+        return rotation(new Vector3d(0, 1, 0), angleInDegree);
+    }
+
+    /**
+     * Rotates about the y-axis by the angle of a sine and cosine, as {@link RotateY} stores it
+     */
+    static Affine rotationY(double sinTheta, double cosTheta) {
+        return new Affine(
+                cosTheta, 0, sinTheta, 0,
+                0, 1, 0, 0,
+                -sinTheta, 0, cosTheta, 0
+        );
+    }
+
+    /**
+     * Rotates about an axis through the origin by an angle, counterclockwise when looking down the axis
+     */
+    public static Affine rotation(Vector3d axis, double angleInDegree) {
+        Vector3d a = axis.normalized();
+        double sin = Math.sin(Math.toRadians(angleInDegree));
+        double cos = Math.cos(Math.toRadians(angleInDegree));
+        double t = 1 - cos;
+        return new Affine(
+                t * a.x() * a.x() + cos, t * a.x() * a.y() - sin * a.z(), t * a.x() * a.z() + sin * a.y(), 0,
+                t * a.x() * a.y() + sin * a.z(), t * a.y() * a.y() + cos, t * a.y() * a.z() - sin * a.x(), 0,
+                t * a.x() * a.z() - sin * a.y(), t * a.y() * a.z() + sin * a.x(), t * a.z() * a.z() + cos, 0
+        );
+    }
+
+    /**
+     * Scales along the axes
+     */
+    public static Affine scaling(double x, double y, double z) {
+        return new Affine(
+                x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0
+        );
+    }
+
+    /**
+     * @return the transform that applies this transform and then the other
+     */
+    public Affine then(Affine other) {
+        return new Affine(
+                other.m00 * m00 + other.m01 * m10 + other.m02 * m20,
+                other.m00 * m01 + other.m01 * m11 + other.m02 * m21,
+                other.m00 * m02 + other.m01 * m12 + other.m02 * m22,
+                other.m00 * m03 + other.m01 * m13 + other.m02 * m23 + other.m03,
+                other.m10 * m00 + other.m11 * m10 + other.m12 * m20,
+                other.m10 * m01 + other.m11 * m11 + other.m12 * m21,
+                other.m10 * m02 + other.m11 * m12 + other.m12 * m22,
+                other.m10 * m03 + other.m11 * m13 + other.m12 * m23 + other.m13,
+                other.m20 * m00 + other.m21 * m10 + other.m22 * m20,
+                other.m20 * m01 + other.m21 * m11 + other.m22 * m21,
+                other.m20 * m02 + other.m21 * m12 + other.m22 * m22,
+                other.m20 * m03 + other.m21 * m13 + other.m22 * m23 + other.m23
+        );
+    }
+
+    /**
+     * @return the transform that undoes this transform
+     * @throws IllegalArgumentException if the transform flattens space, so it cannot be undone
+     */
+    public Affine inverse() {
+        // the inverse of the linear part is its adjugate over its determinant
+        double c00 = m11 * m22 - m12 * m21;
+        double c01 = m02 * m21 - m01 * m22;
+        double c02 = m01 * m12 - m02 * m11;
+        double c10 = m12 * m20 - m10 * m22;
+        double c11 = m00 * m22 - m02 * m20;
+        double c12 = m02 * m10 - m00 * m12;
+        double c20 = m10 * m21 - m11 * m20;
+        double c21 = m01 * m20 - m00 * m21;
+        double c22 = m00 * m11 - m01 * m10;
+        double determinant = m00 * c00 + m01 * c10 + m02 * c20;
+        if (determinant == 0 || !Double.isFinite(determinant)) {
+            throw new IllegalArgumentException("cannot invert a transform with determinant " + determinant);
+        }
+        double s = 1 / determinant;
+        c00 *= s; c01 *= s; c02 *= s;
+        c10 *= s; c11 *= s; c12 *= s;
+        c20 *= s; c21 *= s; c22 *= s;
+        return new Affine(
+                c00, c01, c02, -(c00 * m03 + c01 * m13 + c02 * m23),
+                c10, c11, c12, -(c10 * m03 + c11 * m13 + c12 * m23),
+                c20, c21, c22, -(c20 * m03 + c21 * m13 + c22 * m23)
+        );
+    }
+
+    /**
+     * @return whether the transform only moves points, without rotating or scaling them
+     */
+    boolean isTranslation() {
+        return m00 == 1 && m01 == 0 && m02 == 0
+                && m10 == 0 && m11 == 1 && m12 == 0
+                && m20 == 0 && m21 == 0 && m22 == 1;
+    }
+
+    /**
+     * @return the determinant of the linear part, which is negative if the transform mirrors space
+     */
+    double determinant() {
+        return m00 * (m11 * m22 - m12 * m21) - m01 * (m10 * m22 - m12 * m20) + m02 * (m10 * m21 - m11 * m20);
+    }
+
+    /**
+     * Returns the factor by which the transform scales every length if it is a rotation and a uniform scale,
+     * which carry a sphere to a sphere
+     *
+     * @return the factor, or NaN if the transform stretches some directions more than others or mirrors space
+     */
+    double uniformScale() {
+        double xx = m00 * m00 + m10 * m10 + m20 * m20;
+        double yy = m01 * m01 + m11 * m11 + m21 * m21;
+        double zz = m02 * m02 + m12 * m12 + m22 * m22;
+        double xy = m00 * m01 + m10 * m11 + m20 * m21;
+        double yz = m01 * m02 + m11 * m12 + m21 * m22;
+        double zx = m02 * m00 + m12 * m10 + m22 * m20;
+        double tolerance = 1e-9 * xx;
+        if (Math.abs(yy - xx) > tolerance || Math.abs(zz - xx) > tolerance || Math.abs(xy) > tolerance
+                || Math.abs(yz) > tolerance || Math.abs(zx) > tolerance || !(determinant() > 0)) {
+            return Double.NaN;
+        }
+        return Math.sqrt(xx);
+    }
+
+    /**
+     * Transforms a point, which is translated
+     */
+    public Vector3d point(Vector3d p) {
+        return new Vector3d(
+                m00 * p.x() + m01 * p.y() + m02 * p.z() + m03,
+                m10 * p.x() + m11 * p.y() + m12 * p.z() + m13,
+                m20 * p.x() + m21 * p.y() + m22 * p.z() + m23
+        );
+    }
+
+    /**
+     * Transforms a direction, which is not translated
+     */
+    public Vector3d vector(Vector3d v) {
+        return new Vector3d(
+                m00 * v.x() + m01 * v.y() + m02 * v.z(),
+                m10 * v.x() + m11 * v.y() + m12 * v.z(),
+                m20 * v.x() + m21 * v.y() + m22 * v.z()
+        );
+    }
+
+    /**
+     * Transforms a direction by the transpose of the linear part. The transpose of the inverse of a transform
+     * carries surface normals the way the transform carries the surface, so normals are transformed by this
+     * method of the inverse.
+     */
+    public Vector3d transposedVector(Vector3d v) {
+        return new Vector3d(
+                m00 * v.x() + m10 * v.y() + m20 * v.z(),
+                m01 * v.x() + m11 * v.y() + m21 * v.z(),
+                m02 * v.x() + m12 * v.y() + m22 * v.z()
+        );
+    }
+
+    /**
+     * @return the smallest box that contains the transformed box
+     */
+    public AABB box(AABB box) {
+        // every bound of the result comes from one of the two bounds of each axis, whichever the row favors
+        Interval x = box.axisInterval(0);
+        Interval y = box.axisInterval(1);
+        Interval z = box.axisInterval(2);
+        return new AABB(
+                row(m00, m01, m02, m03, x, y, z),
+                row(m10, m11, m12, m13, x, y, z),
+                row(m20, m21, m22, m23, x, y, z)
+        );
+    }
+
+    private static Interval row(double a, double b, double c, double d, Interval x, Interval y, Interval z) {
+        double min = d + Math.min(a * x.min(), a * x.max()) + Math.min(b * y.min(), b * y.max())
+                + Math.min(c * z.min(), c * z.max());
+        double max = d + Math.max(a * x.min(), a * x.max()) + Math.max(b * y.min(), b * y.max())
+                + Math.max(c * z.min(), c * z.max());
+        return new Interval(min, max);
+    }
+}
@@ -0,0 +1,55 @@
+package com.raytracing.transform;
+
+import com.raytracing.base.AABB;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.scene.Ray;
+
+/**
+ * An object placed in the world by an affine transform.
+ * <p>
+ * A ray is carried into the space of the object once, by the inverse of the transform, so a hit needs one new ray
+ * and one new record however the transform was composed. An instance of an instance is collapsed into a single
+ * instance of the inner object when it is constructed. Any number of instances can share one object, such as a
+ * BVH of a prop placed all over a scene, without copying it.
+ *
+ * @param object      the object in its own space
+ * @param toWorld     the transform from the space of the object to the world
+ * @param toObject    the inverse of {@code toWorld}
+ * @param boundingBox the box of the transformed object
+ */
+public record Instance(Hittable object, Affine toWorld, Affine toObject, AABB boundingBox) implements Hittable {
+
+    /**
+     * Places an object in the world
+     *
+     * @param object  the object, which may be shared by other instances
+     * @param toWorld the transform from the space of the object to the world
+     */
+    public Instance(Hittable object, Affine toWorld) {
+        this(inner(object), compose(object, toWorld), compose(object, toWorld).inverse(),
+                compose(object, toWorld).box(inner(object).boundingBox()));
+    }
+
+    private static Hittable inner(Hittable object) {
+        return object instanceof Instance instance ? instance.object : object;
+    }
+
+    private static Affine compose(Hittable object, Affine toWorld) {
+        return object instanceof Instance instance ? instance.toWorld.then(toWorld) : toWorld;
+    }
+
+    /**
+     * Moves the ray to the space of the object, tests it, then moves the normal of the hit back to the world.
+     * The direction of the moved ray is not normalized, so t is the same in both spaces.
+     */
+    @Override
+    public HitRecord hit(Ray ray, double tMin, double tMax) {
+        var localRay = new Ray(toObject.point(ray.origin()), toObject.vector(ray.direction()), ray.time());
+        HitRecord hit = object.hit(localRay, tMin, tMax);
+        if (hit == null) return null;
+        // the normal keeps its side of the ray, since the transpose of the inverse preserves dot products with
+        // transformed directions
+        var normal = toObject.transposedVector(hit.normal()).normalized();
+        return new HitRecord(ray, hit.t(), normal, hit.frontFace(), hit.material(), hit.u(), hit.v());
+    }
+}
@@ -0,0 +1,251 @@
+package com.raytracing.transform;
+
+import com.raytracing.base.PixelColor;
+import com.raytracing.interfaces.Hittable;
+import com.raytracing.interfaces.Material;
+import com.raytracing.interfaces.Texture;
+import com.raytracing.materials.Dielectric;
+import com.raytracing.materials.DiffuseLight;
+import com.raytracing.materials.Isotropic;
+import com.raytracing.materials.Lambertian;
+import com.raytracing.materials.Metal;
+import com.raytracing.scene.ConstantMedium;
+import com.raytracing.scene.HittableList;
+import com.raytracing.scene.Quad;
+import com.raytracing.scene.Sphere;
+import com.raytracing.textures.CheckerTexture;
+import com.raytracing.textures.NoiseTexture;
+import com.raytracing.textures.SolidColor;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the graph of objects a scene was built from into a flat list of primitives in world space, before an
+ * acceleration structure is built over them.
+ * <p>
+ * Nested lists, boxes included, are inlined into the list, and static transforms are baked into the coordinates of
+ * the primitives under them, so a ray reaches a primitive without walking lists or moving into another space.
+ * A transform that cannot be baked without changing the image stays as one {@link Instance} right above its
+ * primitive: a mirroring transform, or a rotated or stretched sphere whose texture is looked up by its (u, v).
+ * Materials that are equal in value are merged into one object. Anything the compiler does not know, such as a BVH
+ * that was built already, is kept whole.
+ */
+public class SceneCompiler {
+    private final Map<Material, Material> resolved = new IdentityHashMap<>();
+    private final Map<Object, Material> canonical = new HashMap<>();
+    private int primitives;
+    private int transformsBaked;
+    private int instancesKept;
+    private int listsInlined;
+    private int materialsMerged;
+
+    /**
+     * What a compilation did
+     *
+     * @param primitives      the number of entries of the compiled list
+     * @param transformsBaked the number of transform nodes removed because they were baked into every primitive
+     *                        below them
+     * @param instancesKept   the number of instances left in the compiled list
+     * @param listsInlined    the number of nested lists whose objects were moved into their parent
+     * @param materialsMerged the number of materials replaced by an equal one
+     */
+    public record Report(int primitives, int transformsBaked, int instancesKept, int listsInlined,
+                         int materialsMerged) {
+        /**
+         * @return the number of lists and transforms a ray no longer walks through
+         */
+        public int indirectionsRemoved() {
+            return transformsBaked + listsInlined;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d primitives, removed %d indirections (%d transforms baked, %d lists inlined), "
+                            + "kept %d instances, merged %d materials", primitives, indirectionsRemoved(),
+                    transformsBaked, listsInlined, instancesKept, materialsMerged);
+        }
+    }
+
+    /**
+     * A compiled list with the report of its compilation
+     */
+    public record Result(HittableList objects, Report report) {
+    }
+
+    /**
+     * Compiles the objects of a list
+     *
+     * @param world the list, which is not changed
+     * @return a new list of the compiled objects
+     */
+    public static Result compile(HittableList world) {
+        var compiler = new SceneCompiler();
+        var out = new HittableList();
+        for (Hittable object : world) {
+            compiler.add(object, null, out);
+        }
+        compiler.primitives = out.objects().size();
+        return new Result(out, new Report(compiler.primitives, compiler.transformsBaked, compiler.instancesKept,
+                compiler.listsInlined, compiler.materialsMerged));
+    }
+
+    /**
+     * Adds the compiled form of an object to a list
+     *
+     * @param transform the transform from the object to the world, or null if the object is in the world already
+     */
+    private void add(Hittable object, Affine transform, HittableList out) {
+        if (object instanceof HittableList list) {
+            listsInlined++;
+            for (Hittable child : list) add(child, transform, out);
+        } else if (object instanceof Instance instance) {
+            bake(instance.object(), then(instance.toWorld(), transform), out);
+        } else if (object instanceof Translate translate) {
+            bake(translate.object(), then(Affine.translation(translate.offset()), transform), out);
+        } else if (object instanceof RotateY rotate) {
+            bake(rotate.object(), then(Affine.rotationY(rotate.sinTheta(), rotate.cosTheta()), transform), out);
+        } else if (object instanceof Quad quad) {
+            out.add(quad(quad, transform));
+        } else if (object instanceof Sphere sphere) {
+            out.add(sphere(sphere, transform));
+        } else if (object instanceof ConstantMedium medium) {
+            out.add(medium(medium, transform));
+        } else {
+            out.add(keep(object, transform));
+        }
+    }
+
+    /**
+     * Adds the compiled form of the object under a transform node. The node counts as baked only if it is gone from
+     * the compiled list, that is if nothing below it had to be kept as an instance that still applies it.
+     */
+    private void bake(Hittable object, Affine transform, HittableList out) {
+        int instancesBefore = instancesKept;
+        add(object, transform, out);
+        if (instancesKept == instancesBefore) transformsBaked++;
+    }
+
+    private static Affine then(Affine inner, Affine outer) {
+        return outer == null ? inner : inner.then(outer);
+    }
+
+    private Hittable quad(Quad quad, Affine transform) {
+        Material material = material(quad.material());
+        // a mirror would turn the front of the quad to its back
+        if (transform != null && !(transform.determinant() > 0)) {
+            return keep(material == quad.material() ? quad : new Quad(quad.Q(), quad.u(), quad.v(), material),
+                    transform);
+        }
+        if (transform == null) {
+            return material == quad.material() ? quad : new Quad(quad.Q(), quad.u(), quad.v(), material);
+        }
+        // (u, v) of a hit are its coordinates along the sides, which an affine transform keeps
+        return new Quad(transform.point(quad.Q()), transform.vector(quad.u()), transform.vector(quad.v()), material);
+    }
+
+    private Hittable sphere(Sphere sphere, Affine transform) {
+        Material material = material(sphere.material());
+        if (transform == null) {
+            return material == sphere.material() ? sphere : sphere(sphere, Affine.IDENTITY, 1, material);
+        }
+        if (transform.isTranslation()) return sphere(sphere, transform, 1, material);
+        // rotating a sphere rotates the (u, v) of its points, which only matters to textures that look them up
+        double scale = transform.uniformScale();
+        if (!Double.isNaN(scale) && !usesUV(material)) return sphere(sphere, transform, scale, material);
+        return keep(material == sphere.material() ? sphere : sphere(sphere, Affine.IDENTITY, 1, material),
+                transform);
+    }
+
+    private static Sphere sphere(Sphere sphere, Affine transform, double scale, Material material) {
+        var center = transform.point(sphere.center());
+        if (!sphere.isMoving()) return new Sphere(center, sphere.radius() * scale, material);
+        return new Sphere(center, transform.point(sphere.center(1)), sphere.radius() * scale, material);
+    }
+
+    private Hittable medium(ConstantMedium medium, Affine transform) {
+        var phase = (Isotropic) material(medium.phaseFunc());
+        // the density is per unit of length, so only a transform that keeps lengths can be baked
+        if (transform != null && !(Math.abs(transform.uniformScale() - 1) < 1e-9)) {
+            return keep(new ConstantMedium(medium.boundary(), medium.density(), phase), transform);
+        }
+        // the boundary stays a closed object of its own, so its objects are not mixed into the world
+        var boundary = new HittableList();
+        if (medium.boundary() instanceof HittableList list) {
+            for (Hittable child : list) add(child, transform, boundary);
+        } else {
+            add(medium.boundary(), transform, boundary);
+        }
+        // a boundary of one object needs no list
+        Hittable compiled = boundary.objects().size() == 1 ? boundary.objects().get(0) : boundary;
+        if (compiled != boundary && medium.boundary() instanceof HittableList) listsInlined++;
+        return new ConstantMedium(compiled, medium.density(), phase);
+    }
+
+    private Hittable keep(Hittable object, Affine transform) {
+        if (transform == null) return object;
+        instancesKept++;
+        return new Instance(object, transform);
+    }
+
+    /**
+     * @return the first material seen that is equal in value to the material
+     */
+    private Material material(Material material) {
+        Material result = resolved.get(material);
+        if (result != null) return result;
+        result = canonical.putIfAbsent(key(material), material);
+        if (result == null) {
+            result = material;
+        } else {
+            materialsMerged++;
+        }
+        resolved.put(material, result);
+        return result;
+    }
+
+    /**
+     * @return a key that is equal for materials that are equal in value, since colors do not compare by value
+     */
+    private static Object key(Material material) {
+        if (material instanceof Lambertian m && m.texture() instanceof SolidColor s) {
+            return key(Lambertian.class, s.albedo());
+        } else if (material instanceof DiffuseLight m && m.texture() instanceof SolidColor s) {
+            return key(DiffuseLight.class, s.albedo());
+        } else if (material instanceof Isotropic m && m.texture() instanceof SolidColor s) {
+            return key(Isotropic.class, s.albedo());
+        } else if (material instanceof Metal m) {
+            return List.of(Metal.class, m.albedo().red(), m.albedo().green(), m.albedo().blue(), m.fuzziness());
+        }
+        // other materials are records of values or of objects compared by identity
+        return material;
+    }
+
+    private static Object key(Class<?> type, PixelColor color) {
+        return List.of(type, color.red(), color.green(), color.blue());
+    }
+
+    private static boolean usesUV(Material material) {
+        if (material instanceof Metal || material instanceof Dielectric) {
+            return false;
+        } else if (material instanceof Lambertian m) {
+            return usesUV(m.texture());
+        } else if (material instanceof DiffuseLight m) {
+            return usesUV(m.texture());
+        } else if (material instanceof Isotropic m) {
+            return usesUV(m.texture());
+        }
+        return true;
+    }
+
+    private static boolean usesUV(Texture texture) {
+        if (texture instanceof SolidColor || texture instanceof NoiseTexture) {
+            return false;
+        } else if (texture instanceof CheckerTexture c) {
+            return usesUV(c.even()) || usesUV(c.odd());
+        }
+        return true;
+    }
+}
@@ -3,9 +3,11 @@ package com.raytracing.utils;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Represents a canvas in raytracing programs
@@ -13,6 +15,7 @@ import java.io.IOException;
 public class Canvas implements Closeable {
     BufferedImage data;
     Graphics2D graphics;
+    private final int[] pixels;
 
     /**
      * Constructs an RGB image
@@ -23,6 +26,7 @@ public class Canvas implements Closeable {
     public Canvas(int width, int height) {
         data = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         graphics = data.createGraphics();
+        pixels = ((DataBufferInt) data.getRaster().getDataBuffer()).getData();
     }
 
     /**
@@ -39,6 +43,19 @@ public class Canvas implements Closeable {
         graphics.fillRect(x, data.getHeight() - 1 - y, 1, 1);
     }
 
+    /**
+     * Set pixel (x, y) to the given color by writing to the raster directly.
+     * Positive x direction is from left to right
+     * Positive y direction is from bottom to top
+     *
+     * @param x   the x-coordinate of the pixel
+     * @param y   the y-coordinate of the pixel
+     * @param rgb a color as 0xRRGGBB
+     */
+    public void setRgb(int x, int y, int rgb) {
+        pixels[(data.getHeight() - 1 - y) * data.getWidth() + x] = rgb;
+    }
+
     /**
      * Save the image to an image file
      *
@@ -50,6 +67,17 @@ public class Canvas implements Closeable {
         ImageIO.write(data, tokens[tokens.length - 1], new File(fileName));
     }
 
+    /**
+     * Write the image to a stream
+     *
+     * @param formatName the name of an image format, such as png
+     * @param output     the stream
+     * @throws IOException if it cannot write to the stream
+     */
+    public void write(String formatName, OutputStream output) throws IOException {
+        ImageIO.write(data, formatName, output);
+    }
+
     /**
      * Implements Closeable
      */
@@ -0,0 +1,112 @@
+package com.raytracing.utils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache that keeps the most recently used values and evicts the least recently used one beyond its capacity.
+ * It is safe to use from multiple threads. Values are loaded outside the lock of the cache, and threads asking for
+ * a key that is still loading wait for that load instead of loading the key again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class LruCache<K, V> {
+    /**
+     * Loads the value of a key that is not in the cache
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws IOException;
+    }
+
+    private final Map<K, CompletableFuture<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of values kept
+     */
+    public LruCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        // access order moves every value that is read to the end, so the eldest entry is the least recently used
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CompletableFuture<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the value of the key, loading it if it is not in the cache
+     *
+     * @param key    the key
+     * @param loader loads the value if it is not in the cache
+     * @return the value
+     * @throws IOException if the loader fails, in which case nothing is cached, as for any other exception or error
+     *                     the loader throws
+     */
+    public V get(K key, Loader<K, V> loader) throws IOException {
+        CompletableFuture<V> entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new CompletableFuture<>();
+                entries.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (!load) {
+            hits.increment();
+            try {
+                return entry.join();
+            } catch (CompletionException e) {
+                // the thread that loaded the value failed with the same exception, throw it as it was thrown there
+                if (e.getCause() instanceof IOException cause) throw cause;
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                if (e.getCause() instanceof Error cause) throw cause;
+                throw e;
+            }
+        }
+
+        misses.increment();
+        try {
+            V value = loader.load(key);
+            entry.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // whatever the loader throws, errors included, must not leave the threads waiting for it stuck
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of values in the cache
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
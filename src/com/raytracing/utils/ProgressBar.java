@@ -1,7 +1,8 @@
 package com.raytracing.utils;
 
 /**
- * Represents a progress bar that can be printed in the console
+ * Represents a progress bar that can be printed in the console.
+ * It is safe to step and show the progress bar from multiple threads.
  */
 public class ProgressBar {
     private static final int MAX_DISPLAY_LENGTH = 50;
@@ -35,7 +36,7 @@ public class ProgressBar {
      *
      * @param increment the amount of progress
      */
-    public void step(double increment) {
+    public synchronized void step(double increment) {
         progress += increment;
         if (progress > maxProgress) {
             return;
@@ -61,7 +62,7 @@ public class ProgressBar {
     /**
      * Shows the displayed progress bar when needed
      */
-    public void show() {
+    public synchronized void show() {
         if (displayNeedUpdate) {
             System.out.print(toString() + '\r');
         }
@@ -72,7 +73,7 @@ public class ProgressBar {
      * @return the string representation of the progress bar
      */
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return "Progress: [" + head.toString() + tail.toString() + ']';
     }
 }